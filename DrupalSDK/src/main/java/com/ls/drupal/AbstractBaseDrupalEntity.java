@@ -31,6 +31,7 @@ import com.ls.http.base.BaseRequest;
 import com.ls.http.base.BaseRequest.RequestMethod;
 import com.ls.http.base.ICharsetItem;
 import com.ls.http.base.RequestConfig;
+import com.ls.http.base.RequestTimings;
 import com.ls.http.base.ResponseData;
 import com.ls.util.L;
 import com.ls.util.internal.ObjectComparator;
@@ -45,6 +46,8 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
 
 public abstract class AbstractBaseDrupalEntity implements DrupalClient.OnResponseListener, ICharsetItem
 {
@@ -52,6 +55,17 @@ public abstract class AbstractBaseDrupalEntity implements DrupalClient.OnRespons
 
 	transient private Snapshot snapshot;
 
+	transient private String eTag;
+
+	transient private String lastModified;
+
+	transient private String validatorsKey;
+
+	/**
+	 * Key of the instance, used by outbox in order to match queued changes of the same entity
+	 */
+	transient private String outboxKey;
+
 	/**
 	 * In case of request canceling - no method will be triggered.
 	 * 
@@ -64,6 +78,17 @@ public abstract class AbstractBaseDrupalEntity implements DrupalClient.OnRespons
 		void onRequestFailed(AbstractBaseDrupalEntity entity, Object tag, ResponseData data);
 		void onRequestCanceled(AbstractBaseDrupalEntity entity, Object tag);
 	}	
+
+	/**
+	 * Listener, additionally notified if pulled entity wasn't modified on server since previous pull.
+	 * Entity data isn't changed in this case. Listeners, not implementing this interface receive
+	 * {@link OnEntityRequestListener#onRequestCompleted(AbstractBaseDrupalEntity, Object, ResponseData)} call
+	 * with {@link ResponseData#isNotModified()} flag set instead.
+	 */
+	public interface OnEntityNotModifiedListener extends OnEntityRequestListener
+	{
+		void onRequestNotModified(AbstractBaseDrupalEntity entity, Object tag, ResponseData data);
+	}
 			
 	/**
 	 * @return path to resource. Shouldn't include base URL(domain).
@@ -143,10 +168,8 @@ public abstract class AbstractBaseDrupalEntity implements DrupalClient.OnRespons
      */
     public ResponseData postToServer(boolean synchronous, Class<?> resultClass, Object tag, OnEntityRequestListener listener)
     {
-        Assert.assertNotNull("You have to specify drupal client in order to perform requests", this.drupalClient);
         DrupalEntityTag drupalTag = new DrupalEntityTag(false, tag, listener);
-        ResponseData result = this.drupalClient.postObject(this, getRequestConfig(RequestMethod.POST,resultClass), drupalTag, this, synchronous);
-        return result;
+        return performEntityRequest(RequestMethod.POST, resultClass, drupalTag, synchronous);
     }
 
     /**
@@ -163,10 +186,8 @@ public abstract class AbstractBaseDrupalEntity implements DrupalClient.OnRespons
      */
     public ResponseData putToServer(boolean synchronous, Class<?> resultClass, Object tag, OnEntityRequestListener listener)
     {
-        Assert.assertNotNull("You have to specify drupal client in order to perform requests", this.drupalClient);
         DrupalEntityTag drupalTag = new DrupalEntityTag(false, tag, listener);
-        ResponseData result = this.drupalClient.putObject(this, getRequestConfig(RequestMethod.PUT,resultClass), drupalTag, this, synchronous);
-        return result;
+        return performEntityRequest(RequestMethod.PUT, resultClass, drupalTag, synchronous);
     }
 
 	/**
@@ -181,17 +202,25 @@ public abstract class AbstractBaseDrupalEntity implements DrupalClient.OnRespons
 	 */
 	public ResponseData pullFromServer(boolean synchronous, Object tag, OnEntityRequestListener listener)
 	{
-		Assert.assertNotNull("You have to specify drupal client in order to perform requests", this.drupalClient);
 		DrupalEntityTag drupalTag = new DrupalEntityTag(true, tag, listener);
-		ResponseData result;
-        Map postParams = this.getItemRequestPostParameters();
-        if(postParams == null || postParams.isEmpty()) {
-            result = this.drupalClient.getObject(this, getRequestConfig(RequestMethod.GET,this.getManagedDataClassSpecifyer()), drupalTag, this, synchronous);
-        }else{
-            result = this.drupalClient.postObject(this, getRequestConfig(RequestMethod.POST,this.getManagedDataClassSpecifyer()), drupalTag, this, synchronous);
-        }
-		;		
-		return result;
+		return performEntityRequest(getPullRequestMethod(), this.getManagedDataClassSpecifyer(), drupalTag, synchronous);
+	}
+
+	/**
+	 * Asynchronous pull, delivering cached copy of the entity immediately, even if it's expired, with {@link ResponseData#isStale()} flag set.
+	 * Entity is revalidated with server then and listener is notified again only if server data differs from cached one.
+	 * Listener isn't called twice if there is no cached copy.
+     * @param tag Object tag, passer to listener after request was finished or failed because of exception.
+     *            You can pass null if no tag is needed
+	 * @param listener
+	 */
+	public void pullFromServerCacheThenNetwork(Object tag, OnEntityRequestListener listener)
+	{
+		DrupalEntityTag drupalTag = new DrupalEntityTag(true, tag, listener);
+		RequestMethod method = getPullRequestMethod();
+		RequestConfig config = getRequestConfig(method, this.getManagedDataClassSpecifyer());
+		config.setStaleWhileRevalidate(true);
+		performEntityRequest(method, config, drupalTag, false);
 	}
 
 	/**
@@ -208,28 +237,163 @@ public abstract class AbstractBaseDrupalEntity implements DrupalClient.OnRespons
 	 */
 	public ResponseData deleteFromServer(boolean synchronous, Class<?> resultClass, Object tag, OnEntityRequestListener listener)
 	{
-		Assert.assertNotNull("You have to specify drupal client in order to perform requests", this.drupalClient);
 		DrupalEntityTag drupalTag = new DrupalEntityTag(false, tag, listener);
-		ResponseData result = this.drupalClient.deleteObject(this,getRequestConfig(RequestMethod.DELETE,resultClass), drupalTag, this, synchronous);
-		return result;
+		return performEntityRequest(RequestMethod.DELETE, resultClass, drupalTag, synchronous);
 	}
 
+    // Future-based API
+
+    /**
+     * Asynchronous version of {@link #pullFromServer(boolean, Object, OnEntityRequestListener)}. Response is consumed by entity before future completion.
+     * @param tag Object tag, passed to request, can be used in order to cancel request
+     * @return future, completed with response data or failed with {@link DrupalRequestException}. Canceling the future cancels the request.
+     */
+    public DrupalFuture<ResponseData> pullFromServerAsync(Object tag)
+    {
+        return performEntityRequestAsync(getPullRequestMethod(), this.getManagedDataClassSpecifyer(), true, tag);
+    }
+
+    /**
+     * Asynchronous version of {@link #postToServer(boolean, Class, Object, OnEntityRequestListener)}.
+     */
+    public DrupalFuture<ResponseData> postToServerAsync(Class<?> resultClass, Object tag)
+    {
+        return performEntityRequestAsync(RequestMethod.POST, resultClass, false, tag);
+    }
+
+    /**
+     * Asynchronous version of {@link #putToServer(boolean, Class, Object, OnEntityRequestListener)}.
+     */
+    public DrupalFuture<ResponseData> putToServerAsync(Class<?> resultClass, Object tag)
+    {
+        return performEntityRequestAsync(RequestMethod.PUT, resultClass, false, tag);
+    }
+
+    /**
+     * Asynchronous version of {@link #patchServerData(boolean, Class, Object, OnEntityRequestListener)}.
+     */
+    public DrupalFuture<ResponseData> patchServerDataAsync(Class<?> resultClass, Object tag)
+    {
+        return performEntityRequestAsync(RequestMethod.PATCH, resultClass, false, tag);
+    }
+
+    /**
+     * Asynchronous version of {@link #deleteFromServer(boolean, Class, Object, OnEntityRequestListener)}.
+     */
+    public DrupalFuture<ResponseData> deleteFromServerAsync(Class<?> resultClass, Object tag)
+    {
+        return performEntityRequestAsync(RequestMethod.DELETE, resultClass, false, tag);
+    }
+
+    private DrupalFuture<ResponseData> performEntityRequestAsync(RequestMethod method, Object resultClass, boolean consumeResponse, Object tag)
+    {
+        final DrupalFuture<ResponseData> future = new DrupalFuture<ResponseData>();
+        final DrupalEntityTag drupalTag = new DrupalEntityTag(consumeResponse, tag, new FutureEntityRequestListener(future));
+        future.setCancellationHandler(new Runnable() {
+            @Override
+            public void run() {
+                drupalClient.cancelByTag(drupalTag);
+            }
+        });
+        performEntityRequest(method, resultClass, drupalTag, false);
+        return future;
+    }
+
+    RequestMethod getPullRequestMethod()
+    {
+        Map postParams = this.getItemRequestPostParameters();
+        if(postParams == null || postParams.isEmpty()) {
+            return RequestMethod.GET;
+        }else{
+            return RequestMethod.POST;
+        }
+    }
+
+    DrupalEntityTag newEntityTag(boolean consumeResponse, Object tag, OnEntityRequestListener listener)
+    {
+        return new DrupalEntityTag(consumeResponse, tag, listener);
+    }
+
+    private ResponseData performEntityRequest(RequestMethod method, Object resultClass, DrupalEntityTag drupalTag, boolean synchronous)
+    {
+        return performEntityRequest(method, getRequestConfig(method, resultClass), drupalTag, synchronous);
+    }
+
+    private ResponseData performEntityRequest(RequestMethod method, RequestConfig config, DrupalEntityTag drupalTag, boolean synchronous)
+    {
+        Assert.assertNotNull("You have to specify drupal client in order to perform requests", this.drupalClient);
+        if (!synchronous && method != RequestMethod.GET && !drupalTag.consumeResponse && this.enqueueToOutbox(method, config, drupalTag)) {
+            return null;
+        }
+        switch (method) {
+            case GET:
+                return this.drupalClient.getObject(this, config, drupalTag, this, synchronous);
+            case POST:
+                return this.drupalClient.postObject(this, config, drupalTag, this, synchronous);
+            case PUT:
+                return this.drupalClient.putObject(this, config, drupalTag, this, synchronous);
+            case PATCH:
+                return this.drupalClient.patchObject(this, config, drupalTag, this, synchronous);
+            case DELETE:
+                return this.drupalClient.deleteObject(this, config, drupalTag, this, synchronous);
+            default:
+                throw new IllegalArgumentException("Unsupported entity request method: " + method.name());
+        }
+    }
+
+    /**
+     * @return true if change was queued to client outbox in order to be replayed when connection is restored
+     */
+    private boolean enqueueToOutbox(RequestMethod method, RequestConfig config, DrupalEntityTag drupalTag)
+    {
+        OfflineOutbox outbox = this.drupalClient.getOutbox();
+        if (outbox == null || !outbox.shouldEnqueue())
+        {
+            return false;
+        }
+        if (this.outboxKey == null)
+        {
+            this.outboxKey = UUID.randomUUID().toString();
+        }
+        BaseRequest request = this.drupalClient.newEntityRequest(method, this, config);
+        return outbox.enqueue(request, this.outboxKey, drupalTag, this, config);
+    }
+
 	// OnResponseListener methods
 	
 	@Override
 	public void onResponseReceived(ResponseData data, Object tag)
 	{		
 		DrupalEntityTag entityTag = (DrupalEntityTag)tag;
-		if (entityTag.consumeResponse)
+		if (entityTag.consumeResponse && !data.isNotModified())
 		{
-			this.consumeObject(data);
+			RequestTimings timings = data.getTimings();
+			if (timings != null) {
+				timings.startPhase(RequestTimings.Phase.CONSUMPTION);
+			}
+			try {
+				this.consumeObject(data);
+			} finally {
+				if (timings != null) {
+					timings.finishPhase(RequestTimings.Phase.CONSUMPTION);
+				}
+			}
+			this.updateValidators(data);
 		}
 
 		if(entityTag.listener != null)
 		{
-			entityTag.listener.onRequestCompleted(this, entityTag.requestTag, data);
+			if(data.isNotModified() && entityTag.listener instanceof OnEntityNotModifiedListener)
+			{
+				((OnEntityNotModifiedListener)entityTag.listener).onRequestNotModified(this, entityTag.requestTag, data);
+			}else{
+				entityTag.listener.onRequestCompleted(this, entityTag.requestTag, data);
+			}
 		}
-        ConnectionManager.instance().setConnected(true);
+        if(!data.isStale())
+        {
+            ConnectionManager.instance().setConnected(true);
+        }
 	}
 	
 	@Override
@@ -293,9 +457,73 @@ public abstract class AbstractBaseDrupalEntity implements DrupalClient.OnRespons
         config.setRequestFormat(getItemRequestFormat(method));
         config.setResponseFormat(getItemResponseFormat(method));
         config.setErrorResponseClassSpecifier(getItemErrorResponseClassSpecifier(method));
+        config.setPriority(getItemRequestPriority(method));
+        if (method == RequestMethod.GET && (this.eTag != null || this.lastModified != null) && getValidatorsKey().equals(this.validatorsKey))
+        {
+            config.setValidators(this.eTag, this.lastModified);
+        }
         return config;
     }
 
+    // Conditional pull management
+
+    /**
+     * @return ETag of the entity representation, received with last pull, null if server didn't provide one
+     */
+    public String getETag()
+    {
+        return eTag;
+    }
+
+    /**
+     * @return Last-Modified date of the entity representation, received with last pull, null if server didn't provide one
+     */
+    public String getLastModified()
+    {
+        return lastModified;
+    }
+
+    /**
+     * Forces next pull to download and consume full representation. Has to be called if entity data was modified locally
+     * and server data has to be restored, as pull of unmodified representation doesn't change entity data.
+     */
+    public void clearValidators()
+    {
+        this.eTag = null;
+        this.lastModified = null;
+        this.validatorsKey = null;
+    }
+
+    private void updateValidators(ResponseData data)
+    {
+        this.clearValidators();
+        Map<String, String> headers = data.getHeaders();
+        if (headers == null)
+        {
+            return;
+        }
+        for (Map.Entry<String, String> entry : headers.entrySet())
+        {
+            if ("ETag".equalsIgnoreCase(entry.getKey()))
+            {
+                this.eTag = entry.getValue();
+            } else if ("Last-Modified".equalsIgnoreCase(entry.getKey()))
+            {
+                this.lastModified = entry.getValue();
+            }
+        }
+        this.validatorsKey = getValidatorsKey();
+    }
+
+    /**
+     * @return key of the resource validators belong to: validators are sent only if entity path and parameters weren't changed
+     */
+    private String getValidatorsKey()
+    {
+        Map<String, Object> parameters = this.getItemRequestGetParameters(RequestMethod.GET);
+        return this.getPath() + (parameters != null ? new TreeMap<String, Object>(parameters).toString() : "");
+    }
+
 	
 	/**
 	 * Utility method, used to clone all entities non-transient fields to the consumer
@@ -373,6 +601,14 @@ public abstract class AbstractBaseDrupalEntity implements DrupalClient.OnRespons
         return null;
     };
 
+    /**
+     * @param method is instance of {@link com.ls.http.base.BaseRequest.RequestMethod} enum, this method is called for. it can be "GET", "POST", "PUT" ,"PATCH" or "DELETE".
+     * @return priority lane of the request. You can override this method in order to let requests for visible content jump the queue. If null returned - NORMAL priority is used.
+     */
+    protected BaseRequest.RequestPriority getItemRequestPriority(RequestMethod method){
+        return null;
+    };
+
 	public DrupalClient getDrupalClient()
 	{
 		return drupalClient;
@@ -432,8 +668,7 @@ public abstract class AbstractBaseDrupalEntity implements DrupalClient.OnRespons
 	public ResponseData patchServerData(boolean synchronous, Class<?> resultClass, Object tag, OnEntityRequestListener listener) throws IllegalStateException
 	{
 		DrupalEntityTag drupalTag = new DrupalEntityTag(false, tag, listener);
-		ResponseData result = this.drupalClient.patchObject(this, getRequestConfig(RequestMethod.PATCH,resultClass), drupalTag, this, synchronous);
-		return result;
+		return performEntityRequest(RequestMethod.PATCH, resultClass, drupalTag, synchronous);
 	}
 
 	public Object getPatchObject()
@@ -482,6 +717,34 @@ public abstract class AbstractBaseDrupalEntity implements DrupalClient.OnRespons
 		return getManagedData();
 	}
 	
+	private static class FutureEntityRequestListener implements OnEntityRequestListener
+	{
+		private final DrupalFuture<ResponseData> future;
+
+		FutureEntityRequestListener(DrupalFuture<ResponseData> future)
+		{
+			this.future = future;
+		}
+
+		@Override
+		public void onRequestCompleted(AbstractBaseDrupalEntity entity, Object tag, ResponseData data)
+		{
+			future.complete(data);
+		}
+
+		@Override
+		public void onRequestFailed(AbstractBaseDrupalEntity entity, Object tag, ResponseData data)
+		{
+			future.fail(new DrupalRequestException(data));
+		}
+
+		@Override
+		public void onRequestCanceled(AbstractBaseDrupalEntity entity, Object tag)
+		{
+			future.cancel(false);
+		}
+	}
+
 	protected final class DrupalEntityTag
 	{
 		public OnEntityRequestListener listener;
@@ -33,9 +33,13 @@ import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.Map;
 
 public abstract class AbstractDrupalArrayEntity<E> extends AbstractDrupalEntity implements Collection<E>
 {
+	private static final String LINK_HEADER_KEY = "Link";
+	private static final String LINK_RELATION_NEXT = "next";
+
 	private transient final ArrayList<E> innerItems;
 
 	public AbstractDrupalArrayEntity(DrupalClient client, int itemCount)
@@ -184,6 +188,83 @@ public abstract class AbstractDrupalArrayEntity<E> extends AbstractDrupalEntity
 		}
 	}
 
+	/**
+	 * Used by {@link DrupalPagedLoader} in order to detect the end of paged collection without extra request of empty page.
+	 * Default implementation checks "next" relation of the Link response header. You can override this method in order to use pager metadata.
+	 * @param data response of this page
+	 * @return true if there are more pages, false if it's the last page or null if response contains no pager data
+	 */
+	protected Boolean hasNextPage(ResponseData data)
+	{
+		Map<String, String> headers = data.getHeaders();
+		if (headers == null)
+		{
+			return null;
+		}
+
+		for (Map.Entry<String, String> header : headers.entrySet())
+		{
+			if (LINK_HEADER_KEY.equalsIgnoreCase(header.getKey()) && header.getValue() != null)
+			{
+				return hasNextLink(header.getValue());
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return true if one of the links has "next" relation. Link URIs may contain commas, so links are split outside of them only.
+	 */
+	static boolean hasNextLink(String linkHeader)
+	{
+		int linkStart = 0;
+		boolean insideUri = false;
+		for (int counter = 0; counter <= linkHeader.length(); counter++)
+		{
+			char current = counter < linkHeader.length() ? linkHeader.charAt(counter) : ',';
+			if (current == '<')
+			{
+				insideUri = true;
+			} else if (current == '>')
+			{
+				insideUri = false;
+			} else if (current == ',' && !insideUri)
+			{
+				if (hasNextRelation(linkHeader.substring(linkStart, counter)))
+				{
+					return true;
+				}
+				linkStart = counter + 1;
+			}
+		}
+		return false;
+	}
+
+	private static boolean hasNextRelation(String link)
+	{
+		int uriEnd = link.indexOf('>');
+		if (uriEnd < 0)
+		{
+			return false;
+		}
+		for (String linkParameter : link.substring(uriEnd + 1).split(";"))
+		{
+			String[] parameter = linkParameter.split("=", 2);
+			if (parameter.length == 2 && "rel".equalsIgnoreCase(parameter[0].trim()))
+			{
+				String relations = parameter[1].trim().replace("\"", "");
+				for (String relation : relations.split(" "))
+				{
+					if (LINK_RELATION_NEXT.equalsIgnoreCase(relation))
+					{
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
 	@Override
 	protected Object getManagedDataClassSpecifyer()
 	{
@@ -0,0 +1,312 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.drupal;
+
+import com.android.volley.RequestQueue;
+import com.ls.http.base.BaseRequest;
+import com.ls.util.L;
+
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Limits number of requests performed simultaneously by {@link DrupalClient}. Requests exceeding limit are kept in
+ * bounded admission queue and dispatched as soon as in-flight requests complete; overflow policy defines what happens
+ * if admission queue is full. Synchronous requests are never queued: calling thread is blocked until in-flight slot is free.
+ * See {@link DrupalClient#setAdmissionController(AdmissionController)}
+ */
+public class AdmissionController {
+
+    public static enum OverflowPolicy {
+        /**
+         * Calling thread is blocked until admission queue has free space. Requests, performed from main thread are rejected instead,
+         * as responses are delivered there.
+         */
+        BLOCK,
+        /**
+         * Request is rejected with {@link AdmissionRejectedError}
+         */
+        REJECT,
+        /**
+         * The oldest queued request with {@link com.ls.http.base.BaseRequest.RequestPriority#PREFETCH} priority is canceled
+         * in favour of new one. New request is rejected if there is no such request.
+         */
+        DROP_OLDEST_PREFETCH
+    }
+
+    static enum Decision {
+        ADMITTED, QUEUED, REJECTED
+    }
+
+    /**
+     * Notified about backpressure state changes, outside of controller lock
+     */
+    static interface BackpressureListener {
+        void onBackpressureChanged(boolean active, int queuedRequests);
+    }
+
+    private final int maxInFlight;
+    private final int maxQueued;
+    private final OverflowPolicy overflowPolicy;
+
+    private final Set<BaseRequest> inFlightRequests = Collections.newSetFromMap(new IdentityHashMap<BaseRequest, Boolean>());
+    private final LinkedList<BaseRequest> queuedRequests = new LinkedList<BaseRequest>();
+    private int blockedSynchronousRequests;
+    private boolean backpressureActive;
+    private long rejectedCount;
+    private long droppedCount;
+
+    private BackpressureListener backpressureListener;
+
+    /**
+     * @param maxInFlight    maximal number of requests performed simultaneously
+     * @param maxQueued      capacity of admission queue
+     * @param overflowPolicy action taken if admission queue is full
+     */
+    public AdmissionController(int maxInFlight, int maxQueued, OverflowPolicy overflowPolicy) {
+        if (maxInFlight < 1 || maxQueued < 0) {
+            throw new IllegalArgumentException("Invalid limits: in-flight " + maxInFlight + ", queued " + maxQueued);
+        }
+        this.maxInFlight = maxInFlight;
+        this.maxQueued = maxQueued;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public synchronized int getInFlightCount() {
+        return inFlightRequests.size();
+    }
+
+    public synchronized int getQueuedCount() {
+        return queuedRequests.size();
+    }
+
+    /**
+     * @return number of requests, rejected because admission queue was full
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * @return number of queued prefetch requests, dropped in favour of newer ones
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    synchronized void setBackpressureListener(BackpressureListener backpressureListener) {
+        this.backpressureListener = backpressureListener;
+    }
+
+    /**
+     * @param dropped receives queued requests, dropped in favour of given one. They have to be canceled by caller
+     * @return ADMITTED if request can be dispatched immediately, QUEUED if it will be returned by {@link #release(BaseRequest)} later
+     */
+    Decision admit(BaseRequest request, boolean synchronous, List<BaseRequest> dropped) {
+        Decision decision;
+        boolean backpressureChanged;
+        int queued;
+        synchronized (this) {
+            boolean wasActive = backpressureActive;
+            decision = admitLocked(request, synchronous, dropped);
+            updateBackpressure();
+            backpressureChanged = wasActive != backpressureActive;
+            queued = queuedRequests.size();
+        }
+        if (backpressureChanged) {
+            notifyBackpressure(queued);
+        }
+        return decision;
+    }
+
+    private Decision admitLocked(BaseRequest request, boolean synchronous, List<BaseRequest> dropped) {
+        if (synchronous) {
+            blockedSynchronousRequests++;
+            try {
+                while (inFlightRequests.size() >= maxInFlight) {
+                    waitForRelease();
+                }
+            } finally {
+                blockedSynchronousRequests--;
+            }
+            inFlightRequests.add(request);
+            return Decision.ADMITTED;
+        }
+
+        if (overflowPolicy == OverflowPolicy.BLOCK && isFull()) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                L.w("Admission queue is full, blocking policy can't be applied on main thread, request rejected");
+            } else {
+                while (isFull()) {
+                    waitForRelease();
+                }
+            }
+        }
+
+        if (inFlightRequests.size() < maxInFlight && blockedSynchronousRequests == 0) {
+            inFlightRequests.add(request);
+            return Decision.ADMITTED;
+        }
+
+        if (queuedRequests.size() < maxQueued) {
+            queuedRequests.add(request);
+            return Decision.QUEUED;
+        }
+
+        if (overflowPolicy == OverflowPolicy.DROP_OLDEST_PREFETCH) {
+            for (Iterator<BaseRequest> iterator = queuedRequests.iterator(); iterator.hasNext(); ) {
+                BaseRequest queuedRequest = iterator.next();
+                if (queuedRequest.getRequestPriority() == BaseRequest.RequestPriority.PREFETCH) {
+                    iterator.remove();
+                    dropped.add(queuedRequest);
+                    droppedCount++;
+                    queuedRequests.add(request);
+                    return Decision.QUEUED;
+                }
+            }
+        }
+
+        rejectedCount++;
+        return Decision.REJECTED;
+    }
+
+    private boolean isFull() {
+        return inFlightRequests.size() >= maxInFlight && queuedRequests.size() >= maxQueued;
+    }
+
+    private void waitForRelease() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for request admission", e);
+        }
+    }
+
+    /**
+     * Releases in-flight slot of completed or canceled request.
+     * @return queued requests, admitted instead of released one. They have to be dispatched by caller
+     */
+    List<BaseRequest> release(BaseRequest request) {
+        List<BaseRequest> admitted = null;
+        boolean backpressureChanged;
+        int queued;
+        synchronized (this) {
+            if (!inFlightRequests.remove(request)) {
+                return Collections.emptyList();
+            }
+
+            if (blockedSynchronousRequests == 0) {
+                while (inFlightRequests.size() < maxInFlight && !queuedRequests.isEmpty()) {
+                    BaseRequest queuedRequest = queuedRequests.removeFirst();
+                    inFlightRequests.add(queuedRequest);
+                    if (admitted == null) {
+                        admitted = new ArrayList<BaseRequest>();
+                    }
+                    admitted.add(queuedRequest);
+                }
+            }
+            notifyAll();
+
+            boolean wasActive = backpressureActive;
+            updateBackpressure();
+            backpressureChanged = wasActive != backpressureActive;
+            queued = queuedRequests.size();
+        }
+        if (backpressureChanged) {
+            notifyBackpressure(queued);
+        }
+        return admitted != null ? admitted : Collections.<BaseRequest>emptyList();
+    }
+
+    /**
+     * @return queued requests, matching filter. They are removed from queue and have to be canceled by caller
+     */
+    List<BaseRequest> removeQueued(RequestQueue.RequestFilter filter) {
+        List<BaseRequest> removed = new ArrayList<BaseRequest>();
+        boolean backpressureChanged;
+        int queued;
+        synchronized (this) {
+            for (Iterator<BaseRequest> iterator = queuedRequests.iterator(); iterator.hasNext(); ) {
+                BaseRequest queuedRequest = iterator.next();
+                if (filter.apply(queuedRequest)) {
+                    iterator.remove();
+                    removed.add(queuedRequest);
+                }
+            }
+            notifyAll();
+
+            boolean wasActive = backpressureActive;
+            updateBackpressure();
+            backpressureChanged = wasActive != backpressureActive;
+            queued = queuedRequests.size();
+        }
+        if (backpressureChanged) {
+            notifyBackpressure(queued);
+        }
+        return removed;
+    }
+
+    /**
+     * Backpressure is activated when admission queue is full and deactivated when it's drained to a half.
+     */
+    private void updateBackpressure() {
+        int queued = queuedRequests.size();
+        if (!backpressureActive && queued >= maxQueued && inFlightRequests.size() >= maxInFlight) {
+            backpressureActive = true;
+        } else if (backpressureActive && queued <= maxQueued / 2) {
+            backpressureActive = false;
+        }
+    }
+
+    private void notifyBackpressure(int queued) {
+        BackpressureListener listener;
+        boolean active;
+        synchronized (this) {
+            listener = backpressureListener;
+            active = backpressureActive;
+        }
+        if (listener != null) {
+            listener.onBackpressureChanged(active, queued);
+        }
+    }
+}
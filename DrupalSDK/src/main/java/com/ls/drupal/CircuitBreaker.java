@@ -0,0 +1,236 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.drupal;
+
+import android.os.SystemClock;
+
+/**
+ * Circuit breaker of a single host. Outcomes of network calls are collected over sliding window of recent calls;
+ * breaker opens when failure or slow call rate exceeds threshold. While open, calls are rejected without touching
+ * the network. After open period breaker becomes half-open and lets probe calls through, rate-limited by probe interval:
+ * successful probe closes breaker, failed one opens it again.
+ */
+public class CircuitBreaker {
+
+    public static enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Breaker thresholds and timings. Instance is immutable after being passed to {@link ConnectionManager}.
+     */
+    public static class Config {
+        private int windowSize = 20;
+        private int minimumCalls = 10;
+        private float failureRateThreshold = 0.5f;
+        private float slowCallRateThreshold = 0.8f;
+        private long slowCallDuration = 5000;
+        private long openDuration = 10000;
+        private long probeInterval = 2000;
+
+        /**
+         * @param windowSize   number of recent calls, taken into account
+         * @param minimumCalls minimal number of calls in window required to open breaker
+         */
+        public Config setWindow(int windowSize, int minimumCalls) {
+            if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize) {
+                throw new IllegalArgumentException("Invalid window: " + minimumCalls + " of " + windowSize);
+            }
+            this.windowSize = windowSize;
+            this.minimumCalls = minimumCalls;
+            return this;
+        }
+
+        /**
+         * @param failureRateThreshold share of failed calls in window, opening breaker
+         */
+        public Config setFailureRateThreshold(float failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        /**
+         * @param slowCallRateThreshold share of slow calls in window, opening breaker
+         * @param slowCallDuration      call taking longer than this amount of milliseconds is treated as slow one
+         */
+        public Config setSlowCallThreshold(float slowCallRateThreshold, long slowCallDuration) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            this.slowCallDuration = slowCallDuration;
+            return this;
+        }
+
+        /**
+         * @param openDuration  time in milliseconds breaker stays open before probes are allowed
+         * @param probeInterval minimal interval in milliseconds between half-open probes
+         */
+        public Config setOpenDuration(long openDuration, long probeInterval) {
+            this.openDuration = openDuration;
+            this.probeInterval = probeInterval;
+            return this;
+        }
+    }
+
+    private final String host;
+    private final Config config;
+    private final boolean[] failures;
+    private final boolean[] slowCalls;
+    private int position;
+    private int callCount;
+    private int failureCount;
+    private int slowCallCount;
+
+    private State state = State.CLOSED;
+    private long openedTime;
+    private long lastProbeTime;
+
+    CircuitBreaker(String host, Config config) {
+        this.host = host;
+        this.config = config;
+        this.failures = new boolean[config.windowSize];
+        this.slowCalls = new boolean[config.windowSize];
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return true if call can be performed, false if it has to fail fast.
+     */
+    public boolean allowRequest() {
+        State newState;
+        synchronized (this) {
+            long now = SystemClock.elapsedRealtime();
+            switch (state) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if (now - openedTime < config.openDuration) {
+                        return false;
+                    }
+                    newState = transitionTo(State.HALF_OPEN);
+                    lastProbeTime = now;
+                    break;
+                default:
+                    if (now - lastProbeTime < config.probeInterval) {
+                        return false;
+                    }
+                    lastProbeTime = now;
+                    return true;
+            }
+        }
+        onStateChanged(newState);
+        return true;
+    }
+
+    /**
+     * @param latency call duration in milliseconds
+     */
+    public void onSuccess(long latency) {
+        onCallCompleted(false, latency >= config.slowCallDuration);
+    }
+
+    /**
+     * @param latency call duration in milliseconds
+     */
+    public void onFailure(long latency) {
+        onCallCompleted(true, latency >= config.slowCallDuration);
+    }
+
+    private void onCallCompleted(boolean failure, boolean slow) {
+        State newState = null;
+        synchronized (this) {
+            switch (state) {
+                case HALF_OPEN:
+                    if (failure || slow) {
+                        newState = transitionTo(State.OPEN);
+                    } else {
+                        newState = transitionTo(State.CLOSED);
+                    }
+                    break;
+                case CLOSED:
+                    recordCall(failure, slow);
+                    if (isThresholdExceeded()) {
+                        newState = transitionTo(State.OPEN);
+                    }
+                    break;
+                default:
+                    // Late response of call, started before breaker was opened
+                    break;
+            }
+        }
+        if (newState != null) {
+            onStateChanged(newState);
+        }
+    }
+
+    private void recordCall(boolean failure, boolean slow) {
+        if (callCount == failures.length) {
+            if (failures[position]) {
+                failureCount--;
+            }
+            if (slowCalls[position]) {
+                slowCallCount--;
+            }
+        } else {
+            callCount++;
+        }
+        failures[position] = failure;
+        slowCalls[position] = slow;
+        if (failure) {
+            failureCount++;
+        }
+        if (slow) {
+            slowCallCount++;
+        }
+        position = (position + 1) % failures.length;
+    }
+
+    private boolean isThresholdExceeded() {
+        if (callCount < config.minimumCalls) {
+            return false;
+        }
+        return failureCount >= config.failureRateThreshold * callCount || slowCallCount >= config.slowCallRateThreshold * callCount;
+    }
+
+    private State transitionTo(State newState) {
+        state = newState;
+        if (newState == State.OPEN) {
+            openedTime = SystemClock.elapsedRealtime();
+        } else if (newState == State.CLOSED) {
+            position = 0;
+            callCount = 0;
+            failureCount = 0;
+            slowCallCount = 0;
+        }
+        return newState;
+    }
+
+    private void onStateChanged(State newState) {
+        ConnectionManager.instance().onCircuitStateChanged(this, newState);
+    }
+}
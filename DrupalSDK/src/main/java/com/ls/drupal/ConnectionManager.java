@@ -25,6 +25,9 @@ package com.ls.drupal;
 
 import com.ls.util.ObserverHolder;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * Created by Lemberg-i5 on 07.10.2014.
  * Note: this isn't the best implementation of singleton but it's enough for our application
@@ -36,6 +39,9 @@ public class ConnectionManager {
 
     public boolean connected;
 
+    private final ConcurrentMap<String, CircuitBreaker> circuitBreakers;
+    private volatile CircuitBreaker.Config circuitBreakerConfig;
+
     public static ConnectionManager instance()
     {
         return instance;
@@ -45,6 +51,7 @@ public class ConnectionManager {
     {
         this.connected = true;
         connectionObservers = new ObserverHolder<OnConnectionStateChangedObserver>();
+        circuitBreakers = new ConcurrentHashMap<String, CircuitBreaker>();
     }
 
     public void registerObserver(OnConnectionStateChangedObserver observer)
@@ -75,9 +82,67 @@ public class ConnectionManager {
         connectionObservers.unregisterObserver(observer);
    }
 
+    /**
+     * @param config per host circuit breaker configuration, null disables circuit breakers. Breakers, created before are reset.
+     */
+    public void setCircuitBreakerConfig(CircuitBreaker.Config config)
+    {
+        this.circuitBreakerConfig = config;
+        this.circuitBreakers.clear();
+    }
+
+    public boolean isCircuitBreakerEnabled()
+    {
+        return circuitBreakerConfig != null;
+    }
+
+    /**
+     * @return circuit breaker of the host or null if circuit breakers are disabled
+     */
+    public CircuitBreaker getCircuitBreaker(String host)
+    {
+        CircuitBreaker.Config config = this.circuitBreakerConfig;
+        if(config == null || host == null)
+        {
+            return null;
+        }
+
+        CircuitBreaker breaker = circuitBreakers.get(host);
+        if(breaker == null)
+        {
+            CircuitBreaker newBreaker = new CircuitBreaker(host, config);
+            breaker = circuitBreakers.putIfAbsent(host, newBreaker);
+            if(breaker == null)
+            {
+                breaker = newBreaker;
+            }
+        }
+        return breaker;
+    }
+
+    void onCircuitStateChanged(final CircuitBreaker breaker, final CircuitBreaker.State state)
+    {
+        this.connectionObservers.notifyAllObservers(new ObserverHolder.ObserverNotifier<OnConnectionStateChangedObserver>() {
+            @Override
+            public void onNotify(OnConnectionStateChangedObserver observer) {
+                if(observer instanceof OnCircuitStateChangedObserver) {
+                    ((OnCircuitStateChangedObserver) observer).onCircuitStateChanged(breaker.getHost(), state);
+                }
+            }
+        });
+    }
+
     public static interface OnConnectionStateChangedObserver
     {
         public void onConnectionStateChanged(boolean connectionPresent);
     }
 
+    /**
+     * Observer, additionally notified about circuit breaker state changes. Registered the same way as {@link OnConnectionStateChangedObserver}
+     */
+    public static interface OnCircuitStateChangedObserver extends OnConnectionStateChangedObserver
+    {
+        public void onCircuitStateChanged(String host, CircuitBreaker.State state);
+    }
+
 }
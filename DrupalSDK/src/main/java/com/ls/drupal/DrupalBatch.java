@@ -0,0 +1,449 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.drupal;
+
+import com.google.gson.reflect.TypeToken;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Response;
+import com.android.volley.ServerError;
+import com.android.volley.VolleyError;
+import com.ls.drupal.AbstractBaseDrupalEntity.OnEntityRequestListener;
+import com.ls.http.base.BaseRequest;
+import com.ls.http.base.BaseRequest.RequestMethod;
+import com.ls.http.base.RequestConfig;
+import com.ls.http.base.ResponseData;
+import com.ls.util.L;
+
+import android.support.annotation.NonNull;
+import android.text.TextUtils;
+
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Groups several entity operations into single request to Drupal
+ * <a href="https://www.drupal.org/project/subrequests">Subrequests</a> endpoint. Every operation is reported to it's own
+ * listener exactly as if it was performed separately, including per-operation errors.
+ * Note: only JSON subrequests response format is supported.
+ * Use {@link DrupalClient#newBatch()} in order to create batch.
+ */
+public class DrupalBatch {
+
+    public static final String DEFAULT_ENDPOINT_PATH = "subrequests";
+
+    private static final String REQUEST_ID_PREFIX = "req-";
+    private static final String STATUS_HEADER = "status";
+    private static final String CONTENT_ID_HEADER = "content-id";
+    private static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+    private static final String FORMAT_PARAMETER = "_format";
+    private static final String FORMAT_JSON = "json";
+
+    private final DrupalClient client;
+    private final List<Operation> operations;
+    private String endpointPath = DEFAULT_ENDPOINT_PATH;
+
+    DrupalBatch(@NonNull DrupalClient client) {
+        this.client = client;
+        this.operations = new ArrayList<Operation>();
+    }
+
+    /**
+     * Adds entity pull operation, retrieved data will be merged to the entity.
+     * @see AbstractBaseDrupalEntity#pullFromServer(boolean, Object, OnEntityRequestListener)
+     */
+    public DrupalBatch pull(@NonNull AbstractBaseDrupalEntity entity, Object tag, OnEntityRequestListener listener) {
+        return addEntityOperation(entity, entity.getPullRequestMethod(), entity.getManagedDataClassSpecifyer(), true, tag, listener);
+    }
+
+    /**
+     * @see AbstractBaseDrupalEntity#postToServer(boolean, Class, Object, OnEntityRequestListener)
+     */
+    public DrupalBatch post(@NonNull AbstractBaseDrupalEntity entity, Class<?> resultClass, Object tag, OnEntityRequestListener listener) {
+        return addEntityOperation(entity, RequestMethod.POST, resultClass, false, tag, listener);
+    }
+
+    /**
+     * @see AbstractBaseDrupalEntity#putToServer(boolean, Class, Object, OnEntityRequestListener)
+     */
+    public DrupalBatch put(@NonNull AbstractBaseDrupalEntity entity, Class<?> resultClass, Object tag, OnEntityRequestListener listener) {
+        return addEntityOperation(entity, RequestMethod.PUT, resultClass, false, tag, listener);
+    }
+
+    /**
+     * @see AbstractBaseDrupalEntity#patchServerData(boolean, Class, Object, OnEntityRequestListener)
+     */
+    public DrupalBatch patch(@NonNull AbstractBaseDrupalEntity entity, Class<?> resultClass, Object tag, OnEntityRequestListener listener) {
+        return addEntityOperation(entity, RequestMethod.PATCH, resultClass, false, tag, listener);
+    }
+
+    /**
+     * @see AbstractBaseDrupalEntity#deleteFromServer(boolean, Class, Object, OnEntityRequestListener)
+     */
+    public DrupalBatch delete(@NonNull AbstractBaseDrupalEntity entity, Class<?> resultClass, Object tag, OnEntityRequestListener listener) {
+        return addEntityOperation(entity, RequestMethod.DELETE, resultClass, false, tag, listener);
+    }
+
+    /**
+     * Adds custom request to the batch. Request method has to be one of GET, POST, PUT, PATCH or DELETE.
+     * @param tag      will be returned in listener callback
+     * @param listener listener to be notified about request result, can be null
+     */
+    public DrupalBatch add(@NonNull BaseRequest request, Object tag, DrupalClient.OnResponseListener listener) {
+        client.getLoginManager().applyLoginDataToRequest(request);
+        operations.add(new Operation(REQUEST_ID_PREFIX + operations.size(), request, tag, listener));
+        return this;
+    }
+
+    private DrupalBatch addEntityOperation(AbstractBaseDrupalEntity entity, RequestMethod method, Object resultClass, boolean consumeResponse,
+            Object tag, OnEntityRequestListener listener) {
+        RequestConfig config = entity.getRequestConfig(method, resultClass);
+        BaseRequest request = client.newEntityRequest(method, entity, config);
+        return add(request, entity.newEntityTag(consumeResponse, tag, listener), entity);
+    }
+
+    /**
+     * @return number of operations in the batch
+     */
+    public int size() {
+        return operations.size();
+    }
+
+    public String getEndpointPath() {
+        return endpointPath;
+    }
+
+    /**
+     * @param endpointPath subrequests endpoint path, relative to client base URL. "subrequests" is used by default.
+     */
+    public void setEndpointPath(String endpointPath) {
+        this.endpointPath = endpointPath;
+    }
+
+    /**
+     * Performs all operations within single request. Operation listeners are triggered after response is received.
+     * @param tag will be attached to batch request, can be used in order to cancel the whole batch.
+     */
+    public void execute(Object tag) {
+        if (operations.isEmpty()) {
+            return;
+        }
+
+        List<Operation> batchOperations = new ArrayList<Operation>(operations.size());
+        List<BlueprintItem> blueprint = new ArrayList<BlueprintItem>(operations.size());
+        BaseRequest.RequestPriority priority = BaseRequest.RequestPriority.PREFETCH;
+        for (Operation operation : operations) {
+            try {
+                blueprint.add(createBlueprintItem(operation));
+            } catch (AuthFailureError e) {
+                L.e("Failed to create subrequest", e);
+                operation.request.deliverNetworkError(e);
+                continue;
+            }
+            batchOperations.add(operation);
+            if (operation.request.getRequestPriority().ordinal() < priority.ordinal()) {
+                priority = operation.request.getRequestPriority();
+            }
+        }
+        operations.clear();
+        if (batchOperations.isEmpty()) {
+            return;
+        }
+
+        BatchRequest batchRequest = newBatchRequest(getEndpointURL(), batchOperations, priority);
+        batchRequest.setObjectToPost(blueprint);
+
+        client.performRequest(batchRequest, tag, new BatchResponseListener(batchRequest), false);
+    }
+
+    private String getEndpointURL() {
+        String baseURL = client.getBaseURL();
+        String path = endpointPath;
+        if (TextUtils.isEmpty(baseURL)) {
+            return path;
+        }
+        if (!TextUtils.isEmpty(path) && path.charAt(0) == '/') {
+            path = path.substring(1);
+        }
+        return baseURL + path;
+    }
+
+    static BatchRequest newBatchRequest(String url, List<Operation> operations, BaseRequest.RequestPriority priority) {
+        RequestConfig config = new RequestConfig(new TypeToken<Map<String, Subresponse>>() {}.getType(), BaseRequest.RequestFormat.JSON,
+                BaseRequest.ResponseFormat.JSON);
+        config.setPriority(priority);
+        BatchRequest batchRequest = new BatchRequest(url, config, operations);
+        batchRequest.addGetParameter(FORMAT_PARAMETER, FORMAT_JSON);
+        return batchRequest;
+    }
+
+    static BlueprintItem createBlueprintItem(Operation operation) throws AuthFailureError {
+        BaseRequest request = operation.request;
+        BlueprintItem item = new BlueprintItem();
+        item.requestId = operation.requestId;
+        item.uri = getRelativeURI(request.getUrl());
+        item.action = getAction(request.getMethod());
+        // Subrequest body is embedded into blueprint as a string, so it can't be compressed
+        request.setBodyCompressionThreshold(-1);
+        item.headers = new HashMap<String, String>(request.getHeaders());
+        // Subresponse bodies are embedded into batch response as strings, so they can't be compressed
+        item.headers.remove(ACCEPT_ENCODING_HEADER);
+
+        byte[] body = request.getBody();
+        if (body != null) {
+            item.headers.put("Content-Type", request.getBodyContentType());
+            try {
+                String charset = request.getDefaultCharset();
+                item.body = new String(body, charset != null ? charset : "utf-8");
+            } catch (UnsupportedEncodingException e) {
+                item.body = new String(body);
+            }
+        }
+        return item;
+    }
+
+    static String getRelativeURI(String url) {
+        try {
+            URI uri = new URI(url);
+            if (uri.getRawPath() == null) {
+                return url;
+            }
+            String result = uri.getRawPath();
+            if (uri.getRawQuery() != null) {
+                result += "?" + uri.getRawQuery();
+            }
+            return result;
+        } catch (URISyntaxException e) {
+            return url;
+        }
+    }
+
+    static String getAction(int method) {
+        switch (method) {
+            case com.android.volley.Request.Method.GET:
+                return "view";
+            case com.android.volley.Request.Method.POST:
+                return "create";
+            case com.android.volley.Request.Method.PATCH:
+                return "update";
+            case com.android.volley.Request.Method.PUT:
+                return "replace";
+            case com.android.volley.Request.Method.DELETE:
+                return "delete";
+            default:
+                throw new IllegalArgumentException("Method isn't supported by subrequests: " + method);
+        }
+    }
+
+    static class Operation {
+        final String requestId;
+        final BaseRequest request;
+        final Object tag;
+        final DrupalClient.OnResponseListener listener;
+        volatile Response<ResponseData> parsedResponse;
+
+        Operation(String requestId, final BaseRequest request, final Object tag, final DrupalClient.OnResponseListener listener) {
+            this.requestId = requestId;
+            this.request = request;
+            this.tag = tag;
+            this.listener = listener;
+            request.setResponseListener(new BaseRequest.OnResponseListener() {
+                @Override
+                public void onResponseReceived(ResponseData data, BaseRequest request) {
+                    if (listener != null) {
+                        listener.onResponseReceived(data, tag);
+                    }
+                }
+
+                @Override
+                public void onError(ResponseData data, BaseRequest request) {
+                    if (listener != null) {
+                        listener.onError(data, tag);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Batch request, demultiplexing and parsing subresponses on network thread, so only parsed results are delivered
+     * on main thread.
+     */
+    static class BatchRequest extends BaseRequest {
+        private final List<Operation> operations;
+        private volatile boolean subresponsesParsed;
+
+        BatchRequest(String requestUrl, RequestConfig config, List<Operation> operations) {
+            super(RequestMethod.POST, requestUrl, config);
+            this.operations = operations;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected Response<ResponseData> parseNetworkResponse(NetworkResponse response) {
+            Response<ResponseData> result = super.parseNetworkResponse(response);
+            if (result.isSuccess() && result.result != null) {
+                parseSubresponses((Map<String, Subresponse>) result.result.getData());
+            }
+            return result;
+        }
+
+        void parseSubresponses(Map<String, Subresponse> batchResponse) {
+            Map<String, Subresponse> responses = getResponsesById(batchResponse);
+            for (Operation operation : operations) {
+                Subresponse subresponse = responses.get(operation.requestId);
+                if (subresponse == null) {
+                    operation.parsedResponse = operation.request.parseExternalError(new ServerError());
+                } else {
+                    operation.parsedResponse = operation.request.parseExternalResponse(subresponse.toNetworkResponse());
+                }
+            }
+            this.subresponsesParsed = true;
+        }
+
+        private static Map<String, Subresponse> getResponsesById(Map<String, Subresponse> responses) {
+            Map<String, Subresponse> result = new HashMap<String, Subresponse>();
+            if (responses == null) {
+                return result;
+            }
+
+            for (Map.Entry<String, Subresponse> entry : responses.entrySet()) {
+                Subresponse subresponse = entry.getValue();
+                if (subresponse == null) {
+                    continue;
+                }
+                String contentId = subresponse.getHeader(CONTENT_ID_HEADER);
+                if (contentId != null) {
+                    result.put(contentId.replace("<", "").replace(">", ""), subresponse);
+                } else {
+                    result.put(entry.getKey(), subresponse);
+                }
+            }
+            return result;
+        }
+    }
+
+    static class BatchResponseListener implements DrupalClient.OnResponseListener {
+        private final BatchRequest batchRequest;
+        private final List<Operation> operations;
+
+        BatchResponseListener(BatchRequest batchRequest) {
+            this.batchRequest = batchRequest;
+            this.operations = batchRequest.operations;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onResponseReceived(ResponseData data, Object tag) {
+            if (!batchRequest.subresponsesParsed) {
+                // Response wasn't parsed by the batch request itself (e.g. it was provided by interceptor)
+                batchRequest.parseSubresponses((Map<String, Subresponse>) data.getData());
+            }
+            for (Operation operation : operations) {
+                operation.request.deliverParsedNetworkResponse(operation.parsedResponse);
+            }
+        }
+
+        @Override
+        public void onError(ResponseData data, Object tag) {
+            VolleyError error = data.getError();
+            if (error == null) {
+                error = new VolleyError();
+            }
+            for (Operation operation : operations) {
+                operation.request.deliverNetworkError(error);
+            }
+        }
+
+        @Override
+        public void onCancel(Object tag) {
+            for (Operation operation : operations) {
+                if (operation.listener != null) {
+                    operation.listener.onCancel(operation.tag);
+                }
+            }
+        }
+    }
+
+    static class BlueprintItem {
+        String requestId;
+        String uri;
+        String action;
+        Map<String, String> headers;
+        String body;
+    }
+
+    static class Subresponse {
+        Map<String, List<String>> headers;
+        String body;
+
+        String getHeader(String name) {
+            if (headers == null) {
+                return null;
+            }
+            for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+                if (name.equalsIgnoreCase(entry.getKey()) && entry.getValue() != null && !entry.getValue().isEmpty()) {
+                    return entry.getValue().get(0);
+                }
+            }
+            return null;
+        }
+
+        NetworkResponse toNetworkResponse() {
+            int statusCode = HttpURLConnection.HTTP_OK;
+            String status = getHeader(STATUS_HEADER);
+            if (status != null) {
+                try {
+                    statusCode = Integer.parseInt(status.trim());
+                } catch (NumberFormatException e) {
+                    L.w("Invalid subresponse status: " + status);
+                }
+            }
+
+            Map<String, String> responseHeaders = new HashMap<String, String>();
+            if (headers != null) {
+                for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+                    if (entry.getValue() != null && !entry.getValue().isEmpty()) {
+                        responseHeaders.put(entry.getKey().toLowerCase(Locale.US), TextUtils.join(", ", entry.getValue()));
+                    }
+                }
+            }
+
+            byte[] data;
+            try {
+                data = body != null ? body.getBytes("utf-8") : new byte[0];
+            } catch (UnsupportedEncodingException e) {
+                data = body.getBytes();
+            }
+            return new NetworkResponse(statusCode, data, responseHeaders, false);
+        }
+    }
+}
@@ -22,27 +22,52 @@
 
 package com.ls.drupal;
 
+import com.android.volley.Cache;
 import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.NetworkResponse;
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
+import com.android.volley.Response;
+import com.android.volley.RetryPolicy;
 import com.android.volley.toolbox.Volley;
 import com.ls.drupal.login.AnonymousLoginManager;
+import com.ls.drupal.login.IExpiringLoginManager;
 import com.ls.drupal.login.ILoginManager;
 import com.ls.http.base.BaseRequest;
 import com.ls.http.base.BaseRequest.OnResponseListener;
 import com.ls.http.base.BaseRequest.RequestFormat;
 import com.ls.http.base.BaseRequest.RequestMethod;
+import com.ls.http.base.LatencyTracker;
 import com.ls.http.base.RequestConfig;
 import com.ls.http.base.ResponseData;
+import com.ls.http.base.ResponseMemoryCache;
+import com.ls.http.base.RetryPolicyFactory;
+import com.ls.util.internal.SharedExecutor;
+import com.ls.util.internal.SharedScheduler;
 import com.ls.util.internal.VolleyResponseUtils;
 
 import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.text.TextUtils;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
 
 /**
  * Class is used to generate requests based on DrupalEntities and attach them to request queue
@@ -52,6 +77,13 @@ import java.util.Map;
 public class DrupalClient implements OnResponseListener {
     public enum DuplicateRequestPolicy {ALLOW,ATTACH,REJECT}
 
+    /**
+     * Default time before login data expiration, login data of {@link IExpiringLoginManager} is refreshed at
+     */
+    public static final long DEFAULT_LOGIN_REFRESH_LEAD_TIME = 30 * 1000;
+    private static final long MIN_LOGIN_REFRESH_DELAY = 5 * 1000;
+    private static final long MAX_LOGIN_REFRESH_RETRY_DELAY = 5 * 60 * 1000;
+
     private final RequestFormat requestFormat;
     private String baseURL;
     private RequestQueue queue;
@@ -62,6 +94,27 @@ public class DrupalClient implements OnResponseListener {
     private RequestProgressListener progressListener;
 
     private int requestTimeout = 1500;
+    private RetryPolicyFactory retryPolicyFactory;
+    private final LatencyTracker latencyTracker = new LatencyTracker();
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final Object interceptorsLock = new Object();
+    private volatile RequestInterceptor[] interceptors = new RequestInterceptor[0];
+    private volatile HedgingPolicy hedgingPolicy;
+    private volatile RequestRateLimiter rateLimiter;
+    private volatile AdmissionController admissionController;
+    private volatile ResponseMemoryCache memoryCache;
+    private volatile OfflineOutbox outbox;
+    private final Set<BaseRequest> postponedRequests = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<BaseRequest, Boolean>()));
+    private final List<BaseRequest> pendingPrefetches = new LinkedList<BaseRequest>();
+    private final Set<BaseRequest> activePrefetches = Collections.newSetFromMap(new IdentityHashMap<BaseRequest, Boolean>());
+    private final PrefetchListener prefetchListener = new PrefetchListener();
+    private int startingRegularRequests;
+    private volatile long loginRefreshLeadTime = DEFAULT_LOGIN_REFRESH_LEAD_TIME;
+    private final Object loginRefreshLock = new Object();
+    private ScheduledFuture<?> loginRefreshFuture;
+    private long failedLoginRefreshExpirationTime;
+    private int loginRefreshFailureCount;
+    private Context applicationContext;
 
     private DuplicateRequestPolicy duplicateRequestPolicy = DuplicateRequestPolicy.ATTACH;
 
@@ -96,6 +149,19 @@ public class DrupalClient implements OnResponseListener {
         void onRequestFinished(DrupalClient theClient, int activeRequests);
     }
 
+    /**
+     * Progress listener, additionally notified about admission queue backpressure, see {@link AdmissionController}
+     */
+    public interface RequestBackpressureListener extends RequestProgressListener {
+
+        /**
+         * Called when admission queue becomes full (active) and when it's drained to a half (inactive)
+         *
+         * @param queuedRequests number of requests waiting for admission
+         */
+        void onBackpressureChanged(DrupalClient theClient, boolean active, int queuedRequests);
+    }
+
     /**
      * @param theBaseURL this URL will be appended with {@link AbstractBaseDrupalEntity#getPath()}
      * @param theContext application context, used to create request queue
@@ -121,6 +187,20 @@ public class DrupalClient implements OnResponseListener {
      */
     public DrupalClient(@NonNull String theBaseURL, @NonNull Context theContext, @Nullable RequestFormat theFormat, @Nullable ILoginManager theLoginManager) {
         this(theBaseURL, getDefaultQueue(theContext), theFormat, theLoginManager);
+        this.applicationContext = theContext.getApplicationContext();
+    }
+
+    /**
+     * @param theBaseURL            this URL will be appended with {@link AbstractBaseDrupalEntity#getPath()}
+     * @param theContext            application context, used to create request queue
+     * @param theFormat             server request/response format. Defines format of serialized objects and server response format, see {@link com.ls.http.base.BaseRequest.RequestFormat}
+     * @param theLoginManager       contains user profile data and can update request parameters and headers in order to apply it.
+     * @param networkThreadPoolSize number of requests, performed simultaneously. Pass {@link VolleyResponseUtils#ADAPTIVE_NETWORK_THREAD_POOL_SIZE}
+     *                              in order to adjust it according to queue depth and observed round-trip time.
+     */
+    public DrupalClient(@NonNull String theBaseURL, @NonNull Context theContext, @Nullable RequestFormat theFormat, @Nullable ILoginManager theLoginManager, int networkThreadPoolSize) {
+        this(theBaseURL, VolleyResponseUtils.newRequestQueue(theContext.getApplicationContext(), null, -1, networkThreadPoolSize), theFormat, theLoginManager);
+        this.applicationContext = theContext.getApplicationContext();
     }
 
     @SuppressWarnings("null")
@@ -170,7 +250,14 @@ public class DrupalClient implements OnResponseListener {
      * @return {@link com.ls.http.base.ResponseData} object, containing request result code and string or error and deserialized object, specified in request.
      */
     public ResponseData performRequest(BaseRequest request, Object tag, final OnResponseListener listener, boolean synchronous) {
-        request.setRetryPolicy(new DefaultRetryPolicy(requestTimeout, 1, 1));
+        request.setRetryPolicy(createRetryPolicy(request));
+        if (this.waitForLoginRefresh(request, tag, listener, synchronous)) {
+            return null;
+        }
+        return performRequestWithCurrentLogin(request, tag, listener, synchronous);
+    }
+
+    private ResponseData performRequestWithCurrentLogin(BaseRequest request, Object tag, final OnResponseListener listener, boolean synchronous) {
         if (!loginManager.shouldRestoreLogin()) {
             return performRequestNoLoginRestore(request, tag, listener, synchronous);
         } else {
@@ -178,22 +265,66 @@ public class DrupalClient implements OnResponseListener {
         }
     }
 
+    private RetryPolicy createRetryPolicy(BaseRequest request) {
+        RetryPolicyFactory factory = request.getRetryPolicyFactory();
+        if (factory == null) {
+            factory = this.retryPolicyFactory;
+        }
+        if (factory != null) {
+            return factory.newRetryPolicy(request);
+        }
+        return new DefaultRetryPolicy(requestTimeout, 1, 1);
+    }
+
     protected ResponseData performRequestNoLoginRestore(BaseRequest request, Object tag, OnResponseListener listener, boolean synchronous) {
         request.setTag(tag);
         request.setResponseListener(this);
         this.loginManager.applyLoginDataToRequest(request);
+        ResponseData interceptedResponse = this.interceptRequest(request);
         request.setSmartComparisonEnabled(this.duplicateRequestPolicy !=DuplicateRequestPolicy.ALLOW);
+        if (request.isSmartComparisonEnabled()) {
+            // Request is sealed at this point: fingerprint is calculated once and used for duplicate lookups
+            request.getFingerprint();
+        }
+
+        boolean prefetchesSuspended = !this.isPrefetch(request) && this.onRegularRequest(request);
 
         boolean wasRegisterred ;
         boolean skipDuplicateRequestListeners = this.duplicateRequestPolicy == DrupalClient.DuplicateRequestPolicy.REJECT;
-        synchronized (listeners) {
-            wasRegisterred = this.listeners.registerListenerForRequest(request, listener,tag,skipDuplicateRequestListeners);
+        wasRegisterred = this.listeners.registerListenerForRequest(request, listener,tag,skipDuplicateRequestListeners);
+        if (prefetchesSuspended) {
+            this.resumePrefetches();
         }
 
         if(wasRegisterred||synchronous) {
+            this.metrics.onRequestStarted();
             this.onNewRequestStarted();
-            return request.performRequest(synchronous, queue);
+            if (interceptedResponse != null) {
+                request.addMarker("intercepted");
+                return performRequestLocally(request, interceptedResponse, synchronous);
+            }
+            ResponseData cachedResponse = this.getMemoryCachedResponse(request);
+            if (cachedResponse != null) {
+                request.addMarker("memory-cache-hit");
+                return performRequestLocally(request, cachedResponse, synchronous);
+            }
+            AdmissionController controller = this.admissionController;
+            if (controller != null) {
+                List<BaseRequest> droppedRequests = new ArrayList<BaseRequest>();
+                AdmissionController.Decision decision = controller.admit(request, synchronous, droppedRequests);
+                for (BaseRequest droppedRequest : droppedRequests) {
+                    this.cancelRequest(droppedRequest);
+                }
+                if (decision == AdmissionController.Decision.QUEUED) {
+                    request.addMarker("admission-queued");
+                    return null;
+                } else if (decision == AdmissionController.Decision.REJECTED) {
+                    return performRequestRejected(request, synchronous);
+                }
+            }
+            return throttleRequest(request, synchronous, wasRegisterred);
         }else{
+            this.metrics.onDuplicateRequest(!skipDuplicateRequestListeners);
             if(skipDuplicateRequestListeners && listener != null)
             {
                 listener.onCancel(tag);
@@ -202,6 +333,342 @@ public class DrupalClient implements OnResponseListener {
         }
     }
 
+    private ResponseData throttleRequest(BaseRequest request, boolean synchronous, boolean wasRegisterred) {
+        RequestRateLimiter limiter = this.rateLimiter;
+        long delay = limiter != null ? limiter.reserve(getRelativePath(request.getUrl())) : 0;
+        if (delay > 0) {
+            if (synchronous) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else {
+                return postponeRequest(request, wasRegisterred, delay);
+            }
+        }
+        return dispatchRequest(request, synchronous, wasRegisterred);
+    }
+
+    private ResponseData dispatchRequest(BaseRequest request, boolean synchronous, boolean wasRegisterred) {
+        CircuitBreaker breaker = this.getCircuitBreaker(request);
+        if (breaker != null && !breaker.allowRequest()) {
+            return performRequestCircuitOpen(request, breaker.getHost(), synchronous);
+        }
+        if (!synchronous && wasRegisterred) {
+            return performRequestHedged(request);
+        }
+        return request.performRequest(synchronous, queue);
+    }
+
+    /**
+     * Dispatches asynchronous request after delay. Postponed request isn't in queue yet, so it's tracked separately in order to be canceled.
+     */
+    private ResponseData postponeRequest(final BaseRequest request, final boolean wasRegisterred, long delay) {
+        request.addMarker("rate-limited");
+        this.postponedRequests.add(request);
+        SharedScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (postponedRequests.remove(request)) {
+                    dispatchRequest(request, false, wasRegisterred);
+                }
+            }
+        }, delay);
+        return null;
+    }
+
+    private String getRelativePath(String url) {
+        String path;
+        if (!TextUtils.isEmpty(baseURL) && url.startsWith(baseURL)) {
+            path = url.substring(baseURL.length());
+        } else {
+            path = Uri.parse(url).getPath();
+            if (path == null) {
+                path = "";
+            }
+        }
+        int queryStart = path.indexOf('?');
+        return queryStart >= 0 ? path.substring(0, queryStart) : path;
+    }
+
+    private CircuitBreaker getCircuitBreaker(BaseRequest request) {
+        ConnectionManager connectionManager = ConnectionManager.instance();
+        if (!connectionManager.isCircuitBreakerEnabled()) {
+            return null;
+        }
+        return connectionManager.getCircuitBreaker(Uri.parse(request.getUrl()).getHost());
+    }
+
+    /**
+     * Fails request without touching the network, cached response is delivered instead of error if present.
+     * Asynchronous requests read and parse cached response on worker thread and are delivered on main thread, as volley does.
+     */
+    private ResponseData performRequestCircuitOpen(final BaseRequest request, final String host, boolean synchronous) {
+        request.addMarker("circuit-open");
+        if (synchronous) {
+            return request.deliverParsedNetworkResponse(parseCircuitOpenResult(request, host));
+        } else {
+            SharedExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final Response<ResponseData> result = parseCircuitOpenResult(request, host);
+                    new Handler(Looper.getMainLooper()).post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!request.isCanceled()) {
+                                request.deliverParsedNetworkResponse(result);
+                            }
+                        }
+                    });
+                }
+            });
+            return null;
+        }
+    }
+
+    private Response<ResponseData> parseCircuitOpenResult(BaseRequest request, String host) {
+        Cache.Entry entry = request.shouldCache() ? queue.getCache().get(request.getCacheKey()) : null;
+        if (entry != null) {
+            return request.parseExternalResponse(new NetworkResponse(entry.data, entry.responseHeaders));
+        } else {
+            return request.parseExternalError(new CircuitOpenError(host));
+        }
+    }
+
+    private ResponseData getMemoryCachedResponse(BaseRequest request) {
+        ResponseMemoryCache cache = this.memoryCache;
+        if (cache == null || request.getMethod() != Request.Method.GET || !request.shouldCache()) {
+            return null;
+        }
+        ResponseData cachedResponse = cache.get(request.getFingerprint());
+        this.metrics.onMemoryCacheLookup(cachedResponse != null);
+        if (cachedResponse == null) {
+            return null;
+        }
+        ResponseData result = new ResponseData();
+        cachedResponse.cloneTo(result);
+        return result;
+    }
+
+    /**
+     * Delivers local response (from memory cache or interceptor) without touching disk cache and network. Asynchronous requests are delivered on main thread, as volley does.
+     */
+    private ResponseData performRequestLocally(final BaseRequest request, final ResponseData response, boolean synchronous) {
+        if (synchronous) {
+            return deliverLocalResponse(request, response);
+        } else {
+            new Handler(Looper.getMainLooper()).post(new Runnable() {
+                @Override
+                public void run() {
+                    deliverLocalResponse(request, response);
+                }
+            });
+            return null;
+        }
+    }
+
+    private static ResponseData deliverLocalResponse(BaseRequest request, ResponseData response) {
+        if (response.getError() != null) {
+            return request.deliverParsedError(response);
+        } else {
+            return request.deliverParsedResponse(response);
+        }
+    }
+
+    // Interceptors
+
+    /**
+     * Adds interceptor to the end of the chain, see {@link RequestInterceptor} for details.
+     */
+    public void addInterceptor(@NonNull RequestInterceptor interceptor) {
+        synchronized (this.interceptorsLock) {
+            RequestInterceptor[] current = this.interceptors;
+            RequestInterceptor[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = interceptor;
+            this.interceptors = updated;
+        }
+    }
+
+    public void removeInterceptor(@NonNull RequestInterceptor interceptor) {
+        synchronized (this.interceptorsLock) {
+            RequestInterceptor[] current = this.interceptors;
+            for (int counter = 0; counter < current.length; counter++) {
+                if (current[counter] == interceptor) {
+                    RequestInterceptor[] updated = new RequestInterceptor[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, counter);
+                    System.arraycopy(current, counter + 1, updated, counter, current.length - counter - 1);
+                    this.interceptors = updated;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return interceptors in chain order
+     */
+    public List<RequestInterceptor> getInterceptors() {
+        return Collections.unmodifiableList(Arrays.asList(this.interceptors));
+    }
+
+    /**
+     * @return response of the first interceptor, which answered the request, or null if request has to be performed
+     */
+    ResponseData interceptRequest(BaseRequest request) {
+        // Chain is iterated over array snapshot, so no objects are allocated per request
+        RequestInterceptor[] chain = this.interceptors;
+        for (int counter = 0; counter < chain.length; counter++) {
+            ResponseData response = chain[counter].onRequest(request);
+            if (response != null) {
+                return response;
+            }
+        }
+        return null;
+    }
+
+    void interceptResponse(BaseRequest request, ResponseData data) {
+        RequestInterceptor[] chain = this.interceptors;
+        for (int counter = chain.length - 1; counter >= 0; counter--) {
+            chain[counter].onResponse(request, data);
+        }
+    }
+
+    /**
+     * @param keyRequest      request, response is cached for
+     * @param responseRequest request, response was received for (differs from key request for hedged requests)
+     */
+    private void updateMemoryCache(BaseRequest keyRequest, BaseRequest responseRequest, ResponseData data) {
+        ResponseMemoryCache cache = this.memoryCache;
+        if (cache == null || data.getError() != null) {
+            return;
+        }
+
+        if (keyRequest.getMethod() != Request.Method.GET) {
+            // Resource was modified on server
+            cache.invalidateUrl(keyRequest.getUrl());
+        } else if (keyRequest.shouldCache() && !data.isNotModified() && data.getData() != null) {
+            ResponseData cachedResponse = new ResponseData();
+            data.cloneTo(cachedResponse);
+            cache.put(keyRequest.getFingerprint(), keyRequest.getUrl(), cachedResponse, data.getResponseSize(), responseRequest.getResponseExpiryTime());
+        }
+    }
+
+    /**
+     * Fails request, rejected by admission controller. Asynchronous requests are delivered on main thread, as volley does.
+     */
+    private ResponseData performRequestRejected(final BaseRequest request, boolean synchronous) {
+        request.addMarker("admission-rejected");
+        if (synchronous) {
+            return request.deliverNetworkError(new AdmissionRejectedError());
+        } else {
+            new Handler(Looper.getMainLooper()).post(new Runnable() {
+                @Override
+                public void run() {
+                    request.deliverNetworkError(new AdmissionRejectedError());
+                }
+            });
+            return null;
+        }
+    }
+
+    private void releaseAdmission(BaseRequest request) {
+        AdmissionController controller = this.admissionController;
+        if (controller != null) {
+            for (BaseRequest admittedRequest : controller.release(request)) {
+                this.throttleRequest(admittedRequest, false, true);
+            }
+        }
+    }
+
+    /**
+     * Cancels request the same way {@link #cancelByTag(Object)} does and notifies its listeners
+     */
+    private void cancelRequest(BaseRequest request) {
+        this.cancelRequests(Collections.<Request<?>>singletonList(request));
+    }
+
+    /**
+     * Cancels requests, removes them from postponed set and admission queue, releases their admission slots and notifies listeners.
+     * Volley drops canceled requests without callback, so slots have to be released here.
+     */
+    private void cancelRequests(Collection<? extends Request<?>> requests) {
+        final Set<BaseRequest> canceledRequests = Collections.newSetFromMap(new IdentityHashMap<BaseRequest, Boolean>());
+        List<List<ResponseListenersSet.ListenerHolder>> canceledListeners = new ArrayList<List<ResponseListenersSet.ListenerHolder>>();
+        for (Request<?> request : requests) {
+            List<ResponseListenersSet.ListenerHolder> listenerList = this.listeners.removeListenersForRequest(request);
+            if (listenerList != null) {
+                canceledListeners.add(listenerList);
+            }
+            request.cancel();
+            if (request instanceof BaseRequest) {
+                canceledRequests.add((BaseRequest) request);
+            }
+        }
+
+        if (!canceledRequests.isEmpty()) {
+            this.cancelPostponedRequests(canceledRequests);
+            this.cancelQueuedAdmissions(new RequestQueue.RequestFilter() {
+                @Override
+                public boolean apply(Request<?> request) {
+                    return canceledRequests.contains(request);
+                }
+            }, canceledRequests);
+        }
+        this.notifyRequestsCanceled(canceledListeners);
+    }
+
+    private ResponseData performRequestHedged(BaseRequest request) {
+        HedgingPolicy policy = this.hedgingPolicy;
+        if (policy == null || request.getMethod() != Request.Method.GET || request.getClass() != BaseRequest.class || request.isStaleWhileRevalidate()) {
+            return request.performRequest(false, queue);
+        }
+
+        policy.onHedgeableRequest();
+        long hedgeDelay = this.latencyTracker.getPercentile(request.getUrl(), policy.getPercentile(), policy.getMinSamples());
+        if (hedgeDelay < 0) {
+            return request.performRequest(false, queue);
+        }
+
+        HedgedRequest hedgedRequest = new HedgedRequest(request, policy);
+        request.setResponseListener(hedgedRequest);
+        ResponseData result = request.performRequest(false, queue);
+        hedgedRequest.scheduleHedge(Math.max(policy.getMinDelay(), hedgeDelay));
+        return result;
+    }
+
+    private void recordNetworkOutcome(BaseRequest request, ResponseData data) {
+        if (data.getError() == null) {
+            // Failed attempts (timeouts especially) would inflate retry timeouts and hedge delays, derived from these statistics
+            this.latencyTracker.record(request.getUrl(), request.getNetworkLatency());
+            if (request.getNetworkLatency() >= 0) {
+                this.metrics.onQueueResponse(true);
+            } else if (request.getCacheEntry() != null) {
+                this.metrics.onQueueResponse(false);
+            }
+        }
+        this.recordCircuitBreakerOutcome(request, data);
+        RequestRateLimiter limiter = this.rateLimiter;
+        if (limiter != null) {
+            limiter.onResponse(data.getStatusCode(), data.getHeaders());
+        }
+    }
+
+    private void recordCircuitBreakerOutcome(BaseRequest request, ResponseData data) {
+        long latency = request.getNetworkLatency();
+        if (latency < 0) {
+            return;
+        }
+        CircuitBreaker breaker = this.getCircuitBreaker(request);
+        if (breaker != null) {
+            if (VolleyResponseUtils.isServerFailure(data.getError())) {
+                breaker.onFailure(latency);
+            } else {
+                breaker.onSuccess(latency);
+            }
+        }
+    }
+
     private ResponseData performRequestLoginRestore(final BaseRequest request, Object tag, final OnResponseListener listener, final boolean synchronous) {
         if (synchronous) {
             return performRequestLoginRestoreSynchrounous(request, tag, listener);
@@ -211,6 +678,7 @@ public class DrupalClient implements OnResponseListener {
     }
 
     private ResponseData performRequestLoginRestoreAsynchrounous(final BaseRequest request, Object tag, final OnResponseListener listener) {
+        final long loginGeneration = this.getLoginRestorer().getGeneration();
         final OnResponseListener loginRestoreResponseListener = new OnResponseListener() {
             @Override
             public void onResponseReceived(ResponseData data, Object tag) {
@@ -223,7 +691,7 @@ public class DrupalClient implements OnResponseListener {
             public void onError(ResponseData data, Object tag) {
                 if (VolleyResponseUtils.isAuthError(data.getError())) {
                     if (loginManager.canRestoreLogin()) {
-                        new RestoreLoginAttemptTask(request, listener, tag, data).execute();
+                        new RestoreLoginAttemptTask(request, listener, tag, data, loginGeneration).execute();
                     } else {
                         loginManager.onLoginRestoreFailed();
                         if (listener != null) {
@@ -249,6 +717,8 @@ public class DrupalClient implements OnResponseListener {
     }
 
     private ResponseData performRequestLoginRestoreSynchrounous(final BaseRequest request, Object tag, final OnResponseListener listener) {
+        LoginRestorer restorer = this.getLoginRestorer();
+        long loginGeneration = restorer.getGeneration();
         final OnResponseListener loginRestoreResponseListener = new OnResponseListener() {
             @Override
             public void onResponseReceived(ResponseData data, Object tag) {
@@ -283,7 +753,7 @@ public class DrupalClient implements OnResponseListener {
         ResponseData result = performRequestNoLoginRestore(request, tag, loginRestoreResponseListener, true);
         if (VolleyResponseUtils.isAuthError(result.getError())) {
             if (loginManager.canRestoreLogin()) {
-                boolean restored = loginManager.restoreLoginData(queue);
+                boolean restored = restorer.restoreSynchronously(queue, loginGeneration, this.metrics);
                 if (restored) {
                     result = performRequestNoLoginRestore(request, tag, new OnResponseAuthListenerDecorator(listener), true);
                 } else {
@@ -305,10 +775,7 @@ public class DrupalClient implements OnResponseListener {
      * @return ResponseData object or null if request was asynchronous.
      */
     public ResponseData getObject(AbstractBaseDrupalEntity entity, RequestConfig config, Object tag, OnResponseListener listener, boolean synchronous) {
-        BaseRequest request = new BaseRequest(RequestMethod.GET, getURLForEntity(entity), applyDefaultFormat(config));
-        request.setGetParameters(entity.getItemRequestGetParameters(RequestMethod.GET));
-        request.addRequestHeaders(entity.getItemRequestHeaders(RequestMethod.GET));
-        return this.performRequest(request, tag, listener, synchronous);
+        return this.performRequest(newEntityRequest(RequestMethod.GET, entity, config), tag, listener, synchronous);
     }
 
     /**
@@ -319,16 +786,7 @@ public class DrupalClient implements OnResponseListener {
      * @return ResponseData object or null if request was asynchronous.
      */
     public ResponseData postObject(AbstractBaseDrupalEntity entity, RequestConfig config, Object tag, OnResponseListener listener, boolean synchronous) {
-        BaseRequest request = new BaseRequest(RequestMethod.POST, getURLForEntity(entity),  applyDefaultFormat(config));
-        Map<String, String> postParams = entity.getItemRequestPostParameters();
-        if (postParams == null || postParams.isEmpty()) {
-            request.setObjectToPost(entity.getManagedData());
-        } else {
-            request.setPostParameters(postParams);
-        }
-        request.setGetParameters(entity.getItemRequestGetParameters(RequestMethod.POST));
-        request.addRequestHeaders(entity.getItemRequestHeaders(RequestMethod.POST));
-        return this.performRequest(request, tag, listener, synchronous);
+        return this.performRequest(newEntityRequest(RequestMethod.POST, entity, config), tag, listener, synchronous);
     }
 
     /**
@@ -339,16 +797,7 @@ public class DrupalClient implements OnResponseListener {
      * @return ResponseData object or null if request was asynchronous.
      */
     public ResponseData putObject(AbstractBaseDrupalEntity entity, RequestConfig config, Object tag, OnResponseListener listener, boolean synchronous) {
-        BaseRequest request = new BaseRequest(RequestMethod.PUT, getURLForEntity(entity), applyDefaultFormat(config));
-        Map<String, String> postParams = entity.getItemRequestPostParameters();
-        if (postParams == null || postParams.isEmpty()) {
-            request.setObjectToPost(entity.getManagedData());
-        } else {
-            request.setPostParameters(postParams);
-        }
-        request.setGetParameters(entity.getItemRequestGetParameters(RequestMethod.PUT));
-        request.addRequestHeaders(entity.getItemRequestHeaders(RequestMethod.PUT));
-        return this.performRequest(request, tag, listener, synchronous);
+        return this.performRequest(newEntityRequest(RequestMethod.PUT, entity, config), tag, listener, synchronous);
     }
 
 
@@ -360,11 +809,7 @@ public class DrupalClient implements OnResponseListener {
      * @return ResponseData object or null if request was asynchronous.
      */
     public ResponseData patchObject(AbstractBaseDrupalEntity entity, RequestConfig config, Object tag, OnResponseListener listener, boolean synchronous) {
-        BaseRequest request = new BaseRequest(RequestMethod.PATCH, getURLForEntity(entity), applyDefaultFormat(config));
-        request.setGetParameters(entity.getItemRequestGetParameters(RequestMethod.PATCH));
-        request.setObjectToPost(entity.getPatchObject());
-        request.addRequestHeaders(entity.getItemRequestHeaders(RequestMethod.PATCH));
-        return this.performRequest(request, tag, listener, synchronous);
+        return this.performRequest(newEntityRequest(RequestMethod.PATCH, entity, config), tag, listener, synchronous);
     }
 
     /**
@@ -376,124 +821,531 @@ public class DrupalClient implements OnResponseListener {
      */
     public ResponseData deleteObject(AbstractBaseDrupalEntity entity, RequestConfig config, Object tag, OnResponseListener listener,
             boolean synchronous) {
-        BaseRequest request = new BaseRequest(RequestMethod.DELETE, getURLForEntity(entity), applyDefaultFormat(config));
-        request.setGetParameters(entity.getItemRequestGetParameters(RequestMethod.DELETE));
-        request.addRequestHeaders(entity.getItemRequestHeaders(RequestMethod.DELETE));
-        return this.performRequest(request, tag, listener, synchronous);
+        return this.performRequest(newEntityRequest(RequestMethod.DELETE, entity, config), tag, listener, synchronous);
     }
 
     /**
-     * @return request timeout millis
+     * @return new batch, used to perform several entity operations within single request to Drupal Subrequests endpoint.
      */
-    public int getRequestTimeout() {
-        return requestTimeout;
+    public DrupalBatch newBatch() {
+        return new DrupalBatch(this);
     }
 
+    // Future-based API
+
     /**
-     * @param requestTimeout request timeout millis
+     * @param request Request object to be performed
+     * @param tag     request tag, wrapped to private per-future tag, see {@link FutureRequestTag}
+     * @return future, completed with {@link com.ls.http.base.ResponseData} or failed with {@link DrupalRequestException}.
+     * Canceling the future cancels the request.
      */
-    public void setRequestTimeout(int requestTimeout) {
-        this.requestTimeout = requestTimeout;
+    public DrupalFuture<ResponseData> performRequestAsync(BaseRequest request, Object tag) {
+        final DrupalFuture<ResponseData> future = new DrupalFuture<ResponseData>();
+        final FutureRequestTag futureTag = new FutureRequestTag(tag);
+        future.setCancellationHandler(new Runnable() {
+            @Override
+            public void run() {
+                // Listener, registered for request, may be wrapped (e.g. for login restore), so request is found by tag
+                cancelByTag(futureTag);
+            }
+        });
+        this.performRequest(request, futureTag, new FutureResponseListener(future), false);
+        return future;
     }
 
-    private RequestConfig applyDefaultFormat(RequestConfig config)
-    {
-        if(config == null)
-        {
-            config = new RequestConfig();
-        }
+    /**
+     * @see #getObject(AbstractBaseDrupalEntity, RequestConfig, Object, OnResponseListener, boolean)
+     */
+    public DrupalFuture<ResponseData> getObjectAsync(AbstractBaseDrupalEntity entity, RequestConfig config, Object tag) {
+        return this.performRequestAsync(newEntityRequest(RequestMethod.GET, entity, config), tag);
+    }
 
-        if(config.getRequestFormat()==null)
-        {
-            config.setRequestFormat(this.requestFormat);
-        }
+    /**
+     * @see #postObject(AbstractBaseDrupalEntity, RequestConfig, Object, OnResponseListener, boolean)
+     */
+    public DrupalFuture<ResponseData> postObjectAsync(AbstractBaseDrupalEntity entity, RequestConfig config, Object tag) {
+        return this.performRequestAsync(newEntityRequest(RequestMethod.POST, entity, config), tag);
+    }
 
-        return config;
+    /**
+     * @see #putObject(AbstractBaseDrupalEntity, RequestConfig, Object, OnResponseListener, boolean)
+     */
+    public DrupalFuture<ResponseData> putObjectAsync(AbstractBaseDrupalEntity entity, RequestConfig config, Object tag) {
+        return this.performRequestAsync(newEntityRequest(RequestMethod.PUT, entity, config), tag);
     }
 
-    private String getURLForEntity(AbstractBaseDrupalEntity entity) {
-        String path = entity.getPath();
+    /**
+     * @see #patchObject(AbstractBaseDrupalEntity, RequestConfig, Object, OnResponseListener, boolean)
+     */
+    public DrupalFuture<ResponseData> patchObjectAsync(AbstractBaseDrupalEntity entity, RequestConfig config, Object tag) {
+        return this.performRequestAsync(newEntityRequest(RequestMethod.PATCH, entity, config), tag);
+    }
 
-        if(TextUtils.isEmpty(baseURL))
-        {
-            return path;
-        }else {
-            if (!TextUtils.isEmpty(path) && path.charAt(0) == '/') {
-                path = path.substring(1);
-            }
-            return this.baseURL + path;
-        }
+    /**
+     * @see #deleteObject(AbstractBaseDrupalEntity, RequestConfig, Object, OnResponseListener, boolean)
+     */
+    public DrupalFuture<ResponseData> deleteObjectAsync(AbstractBaseDrupalEntity entity, RequestConfig config, Object tag) {
+        return this.performRequestAsync(newEntityRequest(RequestMethod.DELETE, entity, config), tag);
     }
 
     /**
-     * This request is always synchronous and has no callback
+     * @param method HTTP method of the request
+     * @param entity Object, specifying request parameters
+     * @param config Entity, containing additional request parameters
+     * @return request, ready to be performed
      */
-    public final Object login(final String userName, final String password) {
-        return this.loginManager.login(userName, password, queue);
+    protected BaseRequest newEntityRequest(RequestMethod method, AbstractBaseDrupalEntity entity, RequestConfig config) {
+        BaseRequest request = new BaseRequest(method, getURLForEntity(entity), applyDefaultFormat(config));
+        switch (method) {
+            case POST:
+            case PUT:
+                Map<String, String> postParams = entity.getItemRequestPostParameters();
+                if (postParams == null || postParams.isEmpty()) {
+                    request.setObjectToPost(entity.getManagedData());
+                } else {
+                    request.setPostParameters(postParams);
+                }
+                break;
+            case PATCH:
+                request.setObjectToPost(entity.getPatchObject());
+                break;
+            default:
+                break;
+        }
+        request.setGetParameters(entity.getItemRequestGetParameters(method));
+        request.addRequestHeaders(entity.getItemRequestHeaders(method));
+        return request;
     }
 
     /**
-     * This request is always synchronous
+     * @return request timeout millis
      */
-    public final void logout() {
-        this.loginManager.logout(queue);
+    public int getRequestTimeout() {
+        return requestTimeout;
     }
 
     /**
-     * @return true all necessary user id data is fetched and login can be restored automatically
+     * @param requestTimeout request timeout millis
      */
-    public boolean isLogged() {
-        return this.loginManager.canRestoreLogin();
+    public void setRequestTimeout(int requestTimeout) {
+        this.requestTimeout = requestTimeout;
     }
 
-    public ILoginManager getLoginManager() {
-        return loginManager;
+    /**
+     * @return factory of default retry policy, null if fixed policy with {@link #getRequestTimeout()} timeout and single retry is used
+     */
+    public RetryPolicyFactory getRetryPolicyFactory() {
+        return retryPolicyFactory;
     }
 
-    public void setLoginManager(ILoginManager loginManager) {
-        this.loginManager = loginManager;
+    /**
+     * @param retryPolicyFactory factory of retry policy for requests without one, specified by {@link com.ls.http.base.RequestConfig}.
+     *                           Pass null to use fixed policy with {@link #getRequestTimeout()} timeout and single retry.
+     *                           See {@link com.ls.http.base.AdaptiveRetryPolicy.Factory}
+     */
+    public void setRetryPolicyFactory(RetryPolicyFactory retryPolicyFactory) {
+        this.retryPolicyFactory = retryPolicyFactory;
     }
 
     /**
-     * Synchronous login restore attempt
-     *
-     * @return false if login restore failed.
+     * @return in-memory cache of parsed responses, null if it's disabled
      */
-    public boolean restoreLogin() {
-        if (this.loginManager.canRestoreLogin()) {
-            return this.loginManager.restoreLoginData(queue);
-        }
-        return false;
+    public ResponseMemoryCache getMemoryCache() {
+        return memoryCache;
     }
 
-    @Override
-    public void onResponseReceived(ResponseData data, BaseRequest request) {
-        synchronized (listeners) {
-            List<ResponseListenersSet.ListenerHolder> listenerList = this.listeners.getListenersForRequest(request);
-            this.listeners.removeListenersForRequest(request);
-            this.onRequestComplete();
-            if (listenerList != null) {
-                for (ResponseListenersSet.ListenerHolder holder : listenerList) {
-                    holder.getListener().onResponseReceived(data, holder.getTag());
+    /**
+     * @param memoryCache in-memory cache of parsed GET responses, consulted before volley cache and network. Null disables it (default).
+     *                    Note: cached response objects are shared between deliveries, so they must not be modified by consumers.
+     */
+    public void setMemoryCache(ResponseMemoryCache memoryCache) {
+        this.memoryCache = memoryCache;
+    }
+
+    /**
+     * @return admission controller, limiting number of simultaneous requests, null if number isn't limited
+     */
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    /**
+     * @param admissionController controller, limiting number of simultaneous requests, null disables limit (default).
+     *                            Backpressure changes are reported to progress listener, implementing {@link RequestBackpressureListener}.
+     *                            Has to be set before any request is performed.
+     */
+    public void setAdmissionController(AdmissionController admissionController) {
+        if (admissionController != null) {
+            admissionController.setBackpressureListener(new AdmissionController.BackpressureListener() {
+                @Override
+                public void onBackpressureChanged(boolean active, int queuedRequests) {
+                    RequestProgressListener listener = progressListener;
+                    if (listener instanceof RequestBackpressureListener) {
+                        ((RequestBackpressureListener) listener).onBackpressureChanged(DrupalClient.this, active, queuedRequests);
+                    }
                 }
+            });
+        }
+        this.admissionController = admissionController;
+    }
+
+    /**
+     * @return client side request rate limiter, null if rate isn't limited
+     */
+    public RequestRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * @param rateLimiter client side request rate limiter, null disables rate limiting (default). Requests, exceeding rate, are delayed.
+     */
+    public void setRateLimiter(RequestRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * @return hedging policy of GET requests, null if hedging is disabled
+     */
+    public HedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    /**
+     * @param hedgingPolicy policy of hedged asynchronous GET requests, null disables hedging (default).
+     *                      Hedging requires latency statistics of the endpoint, see {@link #getLatencyTracker()}
+     */
+    public void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy;
+    }
+
+    /**
+     * @return outbox, entity changes are queued to while there is no connection, null if outbox is disabled
+     */
+    public OfflineOutbox getOutbox() {
+        return outbox;
+    }
+
+    /**
+     * @param outbox durable queue of entity changes, performed while there is no connection, null disables it (default).
+     *               Asynchronous POST, PUT, PATCH and DELETE requests of entities are queued and replayed when connection is restored.
+     */
+    public void setOutbox(OfflineOutbox outbox) {
+        OfflineOutbox previousOutbox = this.outbox;
+        if (previousOutbox != null) {
+            previousOutbox.detach();
+        }
+        this.outbox = outbox;
+        if (outbox != null) {
+            outbox.attach(this);
+        }
+    }
+
+    /**
+     * @return per endpoint latency statistics of requests, performed by this client
+     */
+    public LatencyTracker getLatencyTracker() {
+        return latencyTracker;
+    }
+
+    /**
+     * @return aggregated metrics of requests, performed by this client
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    private RequestConfig applyDefaultFormat(RequestConfig config)
+    {
+        if(config == null)
+        {
+            config = new RequestConfig();
+        }
+
+        if(config.getRequestFormat()==null)
+        {
+            config.setRequestFormat(this.requestFormat);
+        }
+
+        return config;
+    }
+
+    private String getURLForEntity(AbstractBaseDrupalEntity entity) {
+        String path = entity.getPath();
+
+        if(TextUtils.isEmpty(baseURL))
+        {
+            return path;
+        }else {
+            if (!TextUtils.isEmpty(path) && path.charAt(0) == '/') {
+                path = path.substring(1);
             }
+            return this.baseURL + path;
         }
     }
 
+    /**
+     * This request is always synchronous and has no callback
+     */
+    public final Object login(final String userName, final String password) {
+        Object result = this.loginManager.login(userName, password, queue);
+        this.scheduleLoginRefresh();
+        return result;
+    }
+
+    /**
+     * This request is always synchronous
+     */
+    public final void logout() {
+        this.loginManager.logout(queue);
+    }
+
+    /**
+     * @return true all necessary user id data is fetched and login can be restored automatically
+     */
+    public boolean isLogged() {
+        return this.loginManager.canRestoreLogin();
+    }
+
+    public ILoginManager getLoginManager() {
+        return loginManager;
+    }
+
+    public void setLoginManager(ILoginManager loginManager) {
+        this.loginManager = loginManager;
+        this.scheduleLoginRefresh();
+    }
+
+    /**
+     * @return time before login data expiration, login data of {@link IExpiringLoginManager} is refreshed at, in milliseconds
+     */
+    public long getLoginRefreshLeadTime() {
+        return loginRefreshLeadTime;
+    }
+
+    /**
+     * @param loginRefreshLeadTime time before login data expiration, login data of {@link IExpiringLoginManager} is refreshed at, in milliseconds
+     */
+    public void setLoginRefreshLeadTime(long loginRefreshLeadTime) {
+        this.loginRefreshLeadTime = loginRefreshLeadTime;
+        this.scheduleLoginRefresh();
+    }
+
+    // Proactive login refresh
+
+    /**
+     * Request, performed with expired login data, waits for login refresh and is performed after it. Login is refreshed in background
+     * if it expires soon.
+     *
+     * @return true if asynchronous request is postponed till login refresh
+     */
+    private boolean waitForLoginRefresh(final BaseRequest request, final Object tag, final OnResponseListener listener, boolean synchronous) {
+        long timeToExpiration = this.getTimeToLoginExpiration();
+        if (timeToExpiration == Long.MAX_VALUE) {
+            return false;
+        }
+
+        if (timeToExpiration > 0) {
+            // Failed refresh is retried by scheduled task with backoff, rather than by every request
+            if (timeToExpiration <= loginRefreshLeadTime && !this.isLoginRefreshFailed()) {
+                this.refreshLogin();
+            }
+            return false;
+        }
+
+        LoginRestorer restorer = this.getLoginRestorer();
+        if (synchronous) {
+            boolean restored = restorer.restoreSynchronously(queue, restorer.getGeneration(), this.metrics);
+            if (restored) {
+                this.scheduleLoginRefresh();
+            }
+            return false;
+        }
+
+        request.addMarker("login-refresh-wait");
+        restorer.restore(queue, restorer.getGeneration(), metrics, new LoginRestorer.Callback() {
+            @Override
+            public void onLoginRestored(boolean restored) {
+                if (restored) {
+                    scheduleLoginRefresh();
+                }
+                // Request is performed even if refresh failed: it will be handled as usual 401 failure then
+                performRequestWithCurrentLogin(request, tag, listener, false);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * @return milliseconds left till login expiration, can be negative if it's expired already. Long.MAX_VALUE if expiration time is unknown or login can't be refreshed.
+     */
+    private long getTimeToLoginExpiration() {
+        long expirationTime = this.getLoginExpirationTime();
+        if (expirationTime <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return expirationTime - System.currentTimeMillis();
+    }
+
+    /**
+     * @return login expiration time, 0 if it's unknown or login can't be refreshed
+     */
+    private long getLoginExpirationTime() {
+        ILoginManager manager = this.loginManager;
+        if (!(manager instanceof IExpiringLoginManager) || !manager.canRestoreLogin()) {
+            return 0;
+        }
+        return Math.max(0, ((IExpiringLoginManager) manager).getLoginExpirationTime());
+    }
+
+    /**
+     * @return true if proactive refresh of current login data failed already
+     */
+    private boolean isLoginRefreshFailed() {
+        long expirationTime = this.getLoginExpirationTime();
+        synchronized (this.loginRefreshLock) {
+            return this.loginRefreshFailureCount > 0 && this.failedLoginRefreshExpirationTime == expirationTime;
+        }
+    }
+
+    private void refreshLogin() {
+        final long expirationTime = this.getLoginExpirationTime();
+        LoginRestorer restorer = this.getLoginRestorer();
+        restorer.restore(queue, restorer.getGeneration(), metrics, new LoginRestorer.Callback() {
+            @Override
+            public void onLoginRestored(boolean restored) {
+                synchronized (loginRefreshLock) {
+                    if (restored) {
+                        loginRefreshFailureCount = 0;
+                    } else if (failedLoginRefreshExpirationTime == expirationTime) {
+                        loginRefreshFailureCount++;
+                    } else {
+                        failedLoginRefreshExpirationTime = expirationTime;
+                        loginRefreshFailureCount = 1;
+                    }
+                }
+                scheduleLoginRefresh();
+            }
+        });
+    }
+
+    /**
+     * Schedules background login refresh, {@link #getLoginRefreshLeadTime()} before login expiration.
+     * Failed refresh of the same login data is retried with exponential backoff.
+     */
+    private void scheduleLoginRefresh() {
+        long timeToExpiration = this.getTimeToLoginExpiration();
+        boolean refreshFailed = this.isLoginRefreshFailed();
+        synchronized (this.loginRefreshLock) {
+            if (this.loginRefreshFuture != null) {
+                this.loginRefreshFuture.cancel(false);
+                this.loginRefreshFuture = null;
+            }
+            if (timeToExpiration == Long.MAX_VALUE) {
+                return;
+            }
+
+            long delay = Math.max(MIN_LOGIN_REFRESH_DELAY, timeToExpiration - loginRefreshLeadTime);
+            if (refreshFailed) {
+                long retryDelay = MIN_LOGIN_REFRESH_DELAY << Math.min(this.loginRefreshFailureCount - 1, 10);
+                delay = Math.max(delay, Math.min(retryDelay, MAX_LOGIN_REFRESH_RETRY_DELAY));
+            }
+            this.loginRefreshFuture = SharedScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (getTimeToLoginExpiration() <= loginRefreshLeadTime) {
+                        refreshLogin();
+                    } else {
+                        // Login was restored in other way meanwhile
+                        scheduleLoginRefresh();
+                    }
+                }
+            }, delay);
+        }
+    }
+
+    /**
+     * Synchronous login restore attempt
+     *
+     * @return false if login restore failed.
+     */
+    public boolean restoreLogin() {
+        if (this.loginManager.canRestoreLogin()) {
+            LoginRestorer restorer = this.getLoginRestorer();
+            boolean restored = restorer.restoreSynchronously(queue, restorer.getGeneration(), this.metrics);
+            return restored;
+        }
+        return false;
+    }
+
+    /**
+     * @return login restorer, shared by all clients of the login manager
+     */
+    private LoginRestorer getLoginRestorer() {
+        return LoginRestorer.forManager(this.loginManager);
+    }
+
+    @Override
+    public void onResponseReceived(ResponseData data, BaseRequest request) {
+        if (data.isStale()) {
+            this.notifyStaleResponseReceived(data, request);
+            return;
+        }
+        this.recordNetworkOutcome(request, data);
+        this.updateMemoryCache(request, request, data);
+        this.notifyResponseReceived(data, request);
+    }
+
     @Override
     public void onError(ResponseData data, BaseRequest request) {
-        synchronized (listeners) {
-            List<ResponseListenersSet.ListenerHolder> listenerList = this.listeners.getListenersForRequest(request);
-            this.listeners.removeListenersForRequest(request);
-            this.onRequestComplete();
-            if (listenerList != null) {
-                for (ResponseListenersSet.ListenerHolder holder : listenerList) {
-                    holder.getListener().onError(data, holder.getTag());
-                }
+        this.recordNetworkOutcome(request, data);
+        this.notifyError(data, request);
+    }
+
+    /**
+     * Stale response is delivered to listeners, but they are kept registered until revalidation is complete
+     */
+    private void notifyStaleResponseReceived(ResponseData data, BaseRequest request) {
+        List<ResponseListenersSet.ListenerHolder> listenerList = this.listeners.getListenersForRequest(request);
+        if (listenerList != null) {
+            for (ResponseListenersSet.ListenerHolder holder : listenerList) {
+                holder.getListener().onResponseReceived(data, holder.getTag());
+            }
+        }
+    }
+
+    private void notifyResponseReceived(ResponseData data, BaseRequest request) {
+        this.interceptResponse(request, data);
+        this.recordRequestMetrics(request, data);
+        this.releaseAdmission(request);
+        List<ResponseListenersSet.ListenerHolder> listenerList = this.listeners.removeListenersForRequest(request);
+        this.onRequestComplete();
+        // Listeners have received equal stale response already
+        if (listenerList != null && !request.isStaleResponseConfirmed()) {
+            for (ResponseListenersSet.ListenerHolder holder : listenerList) {
+                holder.getListener().onResponseReceived(data, holder.getTag());
+            }
+        }
+    }
+
+    private void notifyError(ResponseData data, BaseRequest request) {
+        this.interceptResponse(request, data);
+        this.recordRequestMetrics(request, data);
+        this.releaseAdmission(request);
+        List<ResponseListenersSet.ListenerHolder> listenerList = this.listeners.removeListenersForRequest(request);
+        this.onRequestComplete();
+        if (listenerList != null) {
+            for (ResponseListenersSet.ListenerHolder holder : listenerList) {
+                holder.getListener().onError(data, holder.getTag());
             }
         }
     }
 
+    private void recordRequestMetrics(BaseRequest request, ResponseData data) {
+        long enqueueTime = request.getEnqueueTime();
+        long latency = enqueueTime > 0 ? SystemClock.elapsedRealtime() - enqueueTime : -1;
+        this.metrics.onRequestComplete(request.getUrl(), latency, request.getRequestBodySize(), data.getResponseSize(), data.getError());
+    }
+
     /**
      * @return Charset, used to encode/decode server request post body and response.
      */
@@ -542,37 +1394,115 @@ public class DrupalClient implements OnResponseListener {
     }
 
     /**
-     * Cancel all requests for given listener with tag
+     * Cancel all requests for given listener with tag. Requests are found with listener and tag indexes, so
+     * cancellation cost is proportional to the number of matching requests.
      *
-     * @param theListener listener to cancel requests for in case if null passed- all requests for given tag will be canceled
+     * @param theListener listener to cancel requests for in case if null passed- all requests for given tag will be canceled. Listeners are compared by identity.
      * @param theTag      to cancel requests for, in case if null passed- all requests for given listener will be canceled
      */
     public void cancelAllRequestsForListener(final @Nullable OnResponseListener theListener, final @Nullable Object theTag) {
-        this.queue.cancelAll(new RequestQueue.RequestFilter() {
+        if (theListener == null && theTag == null) {
+            this.cancelAllQueuedRequests();
+            return;
+        }
+
+        List<Request<?>> candidates;
+        if (theListener != null) {
+            candidates = this.listeners.getRequestsForListener(theListener);
+        } else {
+            candidates = this.listeners.getRequestsForTag(theTag);
+        }
+
+        List<Request<?>> matchingRequests = new ArrayList<Request<?>>();
+        for (Request<?> request : candidates) {
+            if (theTag == null || theTag.equals(request.getTag())) {
+                matchingRequests.add(request);
+            }
+        }
+        this.cancelRequests(matchingRequests);
+    }
+
+    /**
+     * Cancels all requests of the queue, including ones, performed without this client
+     */
+    private void cancelAllQueuedRequests() {
+        final List<List<ResponseListenersSet.ListenerHolder>> canceledListeners = new ArrayList<List<ResponseListenersSet.ListenerHolder>>();
+        final List<BaseRequest> canceledRequests = new ArrayList<BaseRequest>();
+        RequestQueue.RequestFilter filter = new RequestQueue.RequestFilter() {
             @Override
             public boolean apply(Request<?> request) {
-                if (theTag == null || theTag.equals(request.getTag())) {
-                    synchronized (listeners) {
-                        List<ResponseListenersSet.ListenerHolder> listenerList = listeners.getListenersForRequest(request);
-
-                        if (theListener == null || (listenerList != null &&  holderListContainsListener(listenerList,theListener))) {
-                            if (listenerList != null) {
-                                listeners.removeListenersForRequest(request);
-                                for (ResponseListenersSet.ListenerHolder holder : listenerList) {
-                                    holder.getListener().onCancel(holder.getTag());
-                                }
-                                DrupalClient.this.onRequestComplete();
-                            }
-                            return true;
-                        }
-                    }
+                List<ResponseListenersSet.ListenerHolder> listenerList = listeners.removeListenersForRequest(request);
+                if (listenerList != null) {
+                    canceledListeners.add(listenerList);
                 }
+                if (request instanceof BaseRequest) {
+                    canceledRequests.add((BaseRequest) request);
+                }
+                return true;
+            }
+        };
+        this.queue.cancelAll(filter);
+        List<BaseRequest> postponed;
+        synchronized (postponedRequests) {
+            postponed = new ArrayList<BaseRequest>(postponedRequests);
+        }
+        for (BaseRequest request : postponed) {
+            filter.apply(request);
+        }
+        this.cancelPostponedRequests(postponed);
+        this.cancelQueuedAdmissions(filter, canceledRequests);
+        this.notifyRequestsCanceled(canceledListeners);
+    }
 
-                return false;
+    private void cancelQueuedAdmissions(RequestQueue.RequestFilter filter, Collection<BaseRequest> canceledRequests) {
+        for (BaseRequest request : canceledRequests) {
+            this.cancelHedge(request);
+        }
+
+        AdmissionController controller = this.admissionController;
+        if (controller != null) {
+            for (BaseRequest queuedRequest : controller.removeQueued(filter)) {
+                queuedRequest.cancel();
             }
-        });
+            for (BaseRequest request : canceledRequests) {
+                this.releaseAdmission(request);
+            }
+        }
+    }
+
+    /**
+     * Listeners are notified after queue traversal, outside of queue lock
+     */
+    private void notifyRequestsCanceled(List<List<ResponseListenersSet.ListenerHolder>> canceledListeners) {
+        for (List<ResponseListenersSet.ListenerHolder> listenerList : canceledListeners) {
+            this.metrics.onRequestCanceled();
+            for (ResponseListenersSet.ListenerHolder holder : listenerList) {
+                holder.getListener().onCancel(holder.getTag());
+            }
+            this.onRequestComplete();
+        }
+    }
+
+    private void cancelHedge(BaseRequest request) {
+        BaseRequest.OnResponseListener responseListener = request.getResponseListener();
+        if (responseListener instanceof HedgedRequest) {
+            ((HedgedRequest) responseListener).cancelHedge();
+        }
+    }
+
+    private void cancelPostponedRequests(Collection<BaseRequest> requests) {
+        for (BaseRequest request : requests) {
+            if (postponedRequests.remove(request)) {
+                request.cancel();
+            }
+        }
     }
 
+    /**
+     * Method is deprecated and isn't used by client anymore: it compares listeners with equals(), while requests are
+     * canceled for listeners matched by identity, see {@link #cancelAllRequestsForListener(OnResponseListener, Object)}.
+     */
+    @Deprecated
     protected static boolean holderListContainsListener( List<ResponseListenersSet.ListenerHolder> listenerList,OnResponseListener theListener)
     {
         if(theListener == null)
@@ -598,9 +1528,7 @@ public class DrupalClient implements OnResponseListener {
      * @return number of requests pending
      */
     public int getActiveRequestsCount() {
-        synchronized (listeners) {
-            return this.listeners.registeredRequestCount();
-        }
+        return this.listeners.registeredRequestCount();
     }
 
     public RequestProgressListener getProgressListener() {
@@ -638,6 +1566,349 @@ public class DrupalClient implements OnResponseListener {
             int requestCount = this.getActiveRequestsCount();
             this.progressListener.onRequestFinished(this, requestCount);
         }
+        this.dispatchPrefetches();
+    }
+
+    // Prefetching
+
+    /**
+     * Fetches entity into HTTP cache and in-memory cache (if it's enabled) without consuming response by entity.
+     * See {@link #prefetch(BaseRequest)} for details.
+     *
+     * @return false if entity can't be prefetched: it's pulled with non-GET request or network is metered
+     */
+    public boolean prefetch(AbstractBaseDrupalEntity entity) {
+        if (entity.getPullRequestMethod() != RequestMethod.GET) {
+            return false;
+        }
+        RequestConfig config = entity.getRequestConfig(RequestMethod.GET, entity.getManagedDataClassSpecifyer());
+        return prefetch(newEntityRequest(RequestMethod.GET, entity, config));
+    }
+
+    /**
+     * Fetches GET request with {@link BaseRequest.RequestPriority#PREFETCH} priority into HTTP cache and in-memory cache (if it's enabled).
+     * No listeners are notified. Prefetches are performed one by one, only while there are no other requests, and are canceled as soon
+     * as other request is performed, or dropped if network becomes metered. Equal request, performed during prefetch, is attached to it
+     * (with default {@link DuplicateRequestPolicy#ATTACH} policy) instead of issuing new one.
+     *
+     * @return false if request can't be prefetched: it isn't GET request or network is metered
+     */
+    public boolean prefetch(BaseRequest request) {
+        if (request.getMethod() != Request.Method.GET || this.isNetworkMetered()) {
+            return false;
+        }
+
+        request.setRequestPriority(BaseRequest.RequestPriority.PREFETCH);
+        // Login data is applied in advance, so fingerprint is equal to one of regular request
+        this.loginManager.applyLoginDataToRequest(request);
+        synchronized (pendingPrefetches) {
+            if (findEqualRequest(pendingPrefetches, request) == null && findEqualRequest(activePrefetches, request) == null) {
+                pendingPrefetches.add(request);
+            }
+        }
+        this.dispatchPrefetches();
+        return true;
+    }
+
+    /**
+     * Drops pending prefetches and cancels ones, performed at the moment
+     */
+    public void cancelPrefetches() {
+        List<BaseRequest> canceledPrefetches;
+        synchronized (pendingPrefetches) {
+            pendingPrefetches.clear();
+            canceledPrefetches = new ArrayList<BaseRequest>(activePrefetches);
+        }
+        for (BaseRequest prefetch : canceledPrefetches) {
+            this.cancelRequest(prefetch);
+        }
+    }
+
+    private boolean isPrefetch(BaseRequest request) {
+        synchronized (pendingPrefetches) {
+            return activePrefetches.contains(request);
+        }
+    }
+
+    /**
+     * Regular request takes place of equal pending prefetch and attaches to equal active one. Other active prefetches are canceled.
+     * Prefetch dispatching is suspended until request is registered, see {@link #resumePrefetches()}
+     *
+     * @return true if prefetch dispatching was suspended
+     */
+    private boolean onRegularRequest(BaseRequest request) {
+        List<BaseRequest> canceledPrefetches = null;
+        synchronized (pendingPrefetches) {
+            if (pendingPrefetches.isEmpty() && activePrefetches.isEmpty()) {
+                return false;
+            }
+            startingRegularRequests++;
+
+            BaseRequest pendingPrefetch = findEqualRequest(pendingPrefetches, request);
+            if (pendingPrefetch != null) {
+                pendingPrefetches.remove(pendingPrefetch);
+            }
+
+            BaseRequest attachablePrefetch = null;
+            if (this.duplicateRequestPolicy == DuplicateRequestPolicy.ATTACH) {
+                attachablePrefetch = findEqualRequest(activePrefetches, request);
+            }
+            for (BaseRequest prefetch : activePrefetches) {
+                if (prefetch != attachablePrefetch) {
+                    if (canceledPrefetches == null) {
+                        canceledPrefetches = new ArrayList<BaseRequest>();
+                    }
+                    canceledPrefetches.add(prefetch);
+                }
+            }
+        }
+
+        if (canceledPrefetches != null) {
+            for (BaseRequest prefetch : canceledPrefetches) {
+                this.cancelRequest(prefetch);
+            }
+        }
+        return true;
+    }
+
+    private void resumePrefetches() {
+        synchronized (pendingPrefetches) {
+            startingRegularRequests--;
+        }
+        this.dispatchPrefetches();
+    }
+
+    private void dispatchPrefetches() {
+        List<BaseRequest> dispatchedPrefetches;
+        synchronized (pendingPrefetches) {
+            if (pendingPrefetches.isEmpty() || !activePrefetches.isEmpty() || startingRegularRequests > 0 || this.getActiveRequestsCount() > 0) {
+                return;
+            }
+            if (this.isNetworkMetered()) {
+                pendingPrefetches.clear();
+                return;
+            }
+            BaseRequest prefetch = pendingPrefetches.remove(0);
+            activePrefetches.add(prefetch);
+            dispatchedPrefetches = Collections.singletonList(prefetch);
+        }
+
+        for (BaseRequest prefetch : dispatchedPrefetches) {
+            this.performRequest(prefetch, prefetch, this.prefetchListener, false);
+        }
+    }
+
+    private void onPrefetchFinished(BaseRequest prefetch) {
+        synchronized (pendingPrefetches) {
+            activePrefetches.remove(prefetch);
+        }
+        this.dispatchPrefetches();
+    }
+
+    private static BaseRequest findEqualRequest(Collection<BaseRequest> requests, BaseRequest request) {
+        for (BaseRequest candidate : requests) {
+            if (candidate.getFingerprint().equals(request.getFingerprint())) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true if active network is metered, false if there is no way to check it
+     */
+    private boolean isNetworkMetered() {
+        Context context = this.applicationContext;
+        if (context == null) {
+            return false;
+        }
+
+        try {
+            ConnectivityManager manager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            if (manager == null) {
+                return false;
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                return manager.isActiveNetworkMetered();
+            }
+            NetworkInfo info = manager.getActiveNetworkInfo();
+            return info != null && info.getType() != ConnectivityManager.TYPE_WIFI;
+        } catch (SecurityException e) {
+            // ACCESS_NETWORK_STATE permission isn't granted
+            return false;
+        }
+    }
+
+    /**
+     * Prefetch response is dropped: it's cached by request queue and in-memory cache
+     */
+    private class PrefetchListener implements OnResponseListener {
+
+        @Override
+        public void onResponseReceived(ResponseData data, Object tag) {
+            onPrefetchFinished((BaseRequest) tag);
+        }
+
+        @Override
+        public void onError(ResponseData data, Object tag) {
+            onPrefetchFinished((BaseRequest) tag);
+        }
+
+        @Override
+        public void onCancel(Object tag) {
+            onPrefetchFinished((BaseRequest) tag);
+        }
+    }
+
+    /**
+     * Coordinates original request and its hedge: first response wins and the other attempt is canceled, error is reported
+     * only after both attempts failed. Listeners are registered for original request only, so they are notified exactly once.
+     */
+    private class HedgedRequest implements BaseRequest.OnResponseListener, Runnable {
+        private final BaseRequest primary;
+        private final HedgingPolicy policy;
+        private BaseRequest hedge;
+        private ScheduledFuture<?> hedgeLaunch;
+        private int pendingAttempts = 1;
+        private boolean finished;
+
+        HedgedRequest(BaseRequest primary, HedgingPolicy policy) {
+            this.primary = primary;
+            this.policy = policy;
+        }
+
+        /**
+         * Cancels hedge, launched or scheduled, original request is canceled by client
+         */
+        void cancelHedge() {
+            BaseRequest launchedHedge;
+            synchronized (this) {
+                cancelHedgeLaunch();
+                launchedHedge = hedge;
+            }
+            if (launchedHedge != null) {
+                launchedHedge.cancel();
+            }
+        }
+
+        synchronized void scheduleHedge(long delay) {
+            if (!finished) {
+                hedgeLaunch = SharedScheduler.schedule(this, delay);
+            }
+        }
+
+        @Override
+        public void run() {
+            BaseRequest duplicate;
+            synchronized (this) {
+                if (finished || primary.isCanceled() || !policy.tryAcquireHedge()) {
+                    return;
+                }
+                duplicate = primary.createDuplicate();
+                duplicate.setResponseListener(this);
+                duplicate.setRetryPolicy(createRetryPolicy(duplicate));
+                hedge = duplicate;
+                pendingAttempts++;
+            }
+            duplicate.addMarker("hedge");
+            duplicate.performRequest(false, queue);
+        }
+
+        @Override
+        public void onResponseReceived(ResponseData data, BaseRequest request) {
+            recordNetworkOutcome(request, data);
+            BaseRequest loser;
+            boolean primaryCanceled = primary.isCanceled();
+            synchronized (this) {
+                pendingAttempts--;
+                if (finished) {
+                    return;
+                }
+                finished = true;
+                loser = request == primary ? hedge : primary;
+                cancelHedgeLaunch();
+            }
+
+            if (loser != null) {
+                loser.cancel();
+            }
+            if (primaryCanceled) {
+                // Original request was canceled by client, listeners are already notified
+                return;
+            }
+            if (request != primary) {
+                policy.onHedgeWon();
+            }
+            updateMemoryCache(primary, request, data);
+            notifyResponseReceived(data, primary);
+        }
+
+        @Override
+        public void onError(ResponseData data, BaseRequest request) {
+            recordNetworkOutcome(request, data);
+            synchronized (this) {
+                pendingAttempts--;
+                if (finished || pendingAttempts > 0) {
+                    return;
+                }
+                finished = true;
+                cancelHedgeLaunch();
+            }
+
+            if (primary.isCanceled()) {
+                return;
+            }
+            notifyError(data, primary);
+        }
+
+        private void cancelHedgeLaunch() {
+            if (hedgeLaunch != null) {
+                hedgeLaunch.cancel(false);
+                hedgeLaunch = null;
+            }
+        }
+    }
+
+    /**
+     * Private tag of the request, performed with future-based API. Tags are compared by identity, so future cancels
+     * its own request only.
+     */
+    private static final class FutureRequestTag {
+
+        private final Object requestTag;
+
+        FutureRequestTag(Object requestTag) {
+            this.requestTag = requestTag;
+        }
+
+        @Override
+        public String toString() {
+            return "FutureRequestTag{" + requestTag + "}";
+        }
+    }
+
+    private static class FutureResponseListener implements OnResponseListener {
+
+        private final DrupalFuture<ResponseData> future;
+
+        FutureResponseListener(DrupalFuture<ResponseData> future) {
+            this.future = future;
+        }
+
+        @Override
+        public void onResponseReceived(ResponseData data, Object tag) {
+            future.complete(data);
+        }
+
+        @Override
+        public void onError(ResponseData data, Object tag) {
+            future.fail(new DrupalRequestException(data));
+        }
+
+        @Override
+        public void onCancel(Object tag) {
+            future.cancel(false);
+        }
     }
 
     private class OnResponseAuthListenerDecorator implements OnResponseListener {
@@ -673,33 +1944,42 @@ public class DrupalClient implements OnResponseListener {
         }
     }
 
-    private class RestoreLoginAttemptTask {
+    /**
+     * Request, failed with 401 error, is parked until login restore, shared with other failed requests, is complete.
+     * Request is performed again if login was restored and fails with original error otherwise.
+     */
+    private class RestoreLoginAttemptTask implements LoginRestorer.Callback {
 
         private final BaseRequest request;
         private final OnResponseListener listener;
         private final Object tag;
         private final ResponseData originData;
+        private final long loginGeneration;
 
-        RestoreLoginAttemptTask(BaseRequest request, OnResponseListener listener, Object tag, ResponseData originData) {
+        RestoreLoginAttemptTask(BaseRequest request, OnResponseListener listener, Object tag, ResponseData originData, long loginGeneration) {
             this.request = request;
             this.listener = listener;
             this.tag = tag;
             this.originData = originData;
+            this.loginGeneration = loginGeneration;
         }
 
         public void execute() {
-            new Thread() {
-                @Override
-                public void run() {
+            getLoginRestorer().restore(queue, loginGeneration, metrics, this);
+        }
 
-                    boolean restored = loginManager.restoreLoginData(queue);
-                    if (restored) {
-                        performRequestNoLoginRestore(request, tag, new OnResponseAuthListenerDecorator(listener), false);
-                    } else {
+        @Override
+        public void onLoginRestored(boolean restored) {
+            if (restored) {
+                performRequestNoLoginRestore(request, tag, new OnResponseAuthListenerDecorator(listener), false);
+            } else if (listener != null) {
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    @Override
+                    public void run() {
                         listener.onError(originData, tag);
                     }
-                }
-            }.start();
+                });
+            }
         }
     }
 
@@ -0,0 +1,456 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.drupal;
+
+import com.ls.util.internal.SharedScheduler;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Composable result of asynchronous request. Callbacks are triggered on the thread, completing the future
+ * (main thread for requests performed by {@link DrupalClient}), or immediately if future is already complete.
+ * Note: {@link #get()} blocks calling thread, so it mustn't be called on main thread.
+ * Request failures are reported as {@link DrupalRequestException}.
+ *
+ * @param <T> result type
+ */
+public class DrupalFuture<T> implements Future<T> {
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_SUCCEEDED = 1;
+    private static final int STATE_FAILED = 2;
+    private static final int STATE_CANCELLED = 3;
+
+    public interface Function<A, R> {
+        R apply(A value) throws Exception;
+    }
+
+    public interface Callback<T> {
+        void onSuccess(T result);
+
+        /**
+         * @param error {@link DrupalRequestException} in case of request failure, {@link CancellationException} if future was canceled,
+         *              {@link TimeoutException} if timeout expired or exception, thrown by composition function.
+         */
+        void onFailure(Throwable error);
+    }
+
+    private final Object lock = new Object();
+    private int state = STATE_PENDING;
+    private T result;
+    private Throwable failure;
+    private List<Callback<? super T>> callbacks = new LinkedList<Callback<? super T>>();
+    private Runnable cancellationHandler;
+    private TimeoutTask timeoutTask;
+
+    public DrupalFuture() {
+    }
+
+    public static <T> DrupalFuture<T> completed(T result) {
+        DrupalFuture<T> future = new DrupalFuture<T>();
+        future.complete(result);
+        return future;
+    }
+
+    public static <T> DrupalFuture<T> failed(@NonNull Throwable error) {
+        DrupalFuture<T> future = new DrupalFuture<T>();
+        future.fail(error);
+        return future;
+    }
+
+    /**
+     * @return true if future was completed by this call, false if it was already done.
+     */
+    public boolean complete(T result) {
+        List<Callback<? super T>> callbacksToNotify;
+        synchronized (lock) {
+            if (state != STATE_PENDING) {
+                return false;
+            }
+            this.result = result;
+            this.state = STATE_SUCCEEDED;
+            callbacksToNotify = releaseCallbacks();
+        }
+        cancelTimeout();
+        notifyCallbacks(callbacksToNotify);
+        return true;
+    }
+
+    /**
+     * @return true if future was completed by this call, false if it was already done.
+     */
+    public boolean fail(@NonNull Throwable error) {
+        return finishWithFailure(error, STATE_FAILED);
+    }
+
+    /**
+     * Cancels future and underlying request if it wasn't complete yet.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (finishWithFailure(new CancellationException(), STATE_CANCELLED)) {
+            runCancellationHandler();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Fails future with {@link TimeoutException} and cancels underlying request if future isn't complete in time given.
+     *
+     * @return this future
+     */
+    public DrupalFuture<T> withTimeout(long timeout, @NonNull TimeUnit unit) {
+        TimeoutTask task = new TimeoutTask(this);
+        task.scheduledFuture = SharedScheduler.schedule(task, unit.toMillis(timeout));
+        TimeoutTask canceledTask;
+        synchronized (lock) {
+            if (state != STATE_PENDING) {
+                canceledTask = task;
+            } else if (timeoutTask != null && timeoutTask.scheduledFuture.getDelay(TimeUnit.MILLISECONDS) <= task.scheduledFuture.getDelay(TimeUnit.MILLISECONDS)) {
+                // The earliest timeout is the only one that matters
+                canceledTask = task;
+            } else {
+                canceledTask = timeoutTask;
+                timeoutTask = task;
+            }
+        }
+        if (canceledTask != null) {
+            canceledTask.cancel();
+        }
+        return this;
+    }
+
+    private void onTimeout() {
+        if (fail(new TimeoutException())) {
+            runCancellationHandler();
+        }
+    }
+
+    /**
+     * Timeout of complete future is canceled, so scheduler doesn't keep the future and its result till timeout expiration
+     */
+    private void cancelTimeout() {
+        TimeoutTask task;
+        synchronized (lock) {
+            task = timeoutTask;
+            timeoutTask = null;
+        }
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    /**
+     * Future is referenced until task is canceled only: canceled task may stay in scheduler queue on older platforms
+     */
+    private static class TimeoutTask implements Runnable {
+        private volatile DrupalFuture<?> future;
+        private volatile ScheduledFuture<?> scheduledFuture;
+
+        TimeoutTask(DrupalFuture<?> future) {
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            DrupalFuture<?> target = this.future;
+            if (target != null) {
+                target.onTimeout();
+            }
+        }
+
+        void cancel() {
+            this.future = null;
+            ScheduledFuture<?> handle = this.scheduledFuture;
+            if (handle != null) {
+                handle.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * @param handler action, performed if future is canceled or timed out before completion. Used in order to cancel underlying request.
+     */
+    void setCancellationHandler(Runnable handler) {
+        synchronized (lock) {
+            this.cancellationHandler = handler;
+        }
+    }
+
+    private void runCancellationHandler() {
+        Runnable handler;
+        synchronized (lock) {
+            handler = this.cancellationHandler;
+            this.cancellationHandler = null;
+        }
+        if (handler != null) {
+            handler.run();
+        }
+    }
+
+    private boolean finishWithFailure(Throwable error, int newState) {
+        List<Callback<? super T>> callbacksToNotify;
+        synchronized (lock) {
+            if (state != STATE_PENDING) {
+                return false;
+            }
+            this.failure = error;
+            this.state = newState;
+            callbacksToNotify = releaseCallbacks();
+        }
+        cancelTimeout();
+        notifyCallbacks(callbacksToNotify);
+        return true;
+    }
+
+    private List<Callback<? super T>> releaseCallbacks() {
+        List<Callback<? super T>> result = callbacks;
+        callbacks = null;
+        lock.notifyAll();
+        return result;
+    }
+
+    private void notifyCallbacks(List<Callback<? super T>> callbacksToNotify) {
+        for (Callback<? super T> callback : callbacksToNotify) {
+            notifyCallback(callback);
+        }
+    }
+
+    private void notifyCallback(Callback<? super T> callback) {
+        if (state == STATE_SUCCEEDED) {
+            callback.onSuccess(result);
+        } else {
+            callback.onFailure(failure);
+        }
+    }
+
+    /**
+     * @param callback to be triggered after future completion. Triggered immediately if future is already complete.
+     * @return this future
+     */
+    public DrupalFuture<T> addCallback(@NonNull Callback<? super T> callback) {
+        synchronized (lock) {
+            if (state == STATE_PENDING) {
+                callbacks.add(callback);
+                return this;
+            }
+        }
+        notifyCallback(callback);
+        return this;
+    }
+
+    /**
+     * @return future, completed with function result, applied to this future result. Failures are propagated, canceling
+     * returned future cancels this one.
+     */
+    public <R> DrupalFuture<R> thenApply(@NonNull final Function<? super T, ? extends R> function) {
+        final DrupalFuture<R> target = new DrupalFuture<R>();
+        target.setCancellationHandler(getCancellingAction());
+        addCallback(new Callback<T>() {
+            @Override
+            public void onSuccess(T value) {
+                R mapped;
+                try {
+                    mapped = function.apply(value);
+                } catch (Exception e) {
+                    target.fail(e);
+                    return;
+                }
+                target.complete(mapped);
+            }
+
+            @Override
+            public void onFailure(Throwable error) {
+                target.fail(error);
+            }
+        });
+        return target;
+    }
+
+    /**
+     * @return future, completed with the result of future, returned by function. Can be used in order to perform dependent requests.
+     */
+    public <R> DrupalFuture<R> thenCompose(@NonNull final Function<? super T, ? extends DrupalFuture<R>> function) {
+        final DrupalFuture<R> target = new DrupalFuture<R>();
+        target.setCancellationHandler(getCancellingAction());
+        addCallback(new Callback<T>() {
+            @Override
+            public void onSuccess(T value) {
+                DrupalFuture<R> next;
+                try {
+                    next = function.apply(value);
+                } catch (Exception e) {
+                    target.fail(e);
+                    return;
+                }
+                if (next == null) {
+                    target.complete(null);
+                    return;
+                }
+                target.setCancellationHandler(next.getCancellingAction());
+                next.addCallback(new Callback<R>() {
+                    @Override
+                    public void onSuccess(R result) {
+                        target.complete(result);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable error) {
+                        target.fail(error);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(Throwable error) {
+                target.fail(error);
+            }
+        });
+        return target;
+    }
+
+    /**
+     * @return future, completed with list of results in the order of futures given, or failed with the first failure.
+     * In case of failure or cancellation of returned future all pending futures are canceled.
+     */
+    public static <T> DrupalFuture<List<T>> allOf(@NonNull final List<? extends DrupalFuture<? extends T>> futures) {
+        final DrupalFuture<List<T>> target = new DrupalFuture<List<T>>();
+        final int count = futures.size();
+        if (count == 0) {
+            target.complete(Collections.<T>emptyList());
+            return target;
+        }
+
+        final List<T> results = new ArrayList<T>(Collections.<T>nCopies(count, null));
+        final AtomicInteger pendingCount = new AtomicInteger(count);
+        final Runnable cancelAll = new Runnable() {
+            @Override
+            public void run() {
+                for (DrupalFuture<? extends T> future : futures) {
+                    future.cancel(false);
+                }
+            }
+        };
+        target.setCancellationHandler(cancelAll);
+
+        for (int counter = 0; counter < count; counter++) {
+            final int index = counter;
+            DrupalFuture<? extends T> future = futures.get(counter);
+            future.addCallback(new Callback<T>() {
+                @Override
+                public void onSuccess(T result) {
+                    synchronized (results) {
+                        results.set(index, result);
+                    }
+                    if (pendingCount.decrementAndGet() == 0) {
+                        synchronized (results) {
+                            target.complete(results);
+                        }
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable error) {
+                    if (target.fail(error)) {
+                        cancelAll.run();
+                    }
+                }
+            });
+        }
+        return target;
+    }
+
+    private Runnable getCancellingAction() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                cancel(false);
+            }
+        };
+    }
+
+    @Override
+    public boolean isCancelled() {
+        synchronized (lock) {
+            return state == STATE_CANCELLED;
+        }
+    }
+
+    @Override
+    public boolean isDone() {
+        synchronized (lock) {
+            return state != STATE_PENDING;
+        }
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        synchronized (lock) {
+            while (state == STATE_PENDING) {
+                lock.wait();
+            }
+            return getResult();
+        }
+    }
+
+    @Override
+    public T get(long timeout, @NonNull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (lock) {
+            while (state == STATE_PENDING) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new TimeoutException();
+                }
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+            return getResult();
+        }
+    }
+
+    private T getResult() throws ExecutionException {
+        switch (state) {
+            case STATE_SUCCEEDED:
+                return result;
+            case STATE_CANCELLED:
+                CancellationException cancellation = new CancellationException();
+                cancellation.initCause(failure);
+                throw cancellation;
+            default:
+                throw new ExecutionException(failure);
+        }
+    }
+}
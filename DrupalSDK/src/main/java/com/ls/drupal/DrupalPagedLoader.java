@@ -0,0 +1,305 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.drupal;
+
+import com.ls.http.base.ResponseData;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Loader of paged collection, keeping a window of pages, following the page, visible item belongs to, in flight.
+ * Pages are merged to the item list in order, regardless of the order responses arrive in.
+ * The end of collection is detected with {@link AbstractDrupalArrayEntity#hasNextPage(ResponseData)} or by the first empty page if server provides no pager data.
+ * Loader isn't thread-safe and has to be used from the main thread.
+ *
+ * @param <E> item type
+ * @param <P> page entity type
+ */
+public class DrupalPagedLoader<E, P extends AbstractDrupalArrayEntity<E>> implements AbstractBaseDrupalEntity.OnEntityRequestListener {
+
+    public static final int DEFAULT_WINDOW_SIZE = 2;
+
+    private static final int UNKNOWN_LAST_PAGE = Integer.MAX_VALUE;
+
+    /**
+     * Creates entity of the page with given number
+     */
+    public static interface PageFactory<P> {
+
+        /**
+         * @param pageIndex zero based page index
+         */
+        P createPage(int pageIndex);
+    }
+
+    public static interface OnPagesLoadedListener<E> {
+
+        /**
+         * Called when one or more pages were merged to the item list
+         *
+         * @param items new items, appended to the end of list
+         */
+        void onItemsLoaded(DrupalPagedLoader<E, ?> loader, List<E> items);
+
+        /**
+         * Called once, after the last page was merged
+         */
+        void onLoadingFinished(DrupalPagedLoader<E, ?> loader);
+
+        /**
+         * Called when page request failed or was canceled outside of loader. Loading of following pages is stopped until {@link #retry()} call.
+         *
+         * @param data failure response, null if request was canceled
+         */
+        void onPageFailed(DrupalPagedLoader<E, ?> loader, int pageIndex, ResponseData data);
+    }
+
+    private final PageFactory<P> pageFactory;
+    private final int windowSize;
+    private OnPagesLoadedListener<E> listener;
+
+    private final List<E> items = new ArrayList<E>();
+    private final List<Integer> pageEndPositions = new ArrayList<Integer>();
+    private final Map<Integer, P> requestedPages = new HashMap<Integer, P>();
+    private final TreeMap<Integer, P> completedPages = new TreeMap<Integer, P>();
+    private final SortedSet<Integer> failedPages = new TreeSet<Integer>();
+    private int nextPageToRequest;
+    private int lastPage = UNKNOWN_LAST_PAGE;
+    private int cursorPosition;
+    private boolean finished;
+
+    public DrupalPagedLoader(@NonNull PageFactory<P> pageFactory) {
+        this(pageFactory, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize number of pages, requested ahead of the page, current position belongs to
+     */
+    public DrupalPagedLoader(@NonNull PageFactory<P> pageFactory, int windowSize) {
+        if (windowSize < 0) {
+            throw new IllegalArgumentException("Invalid window size: " + windowSize);
+        }
+        this.pageFactory = pageFactory;
+        this.windowSize = windowSize;
+    }
+
+    public void setListener(OnPagesLoadedListener<E> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts loading of the first page and the window, following it
+     */
+    public void start() {
+        this.fillWindow();
+    }
+
+    /**
+     * @param position position of the item, user currently sees. Pages, following the page of this position, are requested in advance.
+     */
+    public void setCursorPosition(int position) {
+        this.cursorPosition = position;
+        this.fillWindow();
+    }
+
+    /**
+     * Requests failed pages again and resumes loading
+     */
+    public void retry() {
+        List<Integer> pagesToRetry = new ArrayList<Integer>(failedPages);
+        failedPages.clear();
+        for (Integer pageIndex : pagesToRetry) {
+            if (pageIndex <= lastPage) {
+                this.requestPage(pageIndex);
+            }
+        }
+        this.fillWindow();
+    }
+
+    /**
+     * Cancels all pages in flight. Loading is resumed by {@link #retry()} call.
+     */
+    public void cancel() {
+        failedPages.addAll(requestedPages.keySet());
+        this.cancelPages(0);
+    }
+
+    /**
+     * @return items of all merged pages
+     */
+    public List<E> getItems() {
+        return Collections.unmodifiableList(items);
+    }
+
+    public int getItemCount() {
+        return items.size();
+    }
+
+    /**
+     * @return number of pages, merged to the item list
+     */
+    public int getLoadedPageCount() {
+        return pageEndPositions.size();
+    }
+
+    /**
+     * @return true if the last page was merged
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    private void fillWindow() {
+        if (!failedPages.isEmpty()) {
+            return;
+        }
+
+        long targetPage = Math.min((long) getPageIndexForPosition(cursorPosition) + windowSize, lastPage);
+        while (nextPageToRequest <= targetPage) {
+            this.requestPage(nextPageToRequest);
+            nextPageToRequest++;
+        }
+    }
+
+    /**
+     * @return index of the page, item at given position belongs to, or index of the first page, which isn't merged yet
+     */
+    private int getPageIndexForPosition(int position) {
+        for (int counter = 0; counter < pageEndPositions.size(); counter++) {
+            if (position < pageEndPositions.get(counter)) {
+                return counter;
+            }
+        }
+        return pageEndPositions.size();
+    }
+
+    private void requestPage(int pageIndex) {
+        P page = pageFactory.createPage(pageIndex);
+        requestedPages.put(pageIndex, page);
+        page.pullFromServer(false, pageIndex, this);
+    }
+
+    /**
+     * Cancels pages in flight, starting from given index
+     */
+    private void cancelPages(int fromPageIndex) {
+        for (Iterator<Map.Entry<Integer, P>> iterator = requestedPages.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Integer, P> page = iterator.next();
+            if (page.getKey() >= fromPageIndex) {
+                iterator.remove();
+                page.getValue().cancellAllRequests();
+            }
+        }
+    }
+
+    private void mergeCompletedPages() {
+        List<E> newItems = new ArrayList<E>();
+        int nextPageToMerge = pageEndPositions.size();
+        while (nextPageToMerge <= lastPage && completedPages.containsKey(nextPageToMerge)) {
+            P page = completedPages.remove(nextPageToMerge);
+            newItems.addAll(page);
+            items.addAll(page);
+            pageEndPositions.add(items.size());
+            nextPageToMerge++;
+        }
+
+        if (!newItems.isEmpty() && listener != null) {
+            listener.onItemsLoaded(this, newItems);
+        }
+
+        if (nextPageToMerge > lastPage && !finished) {
+            finished = true;
+            completedPages.clear();
+            if (listener != null) {
+                listener.onLoadingFinished(this);
+            }
+        }
+    }
+
+    private void onLastPageDetected(int pageIndex) {
+        if (pageIndex < lastPage) {
+            lastPage = pageIndex;
+            this.cancelPages(pageIndex + 1);
+            completedPages.tailMap(pageIndex + 1).clear();
+            failedPages.tailSet(pageIndex + 1).clear();
+        }
+    }
+
+    // OnEntityRequestListener methods
+
+    @Override
+    public void onRequestCompleted(AbstractBaseDrupalEntity entity, Object tag, ResponseData data) {
+        Integer pageIndex = (Integer) tag;
+        if (requestedPages.get(pageIndex) != entity) {
+            return;
+        }
+        P page = requestedPages.remove(pageIndex);
+
+        if (page.isEmpty()) {
+            this.onLastPageDetected(pageIndex - 1);
+        } else {
+            completedPages.put(pageIndex, page);
+            if (Boolean.FALSE.equals(page.hasNextPage(data))) {
+                this.onLastPageDetected(pageIndex);
+            }
+        }
+        this.mergeCompletedPages();
+        this.fillWindow();
+    }
+
+    @Override
+    public void onRequestFailed(AbstractBaseDrupalEntity entity, Object tag, ResponseData data) {
+        Integer pageIndex = (Integer) tag;
+        if (requestedPages.get(pageIndex) != entity) {
+            return;
+        }
+        requestedPages.remove(pageIndex);
+        failedPages.add(pageIndex);
+        if (listener != null) {
+            listener.onPageFailed(this, pageIndex, data);
+        }
+    }
+
+    @Override
+    public void onRequestCanceled(AbstractBaseDrupalEntity entity, Object tag) {
+        Integer pageIndex = (Integer) tag;
+        if (requestedPages.get(pageIndex) == entity) {
+            // Canceled outside of loader, page has to be requested again
+            requestedPages.remove(pageIndex);
+            failedPages.add(pageIndex);
+            if (listener != null) {
+                listener.onPageFailed(this, pageIndex, null);
+            }
+        }
+    }
+}
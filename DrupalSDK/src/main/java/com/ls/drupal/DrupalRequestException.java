@@ -0,0 +1,48 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.drupal;
+
+import com.ls.http.base.ResponseData;
+
+/**
+ * Failure of {@link DrupalFuture}, returned by asynchronous request methods. Contains server response or networking error.
+ */
+public class DrupalRequestException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ResponseData responseData;
+
+    public DrupalRequestException(ResponseData responseData) {
+        super(responseData != null && responseData.getError() != null ? responseData.getError().toString() : "Request failed",
+                responseData != null ? responseData.getError() : null);
+        this.responseData = responseData;
+    }
+
+    /**
+     * @return response data, containing error, status code and parsed error response if any.
+     */
+    public ResponseData getResponseData() {
+        return responseData;
+    }
+}
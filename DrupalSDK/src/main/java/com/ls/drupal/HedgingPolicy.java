@@ -0,0 +1,132 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.drupal;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Configuration and budget of hedged GET requests: if no response is received within given percentile of endpoint latency,
+ * duplicate request is issued and first response wins. Hedge budget limits extra requests to a share of hedgeable ones:
+ * every hedgeable request earns budget ratio of a token, every hedge spends a whole token.
+ * See {@link DrupalClient#setHedgingPolicy(HedgingPolicy)}
+ */
+public class HedgingPolicy {
+
+    public static final double DEFAULT_PERCENTILE = 0.95;
+    public static final double DEFAULT_BUDGET_RATIO = 0.05;
+
+    private static final long DEFAULT_MIN_DELAY = 50;
+    private static final int DEFAULT_MIN_SAMPLES = 20;
+    private static final double MAX_TOKENS = 10;
+
+    private final double percentile;
+    private final double budgetRatio;
+    private long minDelay = DEFAULT_MIN_DELAY;
+    private int minSamples = DEFAULT_MIN_SAMPLES;
+
+    private double tokens;
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final AtomicLong hedgeWinCount = new AtomicLong();
+
+    public HedgingPolicy() {
+        this(DEFAULT_PERCENTILE, DEFAULT_BUDGET_RATIO);
+    }
+
+    /**
+     * @param percentile  latency percentile of the endpoint, hedge is issued after
+     * @param budgetRatio maximal share of extra requests, e.g. 0.05 for at most 5% of hedgeable requests
+     */
+    public HedgingPolicy(double percentile, double budgetRatio) {
+        if (percentile <= 0 || percentile > 1) {
+            throw new IllegalArgumentException("Percentile has to be in range (0..1]: " + percentile);
+        }
+        if (budgetRatio < 0 || budgetRatio > 1) {
+            throw new IllegalArgumentException("Budget ratio has to be in range [0..1]: " + budgetRatio);
+        }
+        this.percentile = percentile;
+        this.budgetRatio = budgetRatio;
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    public double getBudgetRatio() {
+        return budgetRatio;
+    }
+
+    public long getMinDelay() {
+        return minDelay;
+    }
+
+    /**
+     * @param minDelay minimal delay in milliseconds before hedge is issued
+     */
+    public HedgingPolicy setMinDelay(long minDelay) {
+        this.minDelay = minDelay;
+        return this;
+    }
+
+    public int getMinSamples() {
+        return minSamples;
+    }
+
+    /**
+     * @param minSamples minimal number of endpoint latency samples, required for hedging. Requests to endpoints with less samples aren't hedged
+     */
+    public HedgingPolicy setMinSamples(int minSamples) {
+        this.minSamples = minSamples;
+        return this;
+    }
+
+    /**
+     * @return number of hedge requests issued
+     */
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    /**
+     * @return number of hedge requests, responded earlier than original one
+     */
+    public long getHedgeWinCount() {
+        return hedgeWinCount.get();
+    }
+
+    synchronized void onHedgeableRequest() {
+        tokens = Math.min(MAX_TOKENS, tokens + budgetRatio);
+    }
+
+    synchronized boolean tryAcquireHedge() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        hedgeCount.incrementAndGet();
+        return true;
+    }
+
+    void onHedgeWon() {
+        hedgeWinCount.incrementAndGet();
+    }
+}
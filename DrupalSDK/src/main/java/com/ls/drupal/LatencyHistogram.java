@@ -0,0 +1,173 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.drupal;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with logarithmic buckets: every power of two range is split to 8 linear sub-buckets,
+ * so recorded values are kept with 12.5% precision. Histograms have the same layout, so they can be merged.
+ * Values are recorded in milliseconds.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 40;
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param valueMs latency in milliseconds, negative values are ignored
+     */
+    public void record(long valueMs) {
+        if (valueMs < 0) {
+            return;
+        }
+        buckets.incrementAndGet(getBucketIndex(valueMs));
+        count.incrementAndGet();
+        sum.addAndGet(valueMs);
+        long currentMax = max.get();
+        while (valueMs > currentMax && !max.compareAndSet(currentMax, valueMs)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Adds values of other histogram to this one
+     */
+    public void add(@NonNull LatencyHistogram other) {
+        for (int counter = 0; counter < BUCKET_COUNT; counter++) {
+            long value = other.buckets.get(counter);
+            if (value != 0) {
+                buckets.addAndGet(counter, value);
+            }
+        }
+        count.addAndGet(other.count.get());
+        sum.addAndGet(other.sum.get());
+        long otherMax = other.max.get();
+        long currentMax = max.get();
+        while (otherMax > currentMax && !max.compareAndSet(currentMax, otherMax)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * @return copy of this histogram
+     */
+    public LatencyHistogram copy() {
+        LatencyHistogram result = new LatencyHistogram();
+        result.add(this);
+        return result;
+    }
+
+    /**
+     * Moves all values to new histogram, values, recorded concurrently, are kept either in this histogram or in result one.
+     */
+    LatencyHistogram drain() {
+        LatencyHistogram result = new LatencyHistogram();
+        for (int counter = 0; counter < BUCKET_COUNT; counter++) {
+            result.buckets.set(counter, buckets.getAndSet(counter, 0));
+        }
+        result.count.set(count.getAndSet(0));
+        result.sum.set(sum.getAndSet(0));
+        result.max.set(max.getAndSet(0));
+        return result;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return mean value in milliseconds, or 0 if histogram is empty
+     */
+    public double getMean() {
+        long countL = count.get();
+        return countL > 0 ? (double) sum.get() / countL : 0;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile value in range (0..1]
+     * @return upper bound of the bucket, percentile belongs to, in milliseconds or -1 if histogram is empty
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (int counter = 0; counter < BUCKET_COUNT; counter++) {
+            total += buckets.get(counter);
+        }
+        if (total == 0) {
+            return -1;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile * total));
+        long accumulated = 0;
+        for (int counter = 0; counter < BUCKET_COUNT; counter++) {
+            accumulated += buckets.get(counter);
+            if (accumulated >= rank) {
+                return Math.min(getBucketUpperBound(counter), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    private static int getBucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int magnitude = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_MAGNITUDE);
+        int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        if (value >>> magnitude > 1) {
+            // Value exceeds largest bucket range
+            subBucket = SUB_BUCKET_COUNT - 1;
+        }
+        return SUB_BUCKET_COUNT + (magnitude - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long getBucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int magnitude = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT + SUB_BUCKET_BITS;
+        int subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        long subBucketSize = 1L << (magnitude - SUB_BUCKET_BITS);
+        return (1L << magnitude) + (subBucket + 1) * subBucketSize - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{count=" + getCount() + ", mean=" + (long) getMean() + ", p50=" + getPercentile(0.5)
+                + ", p99=" + getPercentile(0.99) + ", max=" + getMax() + "}";
+    }
+}
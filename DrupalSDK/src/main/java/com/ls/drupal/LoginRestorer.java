@@ -0,0 +1,172 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.drupal;
+
+import com.android.volley.RequestQueue;
+import com.ls.drupal.login.ILoginManager;
+import com.ls.util.internal.SharedExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Single-flight login restore of the login manager: while restore is in flight, other requests, failed with 401, are parked
+ * and notified about it's result. Request, dispatched before the last successful restore, is retried without new restore,
+ * since it was performed with outdated login data.
+ */
+final class LoginRestorer {
+
+    interface Callback {
+        /**
+         * Called on restore thread or on calling one if login was restored already
+         */
+        void onLoginRestored(boolean restored);
+    }
+
+    private static final Map<ILoginManager, LoginRestorer> restorers = new WeakHashMap<ILoginManager, LoginRestorer>();
+
+    private final ILoginManager loginManager;
+    private final List<Callback> parkedCallbacks = new ArrayList<Callback>();
+    private CountDownLatch restoreLatch;
+    private boolean lastRestoreSucceeded;
+    private long restoreGeneration;
+
+    static synchronized LoginRestorer forManager(ILoginManager loginManager) {
+        LoginRestorer restorer = restorers.get(loginManager);
+        if (restorer == null) {
+            restorer = new LoginRestorer(loginManager);
+            restorers.put(loginManager, restorer);
+        }
+        return restorer;
+    }
+
+    private LoginRestorer(ILoginManager loginManager) {
+        this.loginManager = loginManager;
+    }
+
+    /**
+     * @return number of successful restores, has to be captured before request dispatch
+     */
+    synchronized long getGeneration() {
+        return restoreGeneration;
+    }
+
+    /**
+     * Restores login on shared executor or parks callback if restore is in flight already
+     *
+     * @param requestGeneration {@link #getGeneration()} value, captured before failed request was dispatched
+     * @param metrics           metrics of the client, restore is recorded to if it's performed for this call
+     */
+    void restore(final RequestQueue queue, long requestGeneration, final MetricsRegistry metrics, final Callback callback) {
+        boolean restoredAfterDispatch;
+        synchronized (this) {
+            restoredAfterDispatch = requestGeneration < restoreGeneration;
+            if (!restoredAfterDispatch) {
+                parkedCallbacks.add(callback);
+                if (restoreLatch != null) {
+                    return;
+                }
+                restoreLatch = new CountDownLatch(1);
+            }
+        }
+
+        if (restoredAfterDispatch) {
+            // Login was restored after request dispatch, request can be retried at once
+            callback.onLoginRestored(true);
+            return;
+        }
+
+        SharedExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                performRestore(queue, metrics);
+            }
+        });
+    }
+
+    /**
+     * Restores login on calling thread or waits for restore in flight
+     *
+     * @param requestGeneration {@link #getGeneration()} value, captured before failed request was dispatched
+     * @param metrics           metrics of the client, restore is recorded to if it's performed for this call
+     * @return true if login was restored
+     */
+    boolean restoreSynchronously(RequestQueue queue, long requestGeneration, MetricsRegistry metrics) {
+        CountDownLatch latch;
+        synchronized (this) {
+            if (requestGeneration < restoreGeneration) {
+                return true;
+            }
+            latch = restoreLatch;
+            if (latch == null) {
+                restoreLatch = new CountDownLatch(1);
+            }
+        }
+
+        if (latch == null) {
+            return performRestore(queue, metrics);
+        }
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        synchronized (this) {
+            return lastRestoreSucceeded;
+        }
+    }
+
+    private boolean performRestore(RequestQueue queue, MetricsRegistry metrics) {
+        boolean restored = false;
+        try {
+            restored = loginManager.restoreLoginData(queue);
+        } finally {
+            List<Callback> callbacks;
+            synchronized (this) {
+                if (restored) {
+                    restoreGeneration++;
+                }
+                lastRestoreSucceeded = restored;
+                restoreLatch.countDown();
+                restoreLatch = null;
+                callbacks = new ArrayList<Callback>(parkedCallbacks);
+                parkedCallbacks.clear();
+            }
+
+            // Restore is recorded once, regardless of number of parked requests
+            metrics.onLoginRestore(restored);
+            if (!restored) {
+                loginManager.onLoginRestoreFailed();
+            }
+            for (Callback callback : callbacks) {
+                callback.onLoginRestored(restored);
+            }
+        }
+        return restored;
+    }
+}
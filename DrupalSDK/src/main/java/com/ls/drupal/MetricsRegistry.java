@@ -0,0 +1,460 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.drupal;
+
+import com.android.volley.VolleyError;
+import com.ls.http.base.LatencyTracker;
+import com.ls.util.L;
+import com.ls.util.internal.SharedExecutor;
+import com.ls.util.internal.SharedScheduler;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregated {@link DrupalClient} metrics: request and error rates, latency histograms per endpoint path template
+ * (see {@link LatencyTracker#getPathTemplate(String)}), traffic, duplicate request hits, login restores and cache hit ratios.
+ * Values are recorded with atomic counters, so recording doesn't block request processing.
+ * Metrics can be read with {@link #getSnapshot()} or shipped periodically to registered {@link Exporter}s.
+ */
+public class MetricsRegistry {
+
+    /**
+     * Endpoints, exceeding this limit are recorded under {@link #OTHER_ENDPOINT} template
+     */
+    public static final int MAX_ENDPOINTS = 256;
+    public static final String OTHER_ENDPOINT = "other";
+
+    /**
+     * Receives metrics snapshots. Exporter is called on background thread, so it's allowed to perform blocking operations.
+     */
+    public static interface Exporter {
+
+        /**
+         * @param snapshot metrics, collected since previous export
+         */
+        void export(@NonNull Snapshot snapshot);
+    }
+
+    private final AtomicLong requestsStarted = new AtomicLong();
+    private final AtomicLong requestsSucceeded = new AtomicLong();
+    private final AtomicLong requestsFailed = new AtomicLong();
+    private final AtomicLong requestsCanceled = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong duplicatesAttached = new AtomicLong();
+    private final AtomicLong duplicatesRejected = new AtomicLong();
+    private final AtomicLong loginRestores = new AtomicLong();
+    private final AtomicLong loginRestoreFailures = new AtomicLong();
+    private final AtomicLong memoryCacheHits = new AtomicLong();
+    private final AtomicLong memoryCacheMisses = new AtomicLong();
+    private final AtomicLong diskCacheHits = new AtomicLong();
+    private final AtomicLong networkResponses = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> errorsByClass = new ConcurrentHashMap<String, AtomicLong>();
+    private final ConcurrentMap<String, LatencyHistogram> latencyByEndpoint = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final AtomicLong intervalStartTime = new AtomicLong(SystemClock.elapsedRealtime());
+
+    private final List<Exporter> exporters = new CopyOnWriteArrayList<Exporter>();
+    private final Object exportLock = new Object();
+    private ScheduledFuture<?> exportFuture;
+    private long exportPeriod;
+
+    // Recording
+
+    void onRequestStarted() {
+        requestsStarted.incrementAndGet();
+    }
+
+    void onDuplicateRequest(boolean attached) {
+        (attached ? duplicatesAttached : duplicatesRejected).incrementAndGet();
+    }
+
+    void onRequestCanceled() {
+        requestsCanceled.incrementAndGet();
+    }
+
+    void onMemoryCacheLookup(boolean hit) {
+        (hit ? memoryCacheHits : memoryCacheMisses).incrementAndGet();
+    }
+
+    void onLoginRestore(boolean restored) {
+        loginRestores.incrementAndGet();
+        if (!restored) {
+            loginRestoreFailures.incrementAndGet();
+        }
+    }
+
+    /**
+     * @param fromNetwork true if response was received from network, false if it was read from disk cache
+     */
+    void onQueueResponse(boolean fromNetwork) {
+        (fromNetwork ? networkResponses : diskCacheHits).incrementAndGet();
+    }
+
+    /**
+     * @param url       request URL
+     * @param latencyMs request latency, negative if unknown
+     * @param bytesOut  request body size
+     * @param bytesIn   response body size
+     * @param error     request error, null if request succeeded
+     */
+    void onRequestComplete(String url, long latencyMs, int bytesOut, int bytesIn, VolleyError error) {
+        if (error == null) {
+            requestsSucceeded.incrementAndGet();
+        } else {
+            requestsFailed.incrementAndGet();
+            getCounter(errorsByClass, error.getClass().getSimpleName()).incrementAndGet();
+        }
+        bytesSent.addAndGet(bytesOut);
+        bytesReceived.addAndGet(bytesIn);
+        if (latencyMs >= 0 && url != null) {
+            getHistogram(LatencyTracker.getPathTemplate(url)).record(latencyMs);
+        }
+    }
+
+    private static AtomicLong getCounter(ConcurrentMap<String, AtomicLong> counters, String key) {
+        AtomicLong counter = counters.get(key);
+        if (counter == null) {
+            AtomicLong newCounter = new AtomicLong();
+            counter = counters.putIfAbsent(key, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        return counter;
+    }
+
+    private LatencyHistogram getHistogram(String template) {
+        LatencyHistogram histogram = latencyByEndpoint.get(template);
+        if (histogram == null) {
+            if (latencyByEndpoint.size() >= MAX_ENDPOINTS) {
+                template = OTHER_ENDPOINT;
+                histogram = latencyByEndpoint.get(template);
+            }
+            if (histogram == null) {
+                LatencyHistogram newHistogram = new LatencyHistogram();
+                histogram = latencyByEndpoint.putIfAbsent(template, newHistogram);
+                if (histogram == null) {
+                    histogram = newHistogram;
+                }
+            }
+        }
+        return histogram;
+    }
+
+    // Snapshots
+
+    /**
+     * @return metrics, collected since registry creation or last reset
+     */
+    public Snapshot getSnapshot() {
+        return takeSnapshot(false);
+    }
+
+    /**
+     * @return metrics, collected since registry creation or last reset. Registry is reset atomically per metric, so
+     * values, recorded concurrently, are reported either in returned snapshot or in next one.
+     */
+    public Snapshot getSnapshotAndReset() {
+        return takeSnapshot(true);
+    }
+
+    public void reset() {
+        takeSnapshot(true);
+    }
+
+    private Snapshot takeSnapshot(boolean reset) {
+        Snapshot snapshot = new Snapshot();
+        long now = SystemClock.elapsedRealtime();
+        snapshot.intervalMillis = now - (reset ? intervalStartTime.getAndSet(now) : intervalStartTime.get());
+        snapshot.requestsStarted = read(requestsStarted, reset);
+        snapshot.requestsSucceeded = read(requestsSucceeded, reset);
+        snapshot.requestsFailed = read(requestsFailed, reset);
+        snapshot.requestsCanceled = read(requestsCanceled, reset);
+        snapshot.bytesReceived = read(bytesReceived, reset);
+        snapshot.bytesSent = read(bytesSent, reset);
+        snapshot.duplicatesAttached = read(duplicatesAttached, reset);
+        snapshot.duplicatesRejected = read(duplicatesRejected, reset);
+        snapshot.loginRestores = read(loginRestores, reset);
+        snapshot.loginRestoreFailures = read(loginRestoreFailures, reset);
+        snapshot.memoryCacheHits = read(memoryCacheHits, reset);
+        snapshot.memoryCacheMisses = read(memoryCacheMisses, reset);
+        snapshot.diskCacheHits = read(diskCacheHits, reset);
+        snapshot.networkResponses = read(networkResponses, reset);
+
+        Map<String, Long> errors = new HashMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : errorsByClass.entrySet()) {
+            long value = read(entry.getValue(), reset);
+            if (value > 0) {
+                errors.put(entry.getKey(), value);
+            }
+        }
+        snapshot.errorsByClass = Collections.unmodifiableMap(errors);
+
+        Map<String, LatencyHistogram> latencies = new HashMap<String, LatencyHistogram>();
+        for (Map.Entry<String, LatencyHistogram> entry : latencyByEndpoint.entrySet()) {
+            LatencyHistogram histogram = reset ? entry.getValue().drain() : entry.getValue().copy();
+            if (histogram.getCount() > 0) {
+                latencies.put(entry.getKey(), histogram);
+            }
+        }
+        snapshot.latencyByEndpoint = Collections.unmodifiableMap(latencies);
+        return snapshot;
+    }
+
+    private static long read(AtomicLong counter, boolean reset) {
+        return reset ? counter.getAndSet(0) : counter.get();
+    }
+
+    // Export
+
+    public void addExporter(@NonNull Exporter exporter) {
+        exporters.add(exporter);
+    }
+
+    public void removeExporter(@NonNull Exporter exporter) {
+        exporters.remove(exporter);
+    }
+
+    /**
+     * Passes snapshot to all exporters and resets registry. Exporters are called on background thread.
+     */
+    public void export() {
+        if (exporters.isEmpty()) {
+            return;
+        }
+        final Snapshot snapshot = getSnapshotAndReset();
+        SharedExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Exporter exporter : exporters) {
+                    try {
+                        exporter.export(snapshot);
+                    } catch (RuntimeException e) {
+                        L.e("Metrics export failed: " + e);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @param periodMillis export period, 0 to stop periodical export
+     */
+    public void setExportPeriod(long periodMillis) {
+        if (periodMillis < 0) {
+            throw new IllegalArgumentException("Export period can't be negative: " + periodMillis);
+        }
+        synchronized (exportLock) {
+            exportPeriod = periodMillis;
+            scheduleExport();
+        }
+    }
+
+    public long getExportPeriod() {
+        synchronized (exportLock) {
+            return exportPeriod;
+        }
+    }
+
+    private void scheduleExport() {
+        if (exportFuture != null) {
+            exportFuture.cancel(false);
+            exportFuture = null;
+        }
+        if (exportPeriod == 0) {
+            return;
+        }
+        exportFuture = SharedScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (exportLock) {
+                    if (exportFuture == null) {
+                        return;
+                    }
+                    scheduleExport();
+                }
+                export();
+            }
+        }, exportPeriod);
+    }
+
+    /**
+     * Immutable metrics snapshot
+     */
+    public static class Snapshot {
+        private long intervalMillis;
+        private long requestsStarted;
+        private long requestsSucceeded;
+        private long requestsFailed;
+        private long requestsCanceled;
+        private long bytesReceived;
+        private long bytesSent;
+        private long duplicatesAttached;
+        private long duplicatesRejected;
+        private long loginRestores;
+        private long loginRestoreFailures;
+        private long memoryCacheHits;
+        private long memoryCacheMisses;
+        private long diskCacheHits;
+        private long networkResponses;
+        private Map<String, Long> errorsByClass;
+        private Map<String, LatencyHistogram> latencyByEndpoint;
+
+        Snapshot() {
+        }
+
+        /**
+         * @return duration of the interval, metrics were collected for
+         */
+        public long getIntervalMillis() {
+            return intervalMillis;
+        }
+
+        public long getRequestsStarted() {
+            return requestsStarted;
+        }
+
+        public long getRequestsSucceeded() {
+            return requestsSucceeded;
+        }
+
+        public long getRequestsFailed() {
+            return requestsFailed;
+        }
+
+        public long getRequestsCanceled() {
+            return requestsCanceled;
+        }
+
+        /**
+         * @return started requests per second
+         */
+        public double getRequestRate() {
+            return intervalMillis > 0 ? requestsStarted * 1000.0 / intervalMillis : 0;
+        }
+
+        /**
+         * @return failed requests share of completed ones
+         */
+        public double getErrorRate() {
+            return getRatio(requestsFailed, requestsSucceeded);
+        }
+
+        /**
+         * @return number of failures, keyed by error class simple name (e.g. "TimeoutError")
+         */
+        public Map<String, Long> getErrorsByClass() {
+            return errorsByClass;
+        }
+
+        /**
+         * @return latency histograms, keyed by endpoint path template
+         */
+        public Map<String, LatencyHistogram> getLatencyByEndpoint() {
+            return latencyByEndpoint;
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        /**
+         * @return number of requests, attached to equal pending ones (see {@link DrupalClient.DuplicateRequestPolicy#ATTACH})
+         */
+        public long getDuplicatesAttached() {
+            return duplicatesAttached;
+        }
+
+        /**
+         * @return number of requests, rejected as duplicates (see {@link DrupalClient.DuplicateRequestPolicy#REJECT})
+         */
+        public long getDuplicatesRejected() {
+            return duplicatesRejected;
+        }
+
+        public long getLoginRestores() {
+            return loginRestores;
+        }
+
+        public long getLoginRestoreFailures() {
+            return loginRestoreFailures;
+        }
+
+        public long getMemoryCacheHits() {
+            return memoryCacheHits;
+        }
+
+        public long getMemoryCacheMisses() {
+            return memoryCacheMisses;
+        }
+
+        public double getMemoryCacheHitRatio() {
+            return getRatio(memoryCacheHits, memoryCacheMisses);
+        }
+
+        public long getDiskCacheHits() {
+            return diskCacheHits;
+        }
+
+        public long getNetworkResponses() {
+            return networkResponses;
+        }
+
+        /**
+         * @return share of responses, read from disk cache, among ones passed through request queue
+         */
+        public double getDiskCacheHitRatio() {
+            return getRatio(diskCacheHits, networkResponses);
+        }
+
+        private static double getRatio(long value, long rest) {
+            long total = value + rest;
+            return total > 0 ? (double) value / total : 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{intervalMillis=" + intervalMillis + ", requestsStarted=" + requestsStarted + ", requestsSucceeded=" + requestsSucceeded
+                    + ", requestsFailed=" + requestsFailed + ", requestsCanceled=" + requestsCanceled + ", errorsByClass=" + errorsByClass
+                    + ", bytesReceived=" + bytesReceived + ", bytesSent=" + bytesSent + ", duplicatesAttached=" + duplicatesAttached
+                    + ", duplicatesRejected=" + duplicatesRejected + ", loginRestores=" + loginRestores + ", loginRestoreFailures=" + loginRestoreFailures
+                    + ", memoryCacheHits=" + memoryCacheHits + ", memoryCacheMisses=" + memoryCacheMisses + ", diskCacheHits=" + diskCacheHits
+                    + ", networkResponses=" + networkResponses + ", latencyByEndpoint=" + latencyByEndpoint + "}";
+        }
+    }
+}
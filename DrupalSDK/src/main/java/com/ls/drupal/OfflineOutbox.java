@@ -0,0 +1,930 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.drupal;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.android.volley.AuthFailureError;
+import com.android.volley.VolleyError;
+import com.ls.http.base.BaseRequest;
+import com.ls.http.base.BaseRequest.RequestFormat;
+import com.ls.http.base.BaseRequest.RequestMethod;
+import com.ls.http.base.BaseRequest.ResponseFormat;
+import com.ls.http.base.ICharsetItem;
+import com.ls.http.base.IPostableItem;
+import com.ls.http.base.RequestConfig;
+import com.ls.http.base.ResponseData;
+import com.ls.util.L;
+import com.ls.util.internal.SharedExecutor;
+import com.ls.util.internal.SharedScheduler;
+import com.ls.util.internal.VolleyResponseUtils;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Durable queue of entity changes (POST, PUT, PATCH and DELETE requests), performed while there is no connection.
+ * Changes are stored in append-only journal file and replayed in order when {@link ConnectionManager} reports connection is restored,
+ * including ones, left after application process restart. If replay fails because of networking error, it's retried with backoff
+ * in order to probe connection, since connection state isn't tracked automatically.
+ * Changes of the same resource or the same entity instance are replayed one by one, independent ones - simultaneously, up to the limit.
+ * Consecutive JSON PATCH requests to the same resource are merged to the single diff and entity creation, followed by it's deletion, cancels out.
+ * Note: listeners of queued requests are kept in memory only, changes, restored from journal, are replayed without notification.
+ * Journal is read and written by single background thread. It's read after creation, so outbox should be created once, on application start;
+ * replay starts after journal is read and changes, queued before that, are replayed after restored ones.
+ */
+public class OfflineOutbox implements ConnectionManager.OnConnectionStateChangedObserver {
+
+    public static final int DEFAULT_MAX_CONCURRENT_REPLAYS = 2;
+
+    private static final String JOURNAL_FILE_PREFIX = "drupal_outbox_";
+    private static final String JOURNAL_FILE_EXTENSION = ".journal";
+    private static final String OP_PUT = "put";
+    private static final String OP_REMOVE = "remove";
+    private static final int COMPACTION_THRESHOLD = 64;
+    private static final long MIN_RETRY_DELAY = 5000;
+    private static final long MAX_RETRY_DELAY = 5 * 60 * 1000;
+
+    private final File journalFile;
+    private final int maxConcurrentReplays;
+    private final Gson gson = new Gson();
+
+    private final List<Record> records = new ArrayList<Record>();
+    private final Map<Long, List<Callback>> callbacks = new HashMap<Long, List<Callback>>();
+    private final Set<Long> replayingRecords = new HashSet<Long>();
+    private long nextRecordId;
+
+    private final List<String> pendingJournalEntries = new ArrayList<String>();
+    private boolean journalLoaded;
+    private boolean compactionRequested;
+    private boolean journalWriterScheduled;
+    private int journalEntryCount;
+    /**
+     * Accessed by journal writer task only
+     */
+    private Writer journalWriter;
+    private final Runnable journalWriterTask = new Runnable() {
+        @Override
+        public void run() {
+            writeJournal();
+        }
+    };
+
+    private DrupalClient client;
+    private boolean replayPaused;
+    private long retryDelay = MIN_RETRY_DELAY;
+
+    /**
+     * @param context application context, journal is stored in it's files directory
+     * @param name    name of the outbox, different clients have to use different outboxes
+     */
+    public OfflineOutbox(@NonNull Context context, @NonNull String name) {
+        this(context, name, DEFAULT_MAX_CONCURRENT_REPLAYS);
+    }
+
+    /**
+     * @param context              application context, journal is stored in it's files directory
+     * @param name                 name of the outbox, different clients have to use different outboxes
+     * @param maxConcurrentReplays maximal number of simultaneously replayed independent requests
+     */
+    public OfflineOutbox(@NonNull Context context, @NonNull String name, int maxConcurrentReplays) {
+        this(new File(context.getFilesDir(), JOURNAL_FILE_PREFIX + name + JOURNAL_FILE_EXTENSION), maxConcurrentReplays);
+    }
+
+    OfflineOutbox(@NonNull File journalFile, int maxConcurrentReplays) {
+        if (maxConcurrentReplays < 1) {
+            throw new IllegalArgumentException("Invalid concurrent replay count: " + maxConcurrentReplays);
+        }
+        this.journalFile = journalFile;
+        this.maxConcurrentReplays = maxConcurrentReplays;
+        synchronized (this) {
+            // Writer task reads journal before any write
+            this.scheduleJournalWriter();
+        }
+    }
+
+    /**
+     * @return number of changes, waiting for replay. Changes, restored from journal, are counted after journal is read.
+     */
+    public synchronized int getPendingCount() {
+        return records.size();
+    }
+
+    /**
+     * @return snapshot of changes, waiting for replay
+     */
+    synchronized List<Record> getPendingRecords() {
+        return new ArrayList<Record>(records);
+    }
+
+    /**
+     * Drops all changes, waiting for replay. Listeners of dropped requests are notified about cancellation.
+     */
+    public void clear() {
+        List<Callback> dropped = new ArrayList<Callback>();
+        synchronized (this) {
+            for (Iterator<Record> iterator = records.iterator(); iterator.hasNext(); ) {
+                Record record = iterator.next();
+                if (!replayingRecords.contains(record.id)) {
+                    iterator.remove();
+                    dropped.addAll(removeCallbacks(record.id));
+                }
+            }
+            requestCompaction();
+        }
+        notifyCanceled(dropped);
+    }
+
+    /**
+     * Replays pending changes if there is connection. Replay is started automatically when connection is restored,
+     * so this method has to be called only if application tracks connectivity on it's own.
+     */
+    public void replay() {
+        synchronized (this) {
+            replayPaused = false;
+        }
+        replayNext(false);
+    }
+
+    @Override
+    public void onConnectionStateChanged(boolean connectionPresent) {
+        if (connectionPresent) {
+            replay();
+        }
+    }
+
+    synchronized void attach(DrupalClient theClient) {
+        this.client = theClient;
+        ConnectionManager.instance().registerObserver(this);
+    }
+
+    synchronized void detach() {
+        ConnectionManager.instance().unregisterObserver(this);
+        this.client = null;
+    }
+
+    /**
+     * @return true if entity changes have to be queued: there is no connection or there are older changes, waiting for replay.
+     */
+    synchronized boolean shouldEnqueue() {
+        return client != null && (!journalLoaded || !ConnectionManager.instance().isConnected() || !records.isEmpty());
+    }
+
+    /**
+     * @param entityKey key of entity instance request is performed for
+     * @param config    original request configuration, used to parse replay response
+     * @return false if request can't be stored and has to be performed immediately
+     */
+    boolean enqueue(BaseRequest request, String entityKey, Object tag, DrupalClient.OnResponseListener listener, RequestConfig config) {
+        Record record = Record.fromRequest(request, entityKey);
+        if (record == null) {
+            return false;
+        }
+
+        Callback callback = new Callback(tag, listener, config);
+        List<Callback> canceled = null;
+        synchronized (this) {
+            if (client == null) {
+                return false;
+            }
+            canceled = queueRecord(record, callback);
+        }
+
+        if (canceled != null) {
+            notifyCanceled(canceled);
+        } else {
+            replayNext(false);
+        }
+        return true;
+    }
+
+    /**
+     * Adds record to the queue, merging it to the previous PATCH or canceling queued creation out if possible.
+     * Has to be called with outbox lock held.
+     *
+     * @return callbacks of canceled changes, including given one, or null if record was queued
+     */
+    List<Callback> queueRecord(Record record, Callback callback) {
+        RequestMethod method = RequestMethod.valueOf(record.method);
+        List<Callback> canceled = null;
+        if (method == RequestMethod.DELETE) {
+            canceled = cancelCreation(record.entityKey);
+        }
+
+        if (canceled != null) {
+            canceled.add(callback);
+        } else {
+            Record mergeTarget = method == RequestMethod.PATCH ? findPatchToMerge(record) : null;
+            if (mergeTarget != null && mergeTarget.mergePatch(record)) {
+                writeJournalEntry(JournalEntry.put(mergeTarget));
+                addCallback(mergeTarget.id, callback);
+            } else {
+                record.id = nextRecordId++;
+                records.add(record);
+                addCallback(record.id, callback);
+                writeJournalEntry(JournalEntry.put(record));
+            }
+        }
+        return canceled;
+    }
+
+    /**
+     * Removes queued creation of the entity instance together with all following changes of it.
+     *
+     * @return callbacks of removed changes or null if there is no queued creation
+     */
+    private List<Callback> cancelCreation(String entityKey) {
+        if (entityKey == null) {
+            return null;
+        }
+
+        int creationIndex = -1;
+        for (int counter = 0; counter < records.size(); counter++) {
+            Record record = records.get(counter);
+            if (entityKey.equals(record.entityKey)) {
+                if (RequestMethod.POST.name().equals(record.method) && !replayingRecords.contains(record.id)) {
+                    creationIndex = counter;
+                }
+                break;
+            }
+        }
+        if (creationIndex < 0) {
+            return null;
+        }
+
+        List<Callback> result = new ArrayList<Callback>();
+        for (int counter = records.size() - 1; counter >= creationIndex; counter--) {
+            Record record = records.get(counter);
+            if (entityKey.equals(record.entityKey)) {
+                records.remove(counter);
+                result.addAll(0, removeCallbacks(record.id));
+                writeJournalEntry(JournalEntry.remove(record.id));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return last queued change of the same resource if it's PATCH, which isn't replayed yet
+     */
+    private Record findPatchToMerge(Record patch) {
+        for (int counter = records.size() - 1; counter >= 0; counter--) {
+            Record record = records.get(counter);
+            if (record.isDependentOn(patch)) {
+                if (RequestMethod.PATCH.name().equals(record.method) && record.url.equals(patch.url)
+                        && !replayingRecords.contains(record.id)) {
+                    return record;
+                }
+                return null;
+            }
+        }
+        return null;
+    }
+
+    // Replay
+
+    /**
+     * @param probeConnection true if records have to be replayed even if there is no connection, in order to check it
+     */
+    private void replayNext(boolean probeConnection) {
+        List<Record> toReplay = new ArrayList<Record>();
+        DrupalClient theClient;
+        synchronized (this) {
+            theClient = this.client;
+            if (theClient == null || !journalLoaded || replayPaused || (!probeConnection && !ConnectionManager.instance().isConnected())) {
+                return;
+            }
+
+            List<Record> preceding = new ArrayList<Record>();
+            for (Record record : records) {
+                if (replayingRecords.size() >= maxConcurrentReplays) {
+                    break;
+                }
+                if (!replayingRecords.contains(record.id) && !record.dependsOnAny(preceding)) {
+                    replayingRecords.add(record.id);
+                    toReplay.add(record);
+                }
+                preceding.add(record);
+            }
+        }
+
+        for (Record record : toReplay) {
+            RequestConfig config = getReplayConfig(record);
+            BaseRequest request;
+            try {
+                request = record.toRequest(config);
+            } catch (IllegalArgumentException e) {
+                L.e("Outbox record can't be replayed", e);
+                onReplayFinished(record, null, false);
+                continue;
+            }
+            theClient.performRequest(request, record, new ReplayListener(record), false);
+        }
+    }
+
+    private synchronized RequestConfig getReplayConfig(Record record) {
+        List<Callback> recordCallbacks = callbacks.get(record.id);
+        if (recordCallbacks != null && !recordCallbacks.isEmpty()) {
+            RequestConfig config = recordCallbacks.get(recordCallbacks.size() - 1).config;
+            if (config != null) {
+                return config;
+            }
+        }
+        return null;
+    }
+
+    private void onReplayFinished(Record record, ResponseData data, boolean success) {
+        List<Callback> finished;
+        synchronized (this) {
+            replayingRecords.remove(record.id);
+            records.remove(record);
+            finished = removeCallbacks(record.id);
+            writeJournalEntry(JournalEntry.remove(record.id));
+            if (success) {
+                retryDelay = MIN_RETRY_DELAY;
+            }
+        }
+
+        if (data != null) {
+            onConnectionConfirmed();
+        }
+
+        for (Callback callback : finished) {
+            if (callback.listener == null) {
+                continue;
+            }
+            if (data == null) {
+                callback.listener.onCancel(callback.tag);
+            } else if (success) {
+                callback.listener.onResponseReceived(data, callback.tag);
+            } else {
+                callback.listener.onError(data, callback.tag);
+            }
+        }
+        replayNext(false);
+    }
+
+    /**
+     * Record is kept in outbox, replay is paused till connection is restored or retry delay passed.
+     * Replay is retried even if connection is lost, since there is nothing else to report it's restored.
+     */
+    private void onReplayPostponed(Record record, boolean connectionLost) {
+        synchronized (this) {
+            replayingRecords.remove(record.id);
+            if (replayPaused) {
+                return;
+            }
+            replayPaused = true;
+            long delay = retryDelay;
+            retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+            SharedScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    retryReplay();
+                }
+            }, delay);
+        }
+        if (connectionLost) {
+            ConnectionManager.instance().setConnected(false);
+        }
+    }
+
+    private void retryReplay() {
+        synchronized (this) {
+            replayPaused = false;
+        }
+        replayNext(true);
+    }
+
+    /**
+     * Server response was received, so connection is reported to be restored if it was considered to be lost
+     */
+    private static void onConnectionConfirmed() {
+        ConnectionManager connectionManager = ConnectionManager.instance();
+        if (!connectionManager.isConnected()) {
+            connectionManager.setConnected(true);
+        }
+    }
+
+    /**
+     * @return true if request has to be retried later: there is no connection, server is unavailable or request wasn't admitted by client
+     */
+    private static boolean isRetryable(VolleyError error) {
+        if (error == null || error.networkResponse == null) {
+            return true;
+        }
+        int statusCode = error.networkResponse.statusCode;
+        return statusCode >= HttpURLConnection.HTTP_INTERNAL_ERROR || statusCode == HttpURLConnection.HTTP_CLIENT_TIMEOUT
+                || statusCode == RequestRateLimiter.HTTP_TOO_MANY_REQUESTS;
+    }
+
+    private class ReplayListener implements DrupalClient.OnResponseListener {
+
+        private final Record record;
+
+        ReplayListener(Record record) {
+            this.record = record;
+        }
+
+        @Override
+        public void onResponseReceived(ResponseData data, Object tag) {
+            onReplayFinished(record, data, true);
+        }
+
+        @Override
+        public void onError(ResponseData data, Object tag) {
+            VolleyError error = data.getError();
+            if (isRetryable(error)) {
+                if (error != null && error.networkResponse != null) {
+                    onConnectionConfirmed();
+                }
+                onReplayPostponed(record, error == null || VolleyResponseUtils.isNetworkingError(error));
+            } else {
+                onReplayFinished(record, data, false);
+            }
+        }
+
+        @Override
+        public void onCancel(Object tag) {
+            onReplayPostponed(record, false);
+        }
+    }
+
+    // Callbacks
+
+    private void addCallback(long recordId, Callback callback) {
+        List<Callback> recordCallbacks = callbacks.get(recordId);
+        if (recordCallbacks == null) {
+            recordCallbacks = new ArrayList<Callback>();
+            callbacks.put(recordId, recordCallbacks);
+        }
+        recordCallbacks.add(callback);
+    }
+
+    private List<Callback> removeCallbacks(long recordId) {
+        List<Callback> recordCallbacks = callbacks.remove(recordId);
+        if (recordCallbacks == null) {
+            recordCallbacks = new ArrayList<Callback>();
+        }
+        return recordCallbacks;
+    }
+
+    private static void notifyCanceled(List<Callback> canceled) {
+        for (Callback callback : canceled) {
+            if (callback.listener != null) {
+                callback.listener.onCancel(callback.tag);
+            }
+        }
+    }
+
+    // Journal
+
+    /**
+     * Queues journal entry to be written by background writer. Has to be called with outbox lock held.
+     */
+    private void writeJournalEntry(JournalEntry entry) {
+        // Entry is serialized right away, since record can be changed before it's written
+        pendingJournalEntries.add(gson.toJson(entry));
+        if (records.isEmpty() || journalEntryCount + pendingJournalEntries.size() - records.size() > COMPACTION_THRESHOLD) {
+            compactionRequested = true;
+        }
+        scheduleJournalWriter();
+    }
+
+    /**
+     * Requests journal to be rewritten, so it contains pending records only. Has to be called with outbox lock held.
+     */
+    private void requestCompaction() {
+        compactionRequested = true;
+        scheduleJournalWriter();
+    }
+
+    private void scheduleJournalWriter() {
+        if (!journalWriterScheduled) {
+            journalWriterScheduled = true;
+            SharedExecutor.execute(journalWriterTask);
+        }
+    }
+
+    /**
+     * Writes queued journal entries till there are no more. Single writer task is performed at a time.
+     */
+    private void writeJournal() {
+        boolean loaded;
+        synchronized (this) {
+            loaded = journalLoaded;
+        }
+        if (!loaded) {
+            loadJournal();
+        }
+
+        while (true) {
+            List<String> entries = null;
+            List<String> compactedEntries = null;
+            synchronized (this) {
+                if (compactionRequested) {
+                    // Snapshot includes all queued changes, so queued entries aren't needed anymore
+                    compactionRequested = false;
+                    pendingJournalEntries.clear();
+                    compactedEntries = new ArrayList<String>(records.size());
+                    for (Record record : records) {
+                        compactedEntries.add(gson.toJson(JournalEntry.put(record)));
+                    }
+                } else if (!pendingJournalEntries.isEmpty()) {
+                    entries = new ArrayList<String>(pendingJournalEntries);
+                    pendingJournalEntries.clear();
+                } else {
+                    journalWriterScheduled = false;
+                    return;
+                }
+            }
+
+            if (compactedEntries != null) {
+                compactJournal(compactedEntries);
+            } else {
+                appendJournal(entries);
+            }
+        }
+    }
+
+    private void loadJournal() {
+        Map<Long, Record> loaded = new LinkedHashMap<Long, Record>();
+        int entryCount = 0;
+        long nextLoadedId = 0;
+        BufferedReader reader = null;
+        if (journalFile.exists()) {
+            try {
+                reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), "UTF-8"));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    JournalEntry entry;
+                    try {
+                        entry = gson.fromJson(line, JournalEntry.class);
+                    } catch (JsonParseException e) {
+                        // Last entry can be incomplete if process was killed during write
+                        L.w("Outbox journal entry is damaged", e);
+                        break;
+                    }
+                    if (entry == null) {
+                        continue;
+                    }
+                    entryCount++;
+                    if (OP_PUT.equals(entry.op) && entry.record != null) {
+                        loaded.put(entry.record.id, entry.record);
+                        nextLoadedId = Math.max(nextLoadedId, entry.record.id + 1);
+                    } else if (OP_REMOVE.equals(entry.op)) {
+                        loaded.remove(entry.id);
+                    }
+                }
+            } catch (IOException e) {
+                L.e("Outbox journal can't be read", e);
+            } finally {
+                closeQuietly(reader);
+            }
+        }
+
+        synchronized (this) {
+            journalEntryCount = entryCount;
+            List<Record> queued = new ArrayList<Record>(records);
+            records.clear();
+            records.addAll(loaded.values());
+            nextRecordId = nextLoadedId;
+            if (!queued.isEmpty()) {
+                // Changes, queued while journal was read, follow restored ones and get identifiers after theirs.
+                // Their entries weren't written yet, so journal is rewritten instead.
+                for (Record record : queued) {
+                    List<Callback> recordCallbacks = removeCallbacks(record.id);
+                    record.id = nextRecordId++;
+                    callbacks.put(record.id, recordCallbacks);
+                    records.add(record);
+                }
+                compactionRequested = true;
+            }
+            journalLoaded = true;
+        }
+        replayNext(false);
+    }
+
+    private void appendJournal(List<String> entries) {
+        try {
+            if (journalWriter == null) {
+                journalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true), "UTF-8"));
+            }
+            for (String entry : entries) {
+                journalWriter.write(entry);
+                journalWriter.write('\n');
+            }
+            journalWriter.flush();
+            synchronized (this) {
+                journalEntryCount += entries.size();
+            }
+        } catch (IOException e) {
+            L.e("Outbox journal can't be written", e);
+            closeQuietly(journalWriter);
+            journalWriter = null;
+        }
+    }
+
+    /**
+     * Rewrites journal, so it contains given entries only
+     */
+    private void compactJournal(List<String> entries) {
+        closeQuietly(journalWriter);
+        journalWriter = null;
+
+        if (entries.isEmpty()) {
+            if (journalFile.exists() && !journalFile.delete()) {
+                L.w("Outbox journal can't be deleted");
+            }
+            synchronized (this) {
+                journalEntryCount = 0;
+            }
+            return;
+        }
+
+        File compactedFile = new File(journalFile.getPath() + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(compactedFile), "UTF-8"));
+            for (String entry : entries) {
+                writer.write(entry);
+                writer.write('\n');
+            }
+            writer.close();
+            writer = null;
+            if (compactedFile.renameTo(journalFile)) {
+                synchronized (this) {
+                    journalEntryCount = entries.size();
+                }
+            } else {
+                L.w("Outbox journal can't be replaced");
+            }
+        } catch (IOException e) {
+            L.e("Outbox journal can't be compacted", e);
+        } finally {
+            closeQuietly(writer);
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing to do here
+            }
+        }
+    }
+
+    static class Callback {
+
+        final Object tag;
+        final DrupalClient.OnResponseListener listener;
+        final RequestConfig config;
+
+        Callback(Object tag, DrupalClient.OnResponseListener listener, RequestConfig config) {
+            this.tag = tag;
+            this.listener = listener;
+            this.config = config;
+        }
+    }
+
+    private static class JournalEntry {
+
+        String op;
+        long id;
+        Record record;
+
+        static JournalEntry put(Record record) {
+            JournalEntry entry = new JournalEntry();
+            entry.op = OP_PUT;
+            entry.id = record.id;
+            entry.record = record;
+            return entry;
+        }
+
+        static JournalEntry remove(long id) {
+            JournalEntry entry = new JournalEntry();
+            entry.op = OP_REMOVE;
+            entry.id = id;
+            return entry;
+        }
+    }
+
+    /**
+     * Serialized request, stored in journal
+     */
+    static class Record {
+
+        long id;
+        String method;
+        String url;
+        String entityKey;
+        String requestFormat;
+        String responseFormat;
+        Map<String, String> headers;
+        Map<String, String> postParameters;
+        String body;
+        String charset;
+
+        /**
+         * @return record or null if request can't be stored
+         */
+        static Record fromRequest(BaseRequest request, String entityKey) {
+            if (request.getRequestFormat() == RequestFormat.MULTIPART) {
+                return null;
+            }
+
+            Record record = new Record();
+            record.method = request.getRequestMethod().name();
+            record.url = request.getUrl();
+            record.entityKey = entityKey;
+            record.requestFormat = request.getRequestFormat().name();
+            record.responseFormat = request.getResponseFormat().name();
+            if (request.getRequestHeaders() != null) {
+                record.headers = new HashMap<String, String>(request.getRequestHeaders());
+            }
+            if (request.getPostParameters() != null) {
+                record.postParameters = new HashMap<String, String>(request.getPostParameters());
+            } else if (request.getObjectToPost() != null) {
+                try {
+                    record.charset = getCharset(request.getBodyContentType());
+                    record.body = new String(request.getBody(), record.charset);
+                } catch (AuthFailureError e) {
+                    return null;
+                } catch (UnsupportedEncodingException e) {
+                    return null;
+                }
+            }
+            return record;
+        }
+
+        private static String getCharset(String contentType) {
+            String charsetPrefix = "charset=";
+            int charsetIndex = contentType != null ? contentType.toLowerCase(Locale.US).indexOf(charsetPrefix) : -1;
+            if (charsetIndex < 0) {
+                return ICharsetItem.UTF_8;
+            }
+            String charset = contentType.substring(charsetIndex + charsetPrefix.length());
+            int separatorIndex = charset.indexOf(';');
+            if (separatorIndex >= 0) {
+                charset = charset.substring(0, separatorIndex);
+            }
+            return charset.trim();
+        }
+
+        BaseRequest toRequest(RequestConfig config) {
+            if (config == null) {
+                config = new RequestConfig(null, RequestFormat.valueOf(requestFormat), ResponseFormat.valueOf(responseFormat));
+            }
+            BaseRequest request = new BaseRequest(RequestMethod.valueOf(method), url, config);
+            if (headers != null) {
+                request.setRequestHeaders(new HashMap<String, String>(headers));
+            }
+            if (postParameters != null) {
+                request.setPostParameters(new HashMap<String, String>(postParameters));
+            } else if (body != null) {
+                request.setObjectToPost(new StoredBody(body, charset));
+            }
+            return request;
+        }
+
+        /**
+         * @return true if record changes the same resource or entity instance, so they can't be replayed simultaneously
+         */
+        boolean isDependentOn(Record other) {
+            return url.equals(other.url) || entityKey != null && entityKey.equals(other.entityKey);
+        }
+
+        boolean dependsOnAny(List<Record> others) {
+            for (Record other : others) {
+                if (isDependentOn(other)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Merges JSON diff of the following PATCH request to this one, values of the following request win.
+         *
+         * @return false if requests can't be merged
+         */
+        boolean mergePatch(Record patch) {
+            if (!isJson() || !patch.isJson() || body == null || patch.body == null) {
+                return false;
+            }
+            if (headers == null ? patch.headers != null : !headers.equals(patch.headers)) {
+                return false;
+            }
+
+            try {
+                JsonParser parser = new JsonParser();
+                JsonElement target = parser.parse(body);
+                JsonElement source = parser.parse(patch.body);
+                if (!target.isJsonObject() || !source.isJsonObject()) {
+                    return false;
+                }
+                mergeObjects(target.getAsJsonObject(), source.getAsJsonObject());
+                body = target.toString();
+                return true;
+            } catch (JsonParseException e) {
+                return false;
+            }
+        }
+
+        private boolean isJson() {
+            return RequestFormat.JSON.name().equals(requestFormat) || RequestFormat.JSON_HAL.name().equals(requestFormat);
+        }
+
+        private static void mergeObjects(JsonObject target, JsonObject source) {
+            for (Map.Entry<String, JsonElement> entry : source.entrySet()) {
+                JsonElement targetValue = target.get(entry.getKey());
+                JsonElement sourceValue = entry.getValue();
+                if (targetValue != null && targetValue.isJsonObject() && sourceValue.isJsonObject()) {
+                    mergeObjects(targetValue.getAsJsonObject(), sourceValue.getAsJsonObject());
+                } else {
+                    target.add(entry.getKey(), sourceValue);
+                }
+            }
+        }
+    }
+
+    /**
+     * Body of the stored request, posted as is in any format
+     */
+    private static class StoredBody implements IPostableItem, ICharsetItem {
+
+        private final String body;
+        private final String charset;
+
+        StoredBody(String body, String charset) {
+            this.body = body;
+            this.charset = charset;
+        }
+
+        @Override
+        public String toJsonString() {
+            return body;
+        }
+
+        @Override
+        public String toXMLString() {
+            return body;
+        }
+
+        @Override
+        public String toPlainText() {
+            return body;
+        }
+
+        @Override
+        public String getCharset() {
+            return charset;
+        }
+    }
+}
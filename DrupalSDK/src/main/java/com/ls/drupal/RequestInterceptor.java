@@ -0,0 +1,55 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.drupal;
+
+import com.ls.http.base.BaseRequest;
+import com.ls.http.base.ResponseData;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Stage of {@link DrupalClient} interceptor chain, executed for every request. Interceptors are called in order they
+ * were added for requests and in reverse order for responses.
+ * Interceptors are called on request and response delivery threads, so they have to be fast and thread-safe.
+ *
+ * @see DrupalClient#addInterceptor(RequestInterceptor)
+ */
+public interface RequestInterceptor {
+
+    /**
+     * Called before request dispatch, after login data is applied. Request can be rewritten here (e.g. headers added),
+     * it's compared with other requests for duplicates after all interceptors were called.
+     *
+     * @return response to deliver instead of performing request (e.g. from local cache) or null to proceed. Response
+     * with error set is delivered as failure. Following interceptors aren't called in this case.
+     */
+    @Nullable
+    ResponseData onRequest(@NonNull BaseRequest request);
+
+    /**
+     * Called for every request result, including failures and responses, returned by {@link #onRequest(BaseRequest)},
+     * before request listeners are notified. Response can be modified here.
+     */
+    void onResponse(@NonNull BaseRequest request, @NonNull ResponseData data);
+}
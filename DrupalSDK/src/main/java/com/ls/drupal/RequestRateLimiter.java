@@ -0,0 +1,267 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.drupal;
+
+import com.android.volley.toolbox.HttpHeaderParser;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client side token bucket rate limiter. Requests exceeding rate aren't dropped but delayed until token is available.
+ * Global limit is applied to all requests, path limit - to requests with path (relative to client base URL) starting
+ * with given prefix, the most specific prefix is used. Retry-After header of 429 and 503 responses suspends all
+ * requests for specified period.
+ * See {@link DrupalClient#setRateLimiter(RequestRateLimiter)}
+ */
+public class RequestRateLimiter {
+
+    private static final String RETRY_AFTER_HEADER = "Retry-After";
+    static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_SERVICE_UNAVAILABLE = 503;
+    private static final long DEFAULT_MAX_RETRY_AFTER = 60000;
+
+    private final TokenBucket globalBucket;
+    private final List<PathBucket> pathBuckets;
+    private long maxRetryAfter = DEFAULT_MAX_RETRY_AFTER;
+    private long suspendedUntil;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong delayedRequestCount = new AtomicLong();
+    private final AtomicLong totalWaitTime = new AtomicLong();
+    private final AtomicLong maxWaitTime = new AtomicLong();
+
+    /**
+     * Creates limiter without global limit, use {@link #setPathLimit(String, double, int)} to add path limits.
+     */
+    public RequestRateLimiter() {
+        this(0, 0);
+    }
+
+    /**
+     * @param permitsPerSecond global request rate, 0 disables global limit
+     * @param burst            number of requests, which can be performed without delay after idle period
+     */
+    public RequestRateLimiter(double permitsPerSecond, int burst) {
+        this.globalBucket = permitsPerSecond > 0 ? new TokenBucket(permitsPerSecond, burst) : null;
+        this.pathBuckets = new CopyOnWriteArrayList<PathBucket>();
+    }
+
+    /**
+     * @param pathPrefix       path prefix, relative to client base URL, e.g. "node" or "api/v1/articles"
+     * @param permitsPerSecond request rate for the path
+     * @param burst            number of requests, which can be performed without delay after idle period
+     */
+    public RequestRateLimiter setPathLimit(@NonNull String pathPrefix, double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("Rate has to be positive: " + permitsPerSecond);
+        }
+        String prefix = normalizePath(pathPrefix);
+        for (PathBucket bucket : pathBuckets) {
+            if (bucket.prefix.equals(prefix)) {
+                pathBuckets.remove(bucket);
+            }
+        }
+        pathBuckets.add(new PathBucket(prefix, new TokenBucket(permitsPerSecond, burst)));
+        return this;
+    }
+
+    /**
+     * @param maxRetryAfter upper bound of suspension in milliseconds, requested by Retry-After header
+     */
+    public RequestRateLimiter setMaxRetryAfter(long maxRetryAfter) {
+        this.maxRetryAfter = maxRetryAfter;
+        return this;
+    }
+
+    /**
+     * Reserves request permit.
+     * @param path request path, relative to client base URL
+     * @return delay in milliseconds request has to wait for before being performed
+     */
+    long reserve(String path) {
+        long now = SystemClock.elapsedRealtime();
+        long delay = 0;
+        if (globalBucket != null) {
+            delay = globalBucket.reserve(now);
+        }
+
+        TokenBucket pathBucket = findPathBucket(normalizePath(path));
+        if (pathBucket != null) {
+            delay = Math.max(delay, pathBucket.reserve(now));
+        }
+
+        synchronized (this) {
+            delay = Math.max(delay, suspendedUntil - now);
+        }
+
+        requestCount.incrementAndGet();
+        if (delay > 0) {
+            delayedRequestCount.incrementAndGet();
+            totalWaitTime.addAndGet(delay);
+            long max = maxWaitTime.get();
+            while (delay > max && !maxWaitTime.compareAndSet(max, delay)) {
+                max = maxWaitTime.get();
+            }
+        }
+        return Math.max(0, delay);
+    }
+
+    /**
+     * Suspends requests if response status is 429 or 503 and Retry-After header is present.
+     */
+    void onResponse(int statusCode, Map<String, String> headers) {
+        if ((statusCode != HTTP_TOO_MANY_REQUESTS && statusCode != HTTP_SERVICE_UNAVAILABLE) || headers == null) {
+            return;
+        }
+
+        String retryAfter = null;
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            if (RETRY_AFTER_HEADER.equalsIgnoreCase(entry.getKey())) {
+                retryAfter = entry.getValue();
+                break;
+            }
+        }
+
+        long delay = parseRetryAfter(retryAfter);
+        if (delay > 0) {
+            long until = SystemClock.elapsedRealtime() + Math.min(delay, maxRetryAfter);
+            synchronized (this) {
+                suspendedUntil = Math.max(suspendedUntil, until);
+            }
+        }
+    }
+
+    private static long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null) {
+            return 0;
+        }
+        retryAfter = retryAfter.trim();
+        try {
+            return Long.parseLong(retryAfter) * 1000;
+        } catch (NumberFormatException e) {
+            long date = HttpHeaderParser.parseDateAsEpoch(retryAfter);
+            return date > 0 ? date - System.currentTimeMillis() : 0;
+        }
+    }
+
+    private TokenBucket findPathBucket(String path) {
+        PathBucket result = null;
+        for (PathBucket bucket : pathBuckets) {
+            if (path.startsWith(bucket.prefix) && (result == null || bucket.prefix.length() > result.prefix.length())) {
+                result = bucket;
+            }
+        }
+        return result != null ? result.bucket : null;
+    }
+
+    private static String normalizePath(String path) {
+        int start = 0;
+        while (start < path.length() && path.charAt(start) == '/') {
+            start++;
+        }
+        return path.substring(start);
+    }
+
+    // Wait time metrics
+
+    /**
+     * @return number of requests passed through limiter
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return number of requests, delayed by limiter
+     */
+    public long getDelayedRequestCount() {
+        return delayedRequestCount.get();
+    }
+
+    /**
+     * @return total wait time of delayed requests in milliseconds
+     */
+    public long getTotalWaitTime() {
+        return totalWaitTime.get();
+    }
+
+    /**
+     * @return maximal wait time of a single request in milliseconds
+     */
+    public long getMaxWaitTime() {
+        return maxWaitTime.get();
+    }
+
+    /**
+     * @return average wait time of delayed requests in milliseconds
+     */
+    public long getAverageWaitTime() {
+        long count = delayedRequestCount.get();
+        return count > 0 ? totalWaitTime.get() / count : 0;
+    }
+
+    private static class PathBucket {
+        private final String prefix;
+        private final TokenBucket bucket;
+
+        PathBucket(String prefix, TokenBucket bucket) {
+            this.prefix = prefix;
+            this.bucket = bucket;
+        }
+    }
+
+    /**
+     * Token bucket, reserving tokens in advance: if bucket is empty, request is assigned the time next token becomes available.
+     */
+    private static class TokenBucket {
+        private final double interval;
+        private final double capacity;
+        private double storedTokens;
+        private double nextFreeTime;
+
+        TokenBucket(double permitsPerSecond, int burst) {
+            this.interval = 1000 / permitsPerSecond;
+            this.capacity = Math.max(1, burst);
+            this.storedTokens = this.capacity;
+        }
+
+        synchronized long reserve(long now) {
+            if (now > nextFreeTime) {
+                storedTokens = Math.min(capacity, storedTokens + (now - nextFreeTime) / interval);
+                nextFreeTime = now;
+            }
+
+            long delay = (long) Math.ceil(nextFreeTime - now);
+            double tokensFromStore = Math.min(1, storedTokens);
+            storedTokens -= tokensFromStore;
+            nextFreeTime += (1 - tokensFromStore) * interval;
+            return delay;
+        }
+    }
+}
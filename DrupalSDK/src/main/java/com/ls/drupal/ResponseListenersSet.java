@@ -23,21 +23,39 @@
 package com.ls.drupal;
 
 import com.android.volley.Request;
-import com.ls.util.L;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created on 27.03.2015.
+ * Thread-safe request to listeners mapping. No global lock is used: map is concurrent and every listener list is guarded
+ * by it's own monitor, so listener registration and request completion for different requests never contend.
+ * Listeners are returned as immutable snapshots and have to be called outside of any lock.
+ * Requests are additionally indexed by tag and by listener (compared by identity), so they can be found without queue traversal.
+ * Index has it's own short lock, taken after listener list monitor.
  */
 public class ResponseListenersSet {
-    private Map<Request, List<ListenerHolder>> listeners;
+    private final ConcurrentMap<Request<?>, ListenerList> listeners;
+    private final AtomicInteger registeredRequestCount;
+    private final Map<Object, Set<Request<?>>> requestsByTag;
+    private final Map<DrupalClient.OnResponseListener, Set<Request<?>>> requestsByListener;
+    private final Object indexLock = new Object();
+
     public ResponseListenersSet()
     {
-        listeners = new HashMap<Request, List<ListenerHolder>>();
+        listeners = new ConcurrentHashMap<Request<?>, ListenerList>();
+        registeredRequestCount = new AtomicInteger();
+        requestsByTag = new HashMap<Object, Set<Request<?>>>();
+        requestsByListener = new IdentityHashMap<DrupalClient.OnResponseListener, Set<Request<?>>>();
     }
 
     /**
@@ -46,61 +64,175 @@ public class ResponseListenersSet {
      * @param listener listener to register for request
      * @return true if new request was registered, false otherwise
      */
-    public boolean registerListenerForRequest(Request request,DrupalClient.OnResponseListener listener,Object tag,boolean skipDuplicateRequestListeners)
+    public boolean registerListenerForRequest(Request<?> request,DrupalClient.OnResponseListener listener,Object tag,boolean skipDuplicateRequestListeners)
     {
-        boolean result = false;
-
         if(listener == null)
         {
+            // Request isn't registered, but it still can be canceled by tag
+            addToIndex(requestsByTag, request.getTag(), request);
             return true;
         }
 
-        List<ListenerHolder> listenersList = listeners.get(request);
+        ListenerHolder holder = new ListenerHolder(listener,tag);
+        while (true) {
+            ListenerList listenersList = listeners.get(request);
+            if (listenersList == null) {
+                ListenerList newList = new ListenerList(request, holder);
+                synchronized (newList) {
+                    // Index is updated before list becomes visible to removal
+                    if (listeners.putIfAbsent(request, newList) == null) {
+                        registeredRequestCount.incrementAndGet();
+                        addToIndex(requestsByTag, newList.requestTag, request);
+                        addToIndex(requestsByListener, listener, request);
+                        return true;
+                    }
+                }
+                continue;
+            }
 
-        if(listenersList == null)
-        {
-            listenersList = new LinkedList<ListenerHolder>();
-            listeners.put(request,listenersList);
-            result = true;
-        }else{
-            if(!listenersList.isEmpty() && skipDuplicateRequestListeners)
-            {
-                //We don't add duplicate listners in case of reject policy
-                return result;
+            synchronized (listenersList) {
+                if (listenersList.closed) {
+                    // Request was completed concurrently, we have to register new one
+                    continue;
+                }
+
+                if (!listenersList.holders.isEmpty() && skipDuplicateRequestListeners) {
+                    //We don't add duplicate listners in case of reject policy
+                    return false;
+                }
+
+                listenersList.holders.add(holder);
+                addToIndex(requestsByListener, listener, listenersList.request);
+                return false;
             }
         }
-
-        listenersList.add(new ListenerHolder(listener,tag));
-        return result;
     }
 
     /**
      *
      * @param request
-     * @return Listeners, registered for this request
+     * @return Snapshot of listeners, registered for this request or null if there are no ones
      */
-    protected List<ListenerHolder> getListenersForRequest(Request request)
+    protected List<ListenerHolder> getListenersForRequest(Request<?> request)
     {
-        return listeners.get(request);
+        ListenerList listenersList = listeners.get(request);
+        if (listenersList == null) {
+            return null;
+        }
+
+        synchronized (listenersList) {
+            return Collections.unmodifiableList(new ArrayList<ListenerHolder>(listenersList.holders));
+        }
     }
 
     /**
-     * Remove all listeners for request
+     * Remove all listeners for request. Removal is atomic: listeners can't be attached to request after this call.
      * @param request
+     * @return listeners, registered for this request or null if there were no ones (or they were removed concurrently)
      */
-    public void  removeListenersForRequest(Request request)
+    public List<ListenerHolder> removeListenersForRequest(Request<?> request)
     {
-        listeners.remove(request);
+        ListenerList listenersList = listeners.remove(request);
+        if (listenersList == null) {
+            removeFromIndex(requestsByTag, request.getTag(), request);
+            return null;
+        }
+
+        registeredRequestCount.decrementAndGet();
+        List<ListenerHolder> holders;
+        synchronized (listenersList) {
+            listenersList.closed = true;
+            holders = Collections.unmodifiableList(listenersList.holders);
+        }
+
+        removeFromIndex(requestsByTag, listenersList.requestTag, listenersList.request);
+        for (ListenerHolder holder : holders) {
+            removeFromIndex(requestsByListener, holder.getListener(), listenersList.request);
+        }
+        return holders;
+    }
+
+    /**
+     * @return snapshot of requests with given tag, including ones without listeners
+     */
+    public List<Request<?>> getRequestsForTag(Object tag)
+    {
+        return getFromIndex(requestsByTag, tag);
     }
 
-    public synchronized void removeAllListeners()
+    /**
+     * @return snapshot of requests, given listener is registered for
+     */
+    public List<Request<?>> getRequestsForListener(DrupalClient.OnResponseListener listener)
     {
-        listeners.clear();
+        return getFromIndex(requestsByListener, listener);
+    }
+
+    private <K> void addToIndex(Map<K, Set<Request<?>>> index, K key, Request<?> request)
+    {
+        if (key == null) {
+            return;
+        }
+        synchronized (indexLock) {
+            Set<Request<?>> requests = index.get(key);
+            if (requests == null) {
+                requests = Collections.newSetFromMap(new IdentityHashMap<Request<?>, Boolean>());
+                index.put(key, requests);
+            }
+            requests.add(request);
+        }
+    }
+
+    private <K> void removeFromIndex(Map<K, Set<Request<?>>> index, K key, Request<?> request)
+    {
+        if (key == null) {
+            return;
+        }
+        synchronized (indexLock) {
+            Set<Request<?>> requests = index.get(key);
+            if (requests != null && requests.remove(request) && requests.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private <K> List<Request<?>> getFromIndex(Map<K, Set<Request<?>>> index, K key)
+    {
+        synchronized (indexLock) {
+            Set<Request<?>> requests = index.get(key);
+            if (requests == null) {
+                return Collections.emptyList();
+            }
+            return new ArrayList<Request<?>>(requests);
+        }
+    }
+
+    public void removeAllListeners()
+    {
+        for (Request<?> request : listeners.keySet()) {
+            removeListenersForRequest(request);
+        }
     }
 
     public int registeredRequestCount()
     {
-        return listeners.size();
+        return registeredRequestCount.get();
+    }
+
+    private static class ListenerList
+    {
+        private final Request<?> request;
+        private final Object requestTag;
+        private final List<ListenerHolder> holders;
+        private boolean closed;
+
+        ListenerList(Request<?> request, ListenerHolder firstHolder)
+        {
+            this.request = request;
+            this.requestTag = request.getTag();
+            this.holders = new ArrayList<ListenerHolder>(1);
+            this.holders.add(firstHolder);
+        }
     }
 
     public static class ListenerHolder
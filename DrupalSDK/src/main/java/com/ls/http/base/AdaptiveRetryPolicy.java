@@ -0,0 +1,194 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.http.base;
+
+import com.android.volley.Request;
+import com.android.volley.RetryPolicy;
+import com.android.volley.VolleyError;
+
+import android.support.annotation.NonNull;
+
+import java.util.Random;
+
+/**
+ * Retry policy, deriving request timeout from observed endpoint latency: timeout is p99 latency of the endpoint path
+ * template plus safety margin, clamped to configured bounds. Default timeout is used until enough samples are collected.
+ * Every retry doubles timeout and waits for exponential backoff with jitter. Non-idempotent requests (POST and PATCH)
+ * aren't retried unless explicitly allowed.
+ * Note: backoff wait is performed on network dispatcher thread, as volley performs retries there.
+ */
+public class AdaptiveRetryPolicy implements RetryPolicy {
+
+    public static final int DEFAULT_TIMEOUT_MS = 2500;
+    public static final int DEFAULT_MIN_TIMEOUT_MS = 500;
+    public static final int DEFAULT_MAX_TIMEOUT_MS = 30000;
+    public static final int DEFAULT_MAX_RETRIES = 2;
+    public static final int DEFAULT_BACKOFF_BASE_MS = 200;
+
+    private static final double TIMEOUT_PERCENTILE = 0.99;
+    private static final int MIN_SAMPLES = 10;
+    private static final int MIN_MARGIN_MS = 250;
+    private static final Random JITTER = new Random();
+
+    private final boolean retryAllowed;
+    private final int maxRetries;
+    private final int maxTimeout;
+    private final int backoffBase;
+    private int currentTimeout;
+    private int retryCount;
+
+    /**
+     * Creates policy instances with shared configuration.
+     */
+    public static class Factory implements RetryPolicyFactory {
+
+        private final LatencyTracker latencyTracker;
+        private int defaultTimeout = DEFAULT_TIMEOUT_MS;
+        private int minTimeout = DEFAULT_MIN_TIMEOUT_MS;
+        private int maxTimeout = DEFAULT_MAX_TIMEOUT_MS;
+        private int maxRetries = DEFAULT_MAX_RETRIES;
+        private int backoffBase = DEFAULT_BACKOFF_BASE_MS;
+        private boolean nonIdempotentRetryAllowed = false;
+
+        /**
+         * @param latencyTracker source of endpoint latency statistics, usually {@link com.ls.drupal.DrupalClient#getLatencyTracker()}
+         */
+        public Factory(@NonNull LatencyTracker latencyTracker) {
+            this.latencyTracker = latencyTracker;
+        }
+
+        @NonNull
+        @Override
+        public RetryPolicy newRetryPolicy(@NonNull BaseRequest request) {
+            int timeout = defaultTimeout;
+            long percentile = latencyTracker.getPercentile(request.getUrl(), TIMEOUT_PERCENTILE, MIN_SAMPLES);
+            if (percentile >= 0) {
+                timeout = (int) Math.min(Integer.MAX_VALUE, percentile + Math.max(MIN_MARGIN_MS, percentile / 4));
+            }
+            timeout = Math.max(minTimeout, Math.min(maxTimeout, timeout));
+
+            boolean retryAllowed = nonIdempotentRetryAllowed || isIdempotent(request.getMethod());
+            return new AdaptiveRetryPolicy(timeout, maxTimeout, retryAllowed ? maxRetries : 0, backoffBase);
+        }
+
+        public LatencyTracker getLatencyTracker() {
+            return latencyTracker;
+        }
+
+        /**
+         * @param defaultTimeout timeout, used for endpoints without enough latency samples
+         */
+        public Factory setDefaultTimeout(int defaultTimeout) {
+            this.defaultTimeout = defaultTimeout;
+            return this;
+        }
+
+        /**
+         * @param minTimeout lower timeout bound
+         * @param maxTimeout upper timeout bound, applied to retries as well
+         */
+        public Factory setTimeoutBounds(int minTimeout, int maxTimeout) {
+            if (minTimeout <= 0 || maxTimeout < minTimeout) {
+                throw new IllegalArgumentException("Invalid timeout bounds: " + minTimeout + ".." + maxTimeout);
+            }
+            this.minTimeout = minTimeout;
+            this.maxTimeout = maxTimeout;
+            return this;
+        }
+
+        public Factory setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * @param backoffBase base backoff delay, doubled with every retry
+         */
+        public Factory setBackoffBase(int backoffBase) {
+            this.backoffBase = backoffBase;
+            return this;
+        }
+
+        /**
+         * @param nonIdempotentRetryAllowed if true POST and PATCH requests will be retried as well
+         */
+        public Factory setNonIdempotentRetryAllowed(boolean nonIdempotentRetryAllowed) {
+            this.nonIdempotentRetryAllowed = nonIdempotentRetryAllowed;
+            return this;
+        }
+    }
+
+    /**
+     * @param initialTimeout timeout of the first attempt
+     * @param maxTimeout     upper timeout bound for retries
+     * @param maxRetries     maximal retry count, 0 disables retries
+     * @param backoffBase    base backoff delay, doubled with every retry
+     */
+    public AdaptiveRetryPolicy(int initialTimeout, int maxTimeout, int maxRetries, int backoffBase) {
+        this.currentTimeout = initialTimeout;
+        this.maxTimeout = Math.max(initialTimeout, maxTimeout);
+        this.maxRetries = maxRetries;
+        this.backoffBase = backoffBase;
+        this.retryAllowed = maxRetries > 0;
+    }
+
+    @Override
+    public int getCurrentTimeout() {
+        return currentTimeout;
+    }
+
+    @Override
+    public int getCurrentRetryCount() {
+        return retryCount;
+    }
+
+    @Override
+    public void retry(VolleyError error) throws VolleyError {
+        if (!retryAllowed || retryCount >= maxRetries) {
+            throw error;
+        }
+        retryCount++;
+        currentTimeout = (int) Math.min(maxTimeout, currentTimeout * 2L);
+
+        long backoff = (long) backoffBase << Math.min(retryCount - 1, 16);
+        long delay;
+        synchronized (JITTER) {
+            delay = backoff / 2 + (long) (JITTER.nextDouble() * backoff / 2);
+        }
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw error;
+            }
+        }
+    }
+
+    /**
+     * @return true if repeating request with given volley method code is safe
+     */
+    public static boolean isIdempotent(int method) {
+        return method != Request.Method.POST && method != Request.Method.PATCH && method != Request.Method.DEPRECATED_GET_OR_POST;
+    }
+}
@@ -23,12 +23,14 @@
 package com.ls.http.base;
 
 import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
 import com.android.volley.Response;
 import com.android.volley.toolbox.HttpHeaderParser;
 
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Type;
 import java.util.HashMap;
@@ -57,6 +59,13 @@ public abstract class BaseByteResponseHandler extends ResponseHandler
     {
         ResponseData responseData = new ResponseData();
 
+        if (isBodyEncoded(response)) {
+            try {
+                response = new NetworkResponse(response.statusCode, readBody(response), response.headers, response.notModified);
+            } catch (IOException e) {
+                return Response.error(new ParseError(e));
+            }
+        }
         responseData.data = this.itemFromResponseWithSpecifier(response, responseClassSpecifier);
 
         responseData.statusCode = response.statusCode;
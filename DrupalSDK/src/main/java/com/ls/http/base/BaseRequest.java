@@ -23,11 +23,15 @@
 package com.ls.http.base;
 
 import com.android.volley.AuthFailureError;
+import com.android.volley.Cache;
 import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
 import com.android.volley.Response;
+import com.android.volley.ServerError;
 import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HttpHeaderParser;
 import com.android.volley.toolbox.RequestFuture;
 
 import com.ls.http.base.handler.Handler;
@@ -36,16 +40,41 @@ import com.ls.util.L;
 import org.apache.http.Header;
 
 import android.net.Uri;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
 import android.text.TextUtils;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
 
 public class BaseRequest extends Request<ResponseData> {
     protected static String ACCEPT_HEADER_KEY = "Accept";
+    protected static String ACCEPT_ENCODING_HEADER_KEY = "Accept-Encoding";
+    protected static String IF_NONE_MATCH_HEADER_KEY = "If-None-Match";
+    protected static String IF_MODIFIED_SINCE_HEADER_KEY = "If-Modified-Since";
+    private static final String ETAG_HEADER_KEY = "ETag";
+    private static final String LAST_MODIFIED_HEADER_KEY = "Last-Modified";
+    private static final String CONTENT_ENCODING_HEADER_KEY = "Content-Encoding";
+    private static final String BODY_CONTENT_ENCODING = "gzip";
+    private static final int HTTP_UNSUPPORTED_MEDIA_TYPE = 415;
+
+    /**
+     * Hosts, which rejected compressed request body
+     */
+    private static final Set<String> hostsRejectingBodyCompression = Collections.synchronizedSet(new HashSet<String>());
 
     public static enum RequestMethod {
         GET(Method.GET), POST(Method.POST), PATCH(Method.PATCH), DELETE(Method.DELETE), PUT(Method.PUT), HEAD(Method.HEAD), OPTIONS(Method.OPTIONS), TRACE(Method.TRACE);
@@ -79,8 +108,26 @@ public class BaseRequest extends Request<ResponseData> {
         JSON, XML, JSON_HAL, TEXT, BYTE
     } ;
 
+    /**
+     * Request priority lanes. IMMEDIATE requests are always performed first, requests from other lanes are ordered by
+     * enqueue time, shifted by lane aging delay, so low priority requests can't starve: LOW request, waiting longer than
+     * 1.5 seconds will overtake newly added NORMAL one.
+     */
+    public static enum RequestPriority {
+        IMMEDIATE(Priority.IMMEDIATE, 0), HIGH(Priority.HIGH, 0), NORMAL(Priority.NORMAL, 500), LOW(Priority.LOW, 2000), PREFETCH(Priority.LOW, 8000);
+
+        final private Priority volleyPriority;
+        final private long agingDelay;
+
+        RequestPriority(Priority volleyPriority, long agingDelay) {
+            this.volleyPriority = volleyPriority;
+            this.agingDelay = agingDelay;
+        }
+    }
+
     private final RequestFormat requestFormat;
     private final ResponseFormat responseFormat;
+    private RequestPriority requestPriority;
 
     private String defaultCharset;
 
@@ -102,6 +149,27 @@ public class BaseRequest extends Request<ResponseData> {
     private ResponseData result;
     private OnResponseListener responseListener;
     private boolean smartComparisonEnabled = false;
+    private long enqueueTime;
+    private volatile int requestBodySize;
+    private volatile int bodyCompressionThreshold;
+    private volatile boolean bodyCompressed;
+    private volatile boolean bodyPrepared;
+    private final Object bodyLock = new Object();
+    private byte[] preparedBody;
+    private byte[] compressedBody;
+    private RequestQueue requestQueue;
+    private RequestFingerprint fingerprint;
+    private byte[] serializedBody;
+    private RetryPolicyFactory retryPolicyFactory;
+    private final String eTagValidator;
+    private final String lastModifiedValidator;
+    private final boolean staleWhileRevalidate;
+    private RequestFingerprint staleBodyDigest;
+    private boolean staleResponseConfirmed;
+    private volatile long networkAttemptStartTime;
+    private long networkLatency = -1;
+    private long responseExpiryTime;
+    private final RequestTimings timings;
 
     /**
      * @param requestConfig Additional request configuration entity, used to provide some additional parameters
@@ -124,12 +192,32 @@ public class BaseRequest extends Request<ResponseData> {
             responseFormatL = this.requestFormat.toResponse();
         }
         this.responseFormat = responseFormatL;
+
+        RequestPriority priorityL = requestConfig.getPriority();
+        if(priorityL == null)
+        {
+            priorityL = RequestPriority.NORMAL;
+        }
+        this.requestPriority = priorityL;
+        this.retryPolicyFactory = requestConfig.getRetryPolicyFactory();
         this.syncLock = lock;
         this.requestHandler = Handler.getRequestHandlerForFormat(this.requestFormat);
         this.responseHandler = Handler.getResponseHandlerForFormat(this.responseFormat);
+        this.timings = RequestTimings.createIfEnabled();
+        this.responseHandler.timings = this.timings;
         this.initRequestHeaders();
         this.responseClasSpecifier = requestConfig.getResponseClassSpecifier();
         this.errorResponseClasSpecifier = requestConfig.getErrorResponseClassSpecifier();
+        this.eTagValidator = requestConfig.getETagValidator();
+        this.lastModifiedValidator = requestConfig.getLastModifiedValidator();
+        this.staleWhileRevalidate = requestConfig.isStaleWhileRevalidate();
+        this.bodyCompressionThreshold = requestConfig.getBodyCompressionThreshold();
+        if (this.eTagValidator != null) {
+            this.addRequestHeader(IF_NONE_MATCH_HEADER_KEY, this.eTagValidator);
+        }
+        if (this.lastModifiedValidator != null) {
+            this.addRequestHeader(IF_MODIFIED_SINCE_HEADER_KEY, this.lastModifiedValidator);
+        }
         this.result = new ResponseData();
     }
 
@@ -138,6 +226,18 @@ public class BaseRequest extends Request<ResponseData> {
         return responseClasSpecifier;
     }
 
+    public RequestMethod getRequestMethod() {
+        return getRequestMethod(getMethod());
+    }
+
+    public RequestFormat getRequestFormat() {
+        return requestFormat;
+    }
+
+    public ResponseFormat getResponseFormat() {
+        return responseFormat;
+    }
+
     private void initRequestHeaders() {
         this.requestHeaders = new HashMap<String, String>();
 
@@ -145,6 +245,8 @@ public class BaseRequest extends Request<ResponseData> {
         if(!TextUtils.isEmpty(acceptValueType)) {
             this.addRequestHeader(ACCEPT_HEADER_KEY, acceptValueType);
         }
+        // Explicit negotiation disables transparent decompression of http stack, so compressed body is cached as is
+        this.addRequestHeader(ACCEPT_ENCODING_HEADER_KEY, ResponseHandler.SUPPORTED_CONTENT_ENCODINGS);
     }
 
     public ResponseData performRequest(boolean synchronous, RequestQueue theQueque) {
@@ -163,13 +265,128 @@ public class BaseRequest extends Request<ResponseData> {
 
     @Override
     protected Response<ResponseData> parseNetworkResponse(NetworkResponse response) {
+        response = this.mergeCachedHeaders(response);
+        this.updateNetworkLatency();
+        if (this.timings != null) {
+            this.timings.finishPhase(RequestTimings.Phase.NETWORK);
+        }
+        if (this.staleBodyDigest != null && this.networkLatency >= 0 && response.data != null
+                && this.staleBodyDigest.equals(getBodyDigest(response.data))) {
+            // Revalidated content equals stale one, delivered before: there is no need to parse it
+            this.staleResponseConfirmed = true;
+            ResponseData confirmedResult = new ResponseData();
+            confirmedResult.statusCode = response.statusCode;
+            confirmedResult.headers = new HashMap<String, String>(response.headers);
+            confirmedResult.responseSize = response.data.length;
+            this.result = confirmedResult;
+            Response<ResponseData> confirmedResponse = Response.success(confirmedResult, HttpHeaderParser.parseCacheHeaders(response));
+            this.updateResponseExpiryTime(confirmedResponse.cacheEntry);
+            return confirmedResponse;
+        }
+        if (this.isRepresentationUnchanged(response)) {
+            ResponseData notModifiedResult = new ResponseData();
+            notModifiedResult.statusCode = response.statusCode;
+            notModifiedResult.headers = new HashMap<String, String>(response.headers);
+            notModifiedResult.notModified = true;
+            this.result = notModifiedResult;
+            // Cache entry can be refreshed only if volley has cached body to keep
+            Response<ResponseData> notModifiedResponse = Response.success(notModifiedResult, response.data != null ? HttpHeaderParser.parseCacheHeaders(response) : null);
+            this.updateResponseExpiryTime(notModifiedResponse.cacheEntry);
+            return notModifiedResponse;
+        }
         Response<ResponseData> result = this.responseHandler.parseNetworkResponse(response,responseClasSpecifier);
         this.result = result.result;
+        if (this.result != null) {
+            this.result.responseSize = response.data != null ? response.data.length : 0;
+        }
+        this.updateResponseExpiryTime(result.cacheEntry);
         return result;
     }
 
+    /**
+     * Volley answers 304 with cached body, but with headers of 304 response only, which usually lack entity headers
+     * (e.g. Content-Encoding of compressed body). Cached headers are merged underneath, so body is decoded and cached again properly.
+     */
+    private NetworkResponse mergeCachedHeaders(NetworkResponse response) {
+        Cache.Entry entry = getCacheEntry();
+        if (!response.notModified || entry == null || entry.responseHeaders == null) {
+            return response;
+        }
+        Map<String, String> headers = new HashMap<String, String>(entry.responseHeaders);
+        if (response.headers != null) {
+            for (Map.Entry<String, String> header : response.headers.entrySet()) {
+                Iterator<String> keys = headers.keySet().iterator();
+                while (keys.hasNext()) {
+                    if (keys.next().equalsIgnoreCase(header.getKey())) {
+                        keys.remove();
+                    }
+                }
+                headers.put(header.getKey(), header.getValue());
+            }
+        }
+        return new NetworkResponse(response.statusCode, response.data, headers, true);
+    }
+
+    private void updateResponseExpiryTime(Cache.Entry parsedEntry) {
+        Cache.Entry diskEntry = getCacheEntry();
+        if (this.networkLatency < 0 && diskEntry != null) {
+            // Response was read from disk cache: freshness has to be taken from stored entry, as parsed one starts from now
+            this.responseExpiryTime = diskEntry.softTtl;
+        } else {
+            this.responseExpiryTime = parsedEntry != null ? parsedEntry.softTtl : 0;
+        }
+    }
+
+    /**
+     * @return time parsed response stays fresh till, according to its cache headers (as returned by {@link System#currentTimeMillis()}), 0 if response can't be cached
+     */
+    public long getResponseExpiryTime() {
+        return responseExpiryTime;
+    }
+
+    /**
+     * @return true if conditional request validators match the response, so response body doesn't have to be parsed
+     */
+    private boolean isRepresentationUnchanged(NetworkResponse response) {
+        if (this.eTagValidator == null && this.lastModifiedValidator == null) {
+            return false;
+        }
+
+        String eTag = getHeaderValue(response.headers, ETAG_HEADER_KEY);
+        if (this.eTagValidator != null && eTag != null) {
+            return this.eTagValidator.equals(eTag);
+        }
+
+        if (response.notModified || response.statusCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            // Volley replaces validators with cached ones if cache entry exists, so 304 matches our validators only if they were sent
+            Cache.Entry entry = getCacheEntry();
+            return entry == null || (this.eTagValidator != null && this.eTagValidator.equals(entry.etag));
+        }
+
+        if (this.eTagValidator == null) {
+            return this.lastModifiedValidator.equals(getHeaderValue(response.headers, LAST_MODIFIED_HEADER_KEY));
+        }
+        return false;
+    }
+
+    static String getHeaderValue(Map<String, String> headers, String key) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            if (key.equalsIgnoreCase(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
     @Override
     protected VolleyError parseNetworkError(VolleyError volleyError) {
+        this.updateNetworkLatency();
+        if (this.timings != null) {
+            this.timings.finishPhase(RequestTimings.Phase.NETWORK);
+        }
         VolleyError error = super.parseNetworkError(volleyError);
         this.result = new ResponseData();
         if (volleyError.networkResponse != null) {
@@ -188,6 +405,20 @@ public class BaseRequest extends Request<ResponseData> {
 
     @Override
     protected void deliverResponse(ResponseData o) {
+        if (this.timings != null) {
+            this.timings.finishPhase(RequestTimings.Phase.DELIVERY);
+        }
+        if (o != null && o.stale) {
+            o.timings = this.timings;
+            // Intermediate response: request isn't complete yet
+            if (this.responseListener != null) {
+                this.responseListener.onResponseReceived(o, this);
+            }
+            return;
+        }
+        if (this.result != null) {
+            this.result.timings = this.timings;
+        }
         this.syncLock.onResponse(result);
         if (this.responseListener != null) {
             this.responseListener.onResponseReceived(result, this);
@@ -196,13 +427,305 @@ public class BaseRequest extends Request<ResponseData> {
 
     @Override
     public void deliverError(VolleyError error) {
+        if (this.retryWithPlainBody(error)) {
+            return;
+        }
+        if (this.timings != null) {
+            this.timings.finishPhase(RequestTimings.Phase.DELIVERY);
+        }
         this.result.error = error;
+        this.result.timings = this.timings;
         this.syncLock.onErrorResponse(error);
         if (this.responseListener != null) {
             this.responseListener.onError(result, this);
         }
     }
 
+    // Stale-while-revalidate handling
+
+    public boolean isStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+
+    /**
+     * @return true if revalidated response equals stale one, delivered before. Response isn't parsed in this case.
+     */
+    public boolean isStaleResponseConfirmed() {
+        return staleResponseConfirmed;
+    }
+
+    /**
+     * Volley sets cache entry for soft-expired entries, delivered as intermediate response, and for expired ones before
+     * revalidation. Both are delivered as stale responses if stale-while-revalidate mode is enabled.
+     */
+    @Override
+    public Request<?> setCacheEntry(Cache.Entry entry) {
+        Request<?> request = super.setCacheEntry(entry);
+        if (this.staleWhileRevalidate && entry != null && entry.data != null) {
+            this.staleBodyDigest = getBodyDigest(entry.data);
+            if (entry.isExpired()) {
+                this.deliverStaleEntry(entry);
+            } else if (this.result != null) {
+                // Entry was parsed already and will be delivered by volley as intermediate response
+                this.result.stale = true;
+            }
+        }
+        return request;
+    }
+
+    private void deliverStaleEntry(Cache.Entry entry) {
+        final Response<ResponseData> staleResponse;
+        try {
+            staleResponse = parseNetworkResponse(new NetworkResponse(entry.data, entry.responseHeaders));
+        } catch (RuntimeException e) {
+            L.w("Stale cache entry can't be parsed", e);
+            return;
+        }
+        if (!staleResponse.isSuccess() || staleResponse.result == null) {
+            return;
+        }
+
+        staleResponse.result.stale = true;
+        new android.os.Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                if (!isCanceled()) {
+                    deliverResponse(staleResponse.result);
+                }
+            }
+        });
+    }
+
+    /**
+     * Network dispatcher drops 304 responses for requests with intermediate response delivered. Revalidation result is required
+     * in stale-while-revalidate mode in order to complete request.
+     */
+    @Override
+    public boolean hasHadResponseDelivered() {
+        return !this.staleWhileRevalidate && super.hasHadResponseDelivered();
+    }
+
+    private static RequestFingerprint getBodyDigest(byte[] body) {
+        return new RequestFingerprint.Builder().putBytes(body).build();
+    }
+
+    // Priority handling
+
+    public RequestPriority getRequestPriority() {
+        return requestPriority;
+    }
+
+    /**
+     * @param requestPriority priority lane of the request. Has to be set before request is added to queue.
+     */
+    public void setRequestPriority(@NonNull RequestPriority requestPriority) {
+        this.requestPriority = requestPriority;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return this.requestPriority.volleyPriority;
+    }
+
+    @Override
+    public Request<?> setRequestQueue(RequestQueue requestQueue) {
+        this.enqueueTime = SystemClock.elapsedRealtime();
+        this.requestQueue = requestQueue;
+        // Body is prepared again by network dispatcher, so compression doesn't block the thread request is added on
+        this.invalidatePreparedBody();
+        return super.setRequestQueue(requestQueue);
+    }
+
+    /**
+     * @return time request was added to request queue (as returned by {@link SystemClock#elapsedRealtime()}), 0 if it wasn't added to queue
+     */
+    public long getEnqueueTime() {
+        return enqueueTime;
+    }
+
+    private long getPriorityDeadline() {
+        return this.enqueueTime + this.requestPriority.agingDelay;
+    }
+
+    @Override
+    public int compareTo(Request<ResponseData> other) {
+        if (!(other instanceof BaseRequest)) {
+            return super.compareTo(other);
+        }
+
+        BaseRequest that = (BaseRequest) other;
+        boolean immediate = this.requestPriority == RequestPriority.IMMEDIATE;
+        boolean thatImmediate = that.requestPriority == RequestPriority.IMMEDIATE;
+        if (immediate != thatImmediate) {
+            return immediate ? -1 : 1;
+        }
+
+        long deadline = this.getPriorityDeadline();
+        long thatDeadline = that.getPriorityDeadline();
+        if (deadline != thatDeadline) {
+            return deadline < thatDeadline ? -1 : 1;
+        }
+
+        return this.getSequence() - that.getSequence();
+    }
+
+    /**
+     * Parses and delivers response, received outside of request queue (e.g. as a part of batch response).
+     * Response listener is triggered on calling thread.
+     * @param response response to be parsed. Non-2xx status codes are delivered as errors.
+     * @return request result
+     */
+    public ResponseData deliverNetworkResponse(NetworkResponse response) {
+        return deliverParsedNetworkResponse(parseExternalResponse(response));
+    }
+
+    /**
+     * Parses response, received outside of request queue, without delivering it, so parsing can be done on worker thread.
+     * Result has to be delivered with {@link #deliverParsedNetworkResponse(Response)}.
+     * @param response response to be parsed. Non-2xx status codes are parsed as errors.
+     */
+    public Response<ResponseData> parseExternalResponse(NetworkResponse response) {
+        int statusCode = response.statusCode;
+        if (response.notModified || statusCode == HttpURLConnection.HTTP_NOT_MODIFIED || (statusCode >= HttpURLConnection.HTTP_OK && statusCode < HttpURLConnection.HTTP_MULT_CHOICE)) {
+            Response<ResponseData> parsedResponse;
+            try {
+                parsedResponse = parseNetworkResponse(response);
+            } catch (RuntimeException e) {
+                return parseExternalError(new ParseError(e));
+            }
+
+            if (parsedResponse.isSuccess()) {
+                return parsedResponse;
+            } else {
+                return parseExternalError(parsedResponse.error);
+            }
+        } else if (statusCode == HttpURLConnection.HTTP_UNAUTHORIZED || statusCode == HttpURLConnection.HTTP_FORBIDDEN) {
+            return parseExternalError(new AuthFailureError(response));
+        } else {
+            return parseExternalError(new ServerError(response));
+        }
+    }
+
+    /**
+     * Parses error, received outside of request queue, without delivering it.
+     * @see #parseExternalResponse(NetworkResponse)
+     */
+    public Response<ResponseData> parseExternalError(VolleyError error) {
+        return Response.error(parseNetworkError(error));
+    }
+
+    /**
+     * Delivers result of {@link #parseExternalResponse(NetworkResponse)}. Response listener is triggered on calling thread.
+     * @return request result
+     */
+    public ResponseData deliverParsedNetworkResponse(@NonNull Response<ResponseData> response) {
+        if (response.isSuccess()) {
+            deliverResponse(response.result);
+        } else {
+            deliverError(response.error);
+        }
+        return this.result;
+    }
+
+    /**
+     * Delivers response, which was already parsed (e.g. taken from memory cache). Response listener is triggered on calling thread.
+     * @return request result
+     */
+    public ResponseData deliverParsedResponse(ResponseData response) {
+        this.result = response;
+        deliverResponse(response);
+        return this.result;
+    }
+
+    /**
+     * Delivers failure response, which was created outside of request queue. Response listener is triggered on calling thread.
+     * @return request result
+     */
+    public ResponseData deliverParsedError(@NonNull ResponseData response) {
+        this.result = response;
+        deliverError(response.getError());
+        return this.result;
+    }
+
+    /**
+     * Parses and delivers error, received outside of request queue (e.g. as a part of batch response).
+     * Response listener is triggered on calling thread.
+     * @return request result
+     */
+    public ResponseData deliverNetworkError(VolleyError error) {
+        return deliverParsedNetworkResponse(parseExternalError(error));
+    }
+
+    // Timings handling
+
+    /**
+     * @return request timings, or null if timings collection is disabled (see {@link RequestTimings#setEnabled(boolean)})
+     */
+    public RequestTimings getTimings() {
+        return timings;
+    }
+
+    /**
+     * Volley marks request lifecycle events, so they are used as timing phase boundaries.
+     */
+    @Override
+    public void addMarker(String tag) {
+        super.addMarker(tag);
+        RequestTimings timingsL = this.timings;
+        if (timingsL == null || tag == null) {
+            return;
+        }
+        if ("add-to-queue".equals(tag) || "admission-queued".equals(tag) || "rate-limited".equals(tag) || "login-refresh-wait".equals(tag)) {
+            // Client-side waits are counted as a part of queue wait
+            if (!timingsL.isPhaseStarted(RequestTimings.Phase.QUEUE_WAIT)) {
+                timingsL.startPhase(RequestTimings.Phase.QUEUE_WAIT);
+            }
+        } else if ("cache-queue-take".equals(tag)) {
+            timingsL.finishPhase(RequestTimings.Phase.QUEUE_WAIT);
+            timingsL.startPhase(RequestTimings.Phase.CACHE_LOOKUP);
+        } else if ("cache-miss".equals(tag) || "cache-hit-expired".equals(tag)) {
+            timingsL.finishPhase(RequestTimings.Phase.CACHE_LOOKUP);
+            timingsL.startPhase(RequestTimings.Phase.NETWORK_QUEUE_WAIT);
+        } else if ("cache-hit".equals(tag)) {
+            timingsL.finishPhase(RequestTimings.Phase.CACHE_LOOKUP);
+        } else if ("network-queue-take".equals(tag)) {
+            // Non-cacheable requests are passed to network queue directly
+            timingsL.finishPhase(RequestTimings.Phase.QUEUE_WAIT);
+            timingsL.finishPhase(RequestTimings.Phase.NETWORK_QUEUE_WAIT);
+            timingsL.startPhase(RequestTimings.Phase.NETWORK);
+        } else if ("network-http-complete".equals(tag)) {
+            timingsL.finishPhase(RequestTimings.Phase.NETWORK);
+        } else if ("post-response".equals(tag) || "post-error".equals(tag)) {
+            timingsL.startPhase(RequestTimings.Phase.DELIVERY);
+        }
+    }
+
+    // Latency handling
+
+    private void updateNetworkLatency() {
+        long attemptStartTime = this.networkAttemptStartTime;
+        this.networkAttemptStartTime = 0;
+        this.networkLatency = attemptStartTime > 0 ? SystemClock.elapsedRealtime() - attemptStartTime : -1;
+    }
+
+    /**
+     * @return duration of the last network attempt in milliseconds, or -1 if response wasn't received from network (e.g. cache hit).
+     */
+    public long getNetworkLatency() {
+        return networkLatency;
+    }
+
+    /**
+     * @return factory of the request retry policy, provided by {@link RequestConfig}, can be null.
+     */
+    public RetryPolicyFactory getRetryPolicyFactory() {
+        return retryPolicyFactory;
+    }
+
+    public void setRetryPolicyFactory(RetryPolicyFactory retryPolicyFactory) {
+        this.retryPolicyFactory = retryPolicyFactory;
+    }
+
     public static interface OnResponseListener {
 
         void onResponseReceived(ResponseData data, BaseRequest request);
@@ -222,11 +745,17 @@ public class BaseRequest extends Request<ResponseData> {
 
     @Override
     public Map<String, String> getHeaders() throws AuthFailureError {
+        // Headers are requested by http stack right before every network attempt
+        this.networkAttemptStartTime = SystemClock.elapsedRealtime();
         Map<String, String> result = new HashMap<String, String>();
         result.putAll(super.getHeaders());
         if (this.requestHeaders != null) {
             result.putAll(this.requestHeaders);
         }
+        this.prepareBody();
+        if (this.bodyCompressed) {
+            result.put(CONTENT_ENCODING_HEADER_KEY, BODY_CONTENT_ENCODING);
+        }
         return result;
     }
 
@@ -236,14 +765,17 @@ public class BaseRequest extends Request<ResponseData> {
 
     public void setRequestHeaders(Map<String, String> requestHeaders) {
         this.requestHeaders = requestHeaders;
+        this.fingerprint = null;
     }
 
     public void addRequestHeaders(Map<String, String> theRequestHeaders) {
         this.requestHeaders.putAll(theRequestHeaders);
+        this.fingerprint = null;
     }
 
     public void addRequestHeader(String key, String value) {
         this.requestHeaders.put(key, value);
+        this.fingerprint = null;
     }
 
     public void addRequestHeader(Header header)
@@ -268,6 +800,8 @@ public class BaseRequest extends Request<ResponseData> {
 
     public void setPostParameters(Map<String, String> postParameters) {
         this.postParameters = postParameters;
+        this.fingerprint = null;
+        this.invalidatePreparedBody();
     }
 
     public void addPostParameters(Map<String, String> postParameters) {
@@ -276,9 +810,13 @@ public class BaseRequest extends Request<ResponseData> {
         } else {
             this.postParameters.putAll(postParameters);
         }
+        this.fingerprint = null;
+        this.invalidatePreparedBody();
     }
 
     public void addPostParameter(String key, String value) {
+        this.fingerprint = null;
+        this.invalidatePreparedBody();
         if (this.postParameters == null) {
             this.postParameters = new HashMap<String, String>();
         }
@@ -294,19 +832,36 @@ public class BaseRequest extends Request<ResponseData> {
     @SuppressWarnings("null")
     @Override
     public byte[] getBody() throws AuthFailureError {
-        if (this.objectToPost != null && this.postParameters == null) {
-
-            try {
-                return requestHandler.getBody(this.defaultCharset);
-            } catch (UnsupportedEncodingException e) {
-                e.printStackTrace();
-                return new byte[0];
+        byte[] body;
+        synchronized (this.bodyLock) {
+            this.prepareBody();
+            if (this.bodyCompressed) {
+                body = this.compressedBody;
+            } else if (this.bodyPrepared) {
+                body = this.preparedBody;
+            } else {
+                body = getPlainBody();
             }
+        }
+        this.requestBodySize = body != null ? body.length : 0;
+        return body;
+    }
+
+    private byte[] getPlainBody() throws AuthFailureError {
+        if (this.objectToPost != null && this.postParameters == null) {
+            return getSerializedBody();
         } else {
             return super.getBody();
         }
     }
 
+    /**
+     * @return size of request body in bytes, sent during last network attempt, 0 if request wasn't sent or has no body
+     */
+    public int getRequestBodySize() {
+        return requestBodySize;
+    }
+
     @SuppressWarnings("null")
     @Override
     public String getBodyContentType() {
@@ -325,6 +880,141 @@ public class BaseRequest extends Request<ResponseData> {
     public void setObjectToPost(Object objectToPost) {
         this.objectToPost = objectToPost;
         this.requestHandler.setObject(this.objectToPost);
+        this.serializedBody = null;
+        this.fingerprint = null;
+        this.invalidatePreparedBody();
+    }
+
+    /**
+     * Object is serialized once and cached: body is reused for fingerprint calculation and every request attempt.
+     */
+    private byte[] getSerializedBody() {
+        if (this.serializedBody == null) {
+            try {
+                this.serializedBody = requestHandler.getBody(this.defaultCharset);
+            } catch (UnsupportedEncodingException e) {
+                e.printStackTrace();
+                return new byte[0];
+            }
+        }
+        return this.serializedBody;
+    }
+
+    // Body compression handling
+
+    public int getBodyCompressionThreshold() {
+        return bodyCompressionThreshold;
+    }
+
+    /**
+     * @param bodyCompressionThreshold minimal request body size in bytes, body is sent gzip-compressed from, -1 disables compression.
+     */
+    public void setBodyCompressionThreshold(int bodyCompressionThreshold) {
+        this.bodyCompressionThreshold = bodyCompressionThreshold;
+    }
+
+    /**
+     * @return true if request body is sent compressed, decided on the first network attempt after request is added to queue
+     */
+    public boolean isBodyCompressed() {
+        return bodyCompressed;
+    }
+
+    /**
+     * Plain body is captured and compression is decided once, on the first access of http stack to headers or body
+     * (on network dispatcher thread), so every network attempt sends the same bytes and headers regardless of the order
+     * http stack reads them in. Body of request, which isn't added to queue, is never compressed.
+     */
+    private void prepareBody() {
+        synchronized (this.bodyLock) {
+            if (this.bodyPrepared || this.requestQueue == null) {
+                return;
+            }
+            byte[] body;
+            try {
+                body = getPlainBody();
+            } catch (AuthFailureError e) {
+                // Body will be requested again by http stack, so error is reported as usual
+                return;
+            }
+            this.preparedBody = body;
+            this.bodyPrepared = true;
+
+            int threshold = this.bodyCompressionThreshold;
+            if (threshold < 0 || body == null || body.length == 0 || body.length < threshold
+                    || hostsRejectingBodyCompression.contains(getHost())) {
+                return;
+            }
+            byte[] compressed = compressBody(body);
+            if (compressed != null && compressed.length < body.length) {
+                this.compressedBody = compressed;
+                this.bodyCompressed = true;
+            }
+        }
+    }
+
+    /**
+     * Body, changed after it was prepared, is prepared again on the next access
+     */
+    private void invalidatePreparedBody() {
+        synchronized (this.bodyLock) {
+            this.bodyPrepared = false;
+            this.bodyCompressed = false;
+            this.preparedBody = null;
+            this.compressedBody = null;
+        }
+    }
+
+    private static byte[] compressBody(byte[] body) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream(body.length / 2 + 32);
+        try {
+            GZIPOutputStream gzipStream = new GZIPOutputStream(stream);
+            gzipStream.write(body);
+            gzipStream.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        return stream.toByteArray();
+    }
+
+    /**
+     * Server rejected compressed body: host is remembered and request is performed again with plain body.
+     *
+     * @return true if request was added to queue again, so error shouldn't be delivered
+     */
+    private boolean retryWithPlainBody(VolleyError error) {
+        if (!this.bodyCompressed || error == null || error.networkResponse == null
+                || error.networkResponse.statusCode != HTTP_UNSUPPORTED_MEDIA_TYPE) {
+            return false;
+        }
+        final RequestQueue queue = this.requestQueue;
+        if (queue == null || isCanceled()) {
+            return false;
+        }
+
+        String host = getHost();
+        if (host != null) {
+            hostsRejectingBodyCompression.add(host);
+        }
+        this.bodyCompressionThreshold = -1;
+        this.bodyCompressed = false;
+        addMarker("body-compression-rejected");
+        // Volley finishes request after delivery, so it can be added to queue again after that only
+        new android.os.Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                if (!isCanceled()) {
+                    queue.add(BaseRequest.this);
+                }
+            }
+        });
+        return true;
+    }
+
+    private String getHost() {
+        String url = getUrl();
+        return url != null ? Uri.parse(url).getHost() : null;
     }
 
     // Get parameters handling
@@ -370,6 +1060,7 @@ public class BaseRequest extends Request<ResponseData> {
 
     public void setGetParameters(Map<String, Object> getParameters) {
         this.getParameters = getParameters;
+        this.fingerprint = null;
     }
     /**
      * @param getParameters in case if collection is passed as map entry value - all entities will be added under corresponding key. Object.toString will be called otherwise.
@@ -380,6 +1071,7 @@ public class BaseRequest extends Request<ResponseData> {
         } else {
             this.getParameters.putAll(getParameters);
         }
+        this.fingerprint = null;
     }
 
     /**
@@ -387,6 +1079,7 @@ public class BaseRequest extends Request<ResponseData> {
      * @param value in case if collection passed - all entities will be added under key specified. Object.toString will be called otherwise.
      */
     public void addGetParameter(String key, Object value) {
+        this.fingerprint = null;
         if (this.getParameters == null) {
             this.getParameters = new HashMap<String, Object>();
         }
@@ -406,6 +1099,9 @@ public class BaseRequest extends Request<ResponseData> {
      */
     public void setDefaultCharset(String defaultCharset) {
         this.defaultCharset = defaultCharset;
+        this.serializedBody = null;
+        this.fingerprint = null;
+        this.invalidatePreparedBody();
     }
 
     /**
@@ -429,6 +1125,45 @@ public class BaseRequest extends Request<ResponseData> {
     }
 
 
+    /**
+     * @return independent copy of the request with the same URL, parameters, headers, body, formats, priority and tag.
+     * Copy isn't cached and doesn't use smart comparison, so volley never merges it with original request.
+     * Response listener and retry policy aren't copied.
+     */
+    public BaseRequest createDuplicate() {
+        RequestConfig config = new RequestConfig(this.responseClasSpecifier, this.requestFormat, this.responseFormat);
+        config.setErrorResponseClassSpecifier(this.errorResponseClasSpecifier);
+        config.setPriority(this.requestPriority);
+        config.setRetryPolicyFactory(this.retryPolicyFactory);
+        config.setValidators(this.eTagValidator, this.lastModifiedValidator);
+        config.setStaleWhileRevalidate(this.staleWhileRevalidate);
+
+        BaseRequest duplicate = new BaseRequest(getRequestMethod(getMethod()), getUnparameterizedURL(), config);
+        duplicate.setDefaultCharset(this.defaultCharset);
+        duplicate.setRequestHeaders(new HashMap<String, String>(this.requestHeaders));
+        if (this.getParameters != null) {
+            duplicate.setGetParameters(new HashMap<String, Object>(this.getParameters));
+        }
+        if (this.postParameters != null) {
+            duplicate.setPostParameters(new HashMap<String, String>(this.postParameters));
+        }
+        if (this.objectToPost != null) {
+            duplicate.setObjectToPost(this.objectToPost);
+        }
+        duplicate.setTag(getTag());
+        duplicate.setShouldCache(false);
+        return duplicate;
+    }
+
+    private static RequestMethod getRequestMethod(int methodCode) {
+        for (RequestMethod method : RequestMethod.values()) {
+            if (method.methodCode == methodCode) {
+                return method;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported method: " + methodCode);
+    }
+
     private String getUnparameterizedURL() {
         return super.getUrl();
     }
@@ -437,6 +1172,7 @@ public class BaseRequest extends Request<ResponseData> {
     public String toString() {
         return "BaseRequest{" +
                 "requestFormat=" + requestFormat +
+                ", requestPriority=" + requestPriority +
                 ", responseClasSpecifier=" + responseClasSpecifier +
                 ", defaultCharset='" + defaultCharset + '\'' +
                 ", responseListener=" + responseListener +
@@ -447,57 +1183,100 @@ public class BaseRequest extends Request<ResponseData> {
                 "} " + super.toString();
     }
 
-    @Override
-    public boolean equals(Object o) {
-
-        if(!isSmartComparisonEnabled())
-        {
-            return super.equals(o);
+    /**
+     * @return fingerprint, covering request method, URL, sorted parameters, headers and serialized body content.
+     * Fingerprint is calculated once and reused until request parameters are changed.
+     */
+    public RequestFingerprint getFingerprint() {
+        RequestFingerprint result = this.fingerprint;
+        if (result == null) {
+            result = calculateFingerprint();
+            this.fingerprint = result;
         }
+        return result;
+    }
 
-        if (this == o) {
-            return true;
-        }
-        if (!(o instanceof BaseRequest)) {
-            return false;
+    private RequestFingerprint calculateFingerprint() {
+        RequestFingerprint.Builder builder = new RequestFingerprint.Builder();
+        builder.putInt(getMethod());
+        builder.putString(getUnparameterizedURL());
+        builder.putString(requestFormat.name());
+        builder.putString(responseFormat.name());
+        builder.putString(responseClasSpecifier != null ? responseClasSpecifier.toString() : null);
+        builder.putString(defaultCharset);
+
+        if (getParameters != null && !getParameters.isEmpty()) {
+            // Empty parameters map gives the same URL as no map at all
+            Map<String, Object> sortedParameters = new TreeMap<String, Object>(getParameters);
+            builder.putInt(sortedParameters.size());
+            for (Map.Entry<String, Object> entry : sortedParameters.entrySet()) {
+                builder.putString(entry.getKey());
+                Object entryValue = entry.getValue();
+                if (entryValue instanceof Collection) {
+                    Collection<?> items = (Collection<?>) entryValue;
+                    builder.putInt(items.size());
+                    for (Object item : items) {
+                        builder.putString(item != null ? item.toString() : null);
+                    }
+                } else {
+                    builder.putString(entryValue != null ? entryValue.toString() : null);
+                }
+            }
+        } else {
+            builder.putInt(-1);
         }
 
-        BaseRequest that = (BaseRequest) o;
-
-        String url = getUnparameterizedURL();
-        String otherUrl = that.getUnparameterizedURL();
+        putSortedStringMap(builder, postParameters, false);
+        putSortedStringMap(builder, requestHeaders, true);
 
-        if (url != null ? !url.equals(otherUrl) : otherUrl != null) {
-            return false;
+        if (objectToPost != null && postParameters == null) {
+            builder.putBytes(getSerializedBody());
+        } else {
+            builder.putInt(-1);
         }
 
-        if (getParameters != null ? !getParameters.equals(that.getParameters) : that.getParameters != null) {
-            return false;
-        }
-        if (objectToPost != null ? !objectToPost.equals(that.objectToPost) : that.objectToPost != null) {
-            return false;
-        }
-        if (postParameters != null ? !postParameters.equals(that.postParameters) : that.postParameters != null) {
-            return false;
+        return builder.build();
+    }
+
+    private static void putSortedStringMap(RequestFingerprint.Builder builder, Map<String, String> map, boolean caseInsensitiveKeys) {
+        if (map == null) {
+            builder.putInt(-1);
+            return;
         }
-        if (requestHeaders != null ? !requestHeaders.equals(that.requestHeaders) : that.requestHeaders != null) {
-            return false;
+
+        Map<String, String> sortedMap = new TreeMap<String, String>();
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            String key = entry.getKey();
+            if (caseInsensitiveKeys && key != null) {
+                key = key.toLowerCase(Locale.US);
+            }
+            sortedMap.put(key, entry.getValue());
         }
-        if (responseClasSpecifier != null ? !responseClasSpecifier.equals(that.responseClasSpecifier) : that.responseClasSpecifier != null) {
-            return false;
+
+        builder.putInt(sortedMap.size());
+        for (Map.Entry<String, String> entry : sortedMap.entrySet()) {
+            builder.putString(entry.getKey());
+            builder.putString(entry.getValue());
         }
+    }
 
-        if (defaultCharset != null ? !defaultCharset.equals(that.defaultCharset) : that.defaultCharset != null) {
-            return false;
+    @Override
+    public boolean equals(Object o) {
+
+        if(!isSmartComparisonEnabled())
+        {
+            return super.equals(o);
         }
-        if (requestFormat != that.requestFormat) {
-            return false;
+
+        if (this == o) {
+            return true;
         }
-        if (responseFormat != that.responseFormat) {
+        if (!(o instanceof BaseRequest)) {
             return false;
         }
 
-        return true;
+        BaseRequest that = (BaseRequest) o;
+        return getFingerprint().equals(that.getFingerprint());
     }
 
     @Override
@@ -508,16 +1287,7 @@ public class BaseRequest extends Request<ResponseData> {
             return super.hashCode();
         }
 
-        int result = requestFormat != null ? requestFormat.hashCode() : 0;
-        result = 31 * result + (responseFormat != null ? responseFormat.hashCode() : 0);
-        result = 31 * result + (responseClasSpecifier != null ? responseClasSpecifier.hashCode() : 0);
-        result = 31 * result + (defaultCharset != null ? defaultCharset.hashCode() : 0);
-        result = 31 * result + (requestHeaders != null ? requestHeaders.hashCode() : 0);
-        result = 31 * result + (postParameters != null ? postParameters.hashCode() : 0);
-        result = 31 * result + (getParameters != null ? getParameters.hashCode() : 0);
-        result = 31 * result + (objectToPost != null ? objectToPost.hashCode() : 0);
-        result = 31 * result + (getUnparameterizedURL() != null ? getUnparameterizedURL().hashCode() : 0);
-        return result;
+        return getFingerprint().hashCode();
     }
 
     private static RequestFuture<ResponseData> getRequestLock() {
@@ -23,6 +23,7 @@
 package com.ls.http.base;
 
 import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
 import com.android.volley.Response;
 import com.android.volley.toolbox.HttpHeaderParser;
 import com.ls.http.base.ResponseData;
@@ -31,6 +32,10 @@ import com.ls.http.base.ResponseHandler;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Type;
 import java.util.HashMap;
@@ -58,9 +63,33 @@ public abstract class BaseStringResponseHandler extends ResponseHandler
 		return result;
 	}
 
+    /**
+     * Deserializes item from decoded response body stream, used for compressed responses. Default implementation reads
+     * body to string and calls {@link #itemFromResponseWithSpecifier(String, Object)}, handlers, able to parse streams, should override it.
+     */
+    protected Object itemFromResponseStream(@NonNull Reader response, @NonNull Object theSpecifier) throws IOException
+    {
+        String responseStr = readString(response);
+        if (TextUtils.isEmpty(responseStr)) {
+            return null;
+        }
+        return itemFromResponseWithSpecifier(responseStr, theSpecifier);
+    }
+
     protected Response<ResponseData> parseNetworkResponse(NetworkResponse response,Object responseClassSpecifier)
     {
+        if (isBodyEncoded(response)) {
+            return parseEncodedNetworkResponse(response, responseClassSpecifier);
+        }
+
+        RequestTimings timingsL = this.timings;
+        if (timingsL != null) {
+            timingsL.startPhase(RequestTimings.Phase.DECODING);
+        }
         String resultStr = parseResponseString(response);
+        if (timingsL != null) {
+            timingsL.finishPhase(RequestTimings.Phase.DECODING);
+        }
         ResponseData responseData = new ResponseData();
 
         responseData.statusCode = response.statusCode;
@@ -68,7 +97,16 @@ public abstract class BaseStringResponseHandler extends ResponseHandler
 
         if(!TextUtils.isEmpty(resultStr))
         {
-            responseData.data = this.itemFromResponseWithSpecifier(resultStr, responseClassSpecifier);
+            if (timingsL != null) {
+                timingsL.startPhase(RequestTimings.Phase.DESERIALIZATION);
+            }
+            try {
+                responseData.data = this.itemFromResponseWithSpecifier(resultStr, responseClassSpecifier);
+            } finally {
+                if (timingsL != null) {
+                    timingsL.finishPhase(RequestTimings.Phase.DESERIALIZATION);
+                }
+            }
         }
 
         Response<ResponseData> result = Response.success(responseData, HttpHeaderParser.parseCacheHeaders(response));
@@ -78,9 +116,82 @@ public abstract class BaseStringResponseHandler extends ResponseHandler
         return result;
     };
 
+    /**
+     * Compressed body is inflated and decoded as a stream, straight into deserializer, so neither inflated bytes nor
+     * response string are kept in memory. Decoding time is reported as a part of deserialization in this case.
+     */
+    private Response<ResponseData> parseEncodedNetworkResponse(NetworkResponse response, Object responseClassSpecifier)
+    {
+        ResponseData responseData = new ResponseData();
+        responseData.statusCode = response.statusCode;
+        responseData.headers = new HashMap<String, String>(response.headers);
+
+        if (responseClassSpecifier != null) {
+            RequestTimings timingsL = this.timings;
+            if (timingsL != null) {
+                timingsL.startPhase(RequestTimings.Phase.DESERIALIZATION);
+            }
+            Reader reader = null;
+            try {
+                reader = openResponseReader(response);
+                responseData.data = this.itemFromResponseStream(reader, responseClassSpecifier);
+            } catch (IOException e) {
+                return Response.error(new ParseError(e));
+            } finally {
+                closeQuietly(reader);
+                if (timingsL != null) {
+                    timingsL.finishPhase(RequestTimings.Phase.DESERIALIZATION);
+                }
+            }
+        }
+
+        Response<ResponseData> result = Response.success(responseData, HttpHeaderParser.parseCacheHeaders(response));
+        responseData.error = result.error;
+        return result;
+    }
+
+    private static Reader openResponseReader(NetworkResponse response) throws IOException {
+        InputStream stream = openBodyStream(response);
+        try {
+            return new InputStreamReader(stream, HttpHeaderParser.parseCharset(response.headers));
+        } catch (UnsupportedEncodingException e) {
+            return new InputStreamReader(stream);
+        }
+    }
+
+    private static String readString(Reader reader) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = new char[2048];
+        int count;
+        while ((count = reader.read(buffer)) != -1) {
+            builder.append(buffer, 0, count);
+        }
+        return builder.toString();
+    }
+
+    private static void closeQuietly(Reader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     protected String parseResponseString(NetworkResponse response) {
         String parsed = null;
-        if(response.data != null) {
+        if (isBodyEncoded(response)) {
+            Reader reader = null;
+            try {
+                reader = openResponseReader(response);
+                parsed = readString(reader);
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                closeQuietly(reader);
+            }
+        } else if(response.data != null) {
             try {
                 parsed = new String(response.data, HttpHeaderParser.parseCharset(response.headers));
             } catch (UnsupportedEncodingException e) {
@@ -0,0 +1,203 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.http.base;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Collects request latency statistics per endpoint path template. Numeric and UUID-like path segments are
+ * replaced by placeholder, so "node/1" and "node/2" share statistics.
+ * Every endpoint keeps smoothed average and a window of recent samples for percentile estimation.
+ */
+public class LatencyTracker {
+
+    private static final int DEFAULT_WINDOW_SIZE = 128;
+    private static final double SMOOTHING_FACTOR = 0.125;
+    private static final String ID_PLACEHOLDER = "{id}";
+
+    private final ConcurrentMap<String, EndpointStats> endpoints;
+    private final int windowSize;
+
+    public LatencyTracker() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize number of recent samples used for percentile estimation, per endpoint
+     */
+    public LatencyTracker(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size has to be positive: " + windowSize);
+        }
+        this.windowSize = windowSize;
+        this.endpoints = new ConcurrentHashMap<String, EndpointStats>();
+    }
+
+    /**
+     * @param url       request URL, query is ignored
+     * @param latencyMs observed latency of successful request, failed attempts shouldn't be recorded
+     */
+    public void record(@NonNull String url, long latencyMs) {
+        if (latencyMs < 0) {
+            return;
+        }
+        getStats(getPathTemplate(url), true).record(latencyMs);
+    }
+
+    /**
+     * @param url        request URL, query is ignored
+     * @param percentile value in range (0..1]
+     * @param minSamples minimal number of samples required for estimation
+     * @return latency percentile estimation in milliseconds or -1 if there are not enough samples
+     */
+    public long getPercentile(@NonNull String url, double percentile, int minSamples) {
+        EndpointStats stats = getStats(getPathTemplate(url), false);
+        if (stats == null) {
+            return -1;
+        }
+        return stats.getPercentile(percentile, minSamples);
+    }
+
+    /**
+     * @return smoothed average latency in milliseconds or -1 if there are no samples
+     */
+    public long getAverage(@NonNull String url) {
+        EndpointStats stats = getStats(getPathTemplate(url), false);
+        if (stats == null) {
+            return -1;
+        }
+        return stats.getAverage();
+    }
+
+    public void reset() {
+        endpoints.clear();
+    }
+
+    private EndpointStats getStats(String template, boolean create) {
+        EndpointStats stats = endpoints.get(template);
+        if (stats == null && create) {
+            EndpointStats newStats = new EndpointStats(windowSize);
+            stats = endpoints.putIfAbsent(template, newStats);
+            if (stats == null) {
+                stats = newStats;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * @return URL without query and fragment, with numeric and UUID-like path segments replaced by placeholder
+     */
+    public static String getPathTemplate(@NonNull String url) {
+        int queryStart = url.indexOf('?');
+        if (queryStart < 0) {
+            queryStart = url.indexOf('#');
+        }
+        if (queryStart >= 0) {
+            url = url.substring(0, queryStart);
+        }
+
+        String[] segments = url.split("/", -1);
+        StringBuilder builder = new StringBuilder(url.length());
+        for (int counter = 0; counter < segments.length; counter++) {
+            if (counter > 0) {
+                builder.append('/');
+            }
+            String segment = segments[counter];
+            if (isIdentifierSegment(segment)) {
+                builder.append(ID_PLACEHOLDER);
+            } else {
+                builder.append(segment);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static boolean isIdentifierSegment(String segment) {
+        if (segment.length() == 0) {
+            return false;
+        }
+
+        boolean allDigits = true;
+        boolean hexOrDash = true;
+        int digitCount = 0;
+        for (int counter = 0; counter < segment.length(); counter++) {
+            char character = segment.charAt(counter);
+            boolean digit = character >= '0' && character <= '9';
+            if (digit) {
+                digitCount++;
+            } else {
+                allDigits = false;
+            }
+            if (!digit && character != '-' && !(character >= 'a' && character <= 'f') && !(character >= 'A' && character <= 'F')) {
+                hexOrDash = false;
+            }
+        }
+        return allDigits || (hexOrDash && segment.length() >= 16 && digitCount > 0);
+    }
+
+    private static class EndpointStats {
+        private final long[] window;
+        private int position;
+        private int sampleCount;
+        private double average = -1;
+
+        EndpointStats(int windowSize) {
+            this.window = new long[windowSize];
+        }
+
+        synchronized void record(long latencyMs) {
+            window[position] = latencyMs;
+            position = (position + 1) % window.length;
+            sampleCount++;
+            if (average < 0) {
+                average = latencyMs;
+            } else {
+                average += SMOOTHING_FACTOR * (latencyMs - average);
+            }
+        }
+
+        synchronized long getAverage() {
+            return (long) average;
+        }
+
+        long getPercentile(double percentile, int minSamples) {
+            long[] samples;
+            synchronized (this) {
+                int count = Math.min(sampleCount, window.length);
+                if (count == 0 || count < minSamples) {
+                    return -1;
+                }
+                samples = Arrays.copyOf(window, count);
+            }
+            Arrays.sort(samples);
+            int index = (int) Math.ceil(percentile * samples.length) - 1;
+            index = Math.max(0, Math.min(samples.length - 1, index));
+            return samples[index];
+        }
+    }
+}
@@ -30,6 +30,12 @@ public class RequestConfig {
     private BaseRequest.ResponseFormat responseFormat;
     private Object responseClassSpecifier;
     private Object errorResponseClassSpecifier;
+    private BaseRequest.RequestPriority priority;
+    private RetryPolicyFactory retryPolicyFactory;
+    private String eTagValidator;
+    private String lastModifiedValidator;
+    private boolean staleWhileRevalidate;
+    private int bodyCompressionThreshold = -1;
 
     public RequestConfig()
     {
@@ -85,4 +91,75 @@ public class RequestConfig {
     public void setErrorResponseClassSpecifier(Object errorResponseClassSpecifier) {
         this.errorResponseClassSpecifier = errorResponseClassSpecifier;
     }
+
+    /**
+     * @return priority lane of the request, NORMAL is used if null.
+     */
+    public BaseRequest.RequestPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * @param priority priority lane of the request, NORMAL is used if null.
+     */
+    public void setPriority(BaseRequest.RequestPriority priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * @return factory of the request retry policy, client default is used if null.
+     */
+    public RetryPolicyFactory getRetryPolicyFactory() {
+        return retryPolicyFactory;
+    }
+
+    /**
+     * @param retryPolicyFactory factory of the request retry policy, client default is used if null.
+     */
+    public void setRetryPolicyFactory(RetryPolicyFactory retryPolicyFactory) {
+        this.retryPolicyFactory = retryPolicyFactory;
+    }
+
+    public String getETagValidator() {
+        return eTagValidator;
+    }
+
+    public String getLastModifiedValidator() {
+        return lastModifiedValidator;
+    }
+
+    /**
+     * Makes request conditional: "If-None-Match" and "If-Modified-Since" headers are sent and response is reported as not modified
+     * without parsing if server representation matches validators.
+     * @param eTagValidator         ETag of the representation client has, can be null
+     * @param lastModifiedValidator Last-Modified date of the representation client has, can be null
+     */
+    public void setValidators(String eTagValidator, String lastModifiedValidator) {
+        this.eTagValidator = eTagValidator;
+        this.lastModifiedValidator = lastModifiedValidator;
+    }
+
+    public boolean isStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+
+    /**
+     * @param staleWhileRevalidate if true cached response is delivered immediately, even if it's expired, marked as stale.
+     *                             Request is revalidated with server then, and actual response is delivered only if it differs from cached one.
+     */
+    public void setStaleWhileRevalidate(boolean staleWhileRevalidate) {
+        this.staleWhileRevalidate = staleWhileRevalidate;
+    }
+
+    public int getBodyCompressionThreshold() {
+        return bodyCompressionThreshold;
+    }
+
+    /**
+     * @param bodyCompressionThreshold minimal request body size in bytes, body is sent gzip-compressed from, -1 disables compression (default).
+     *                                 Hosts, responding with 415 (Unsupported Media Type) to compressed body, receive plain bodies afterwards.
+     */
+    public void setBodyCompressionThreshold(int bodyCompressionThreshold) {
+        this.bodyCompressionThreshold = bodyCompressionThreshold;
+    }
 }
@@ -0,0 +1,140 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.http.base;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Immutable 128-bit request fingerprint, used in order to detect duplicate requests.
+ * Two requests with the same method, URL, parameters, headers and body content have equal fingerprints.
+ */
+public final class RequestFingerprint {
+
+    private static final String DIGEST_ALGORITHM = "MD5";
+    private static final String STRING_ENCODING = "UTF-8";
+
+    private final long mostSignificantBits;
+    private final long leastSignificantBits;
+
+    private RequestFingerprint(long mostSignificantBits, long leastSignificantBits) {
+        this.mostSignificantBits = mostSignificantBits;
+        this.leastSignificantBits = leastSignificantBits;
+    }
+
+    public long getMostSignificantBits() {
+        return mostSignificantBits;
+    }
+
+    public long getLeastSignificantBits() {
+        return leastSignificantBits;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RequestFingerprint)) {
+            return false;
+        }
+        RequestFingerprint that = (RequestFingerprint) o;
+        return mostSignificantBits == that.mostSignificantBits && leastSignificantBits == that.leastSignificantBits;
+    }
+
+    @Override
+    public int hashCode() {
+        long hash = mostSignificantBits ^ leastSignificantBits;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return toHex(mostSignificantBits) + toHex(leastSignificantBits);
+    }
+
+    private static String toHex(long value) {
+        String hex = Long.toHexString(value);
+        StringBuilder builder = new StringBuilder(16);
+        for (int counter = hex.length(); counter < 16; counter++) {
+            builder.append('0');
+        }
+        return builder.append(hex).toString();
+    }
+
+    /**
+     * Accumulates request components. Every component is length-prefixed, so different component sequences
+     * can't produce the same digest input.
+     */
+    static class Builder {
+        private final MessageDigest digest;
+
+        Builder() {
+            try {
+                this.digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(DIGEST_ALGORITHM + " digest isn't supported", e);
+            }
+        }
+
+        Builder putInt(int value) {
+            digest.update((byte) (value >>> 24));
+            digest.update((byte) (value >>> 16));
+            digest.update((byte) (value >>> 8));
+            digest.update((byte) value);
+            return this;
+        }
+
+        Builder putString(String value) {
+            if (value == null) {
+                return putInt(-1);
+            }
+            try {
+                return putBytes(value.getBytes(STRING_ENCODING));
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        Builder putBytes(byte[] value) {
+            if (value == null) {
+                return putInt(-1);
+            }
+            putInt(value.length);
+            digest.update(value);
+            return this;
+        }
+
+        RequestFingerprint build() {
+            byte[] hash = digest.digest();
+            long most = 0;
+            long least = 0;
+            for (int counter = 0; counter < 8; counter++) {
+                most = (most << 8) | (hash[counter] & 0xff);
+                least = (least << 8) | (hash[counter + 8] & 0xff);
+            }
+            return new RequestFingerprint(most, least);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.http.base;
+
+import android.os.Build;
+import android.os.Trace;
+import android.support.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * Per-request timing breakdown, attached to {@link ResponseData}. Timings are collected only if enabled with
+ * {@link #setEnabled(boolean)}, otherwise no timing objects are created and {@link ResponseData#getTimings()} returns null.
+ * Phases, performed within single thread are additionally emitted as systrace sections if {@link #setTraceEnabled(boolean)}
+ * is on (API 18+).
+ * Note: volley http stack doesn't report connection setup and first byte times, so network phase covers whole
+ * network exchange, including retries.
+ */
+public class RequestTimings {
+
+    public static enum Phase {
+        /**
+         * Time from adding request to the queue till it's taken by cache or network dispatcher
+         */
+        QUEUE_WAIT(false),
+        /**
+         * Disk cache lookup
+         */
+        CACHE_LOOKUP(false),
+        /**
+         * Time request waits for network dispatcher after cache miss
+         */
+        NETWORK_QUEUE_WAIT(false),
+        /**
+         * Network exchange, including retries
+         */
+        NETWORK(false),
+        /**
+         * Response body decoding to string
+         */
+        DECODING(true),
+        /**
+         * Response deserialization to object
+         */
+        DESERIALIZATION(true),
+        /**
+         * Time parsed response waits for main thread
+         */
+        DELIVERY(false),
+        /**
+         * Response consumption by entity (see {@link com.ls.drupal.AbstractBaseDrupalEntity})
+         */
+        CONSUMPTION(true);
+
+        final private boolean traceable;
+        final private String sectionName;
+
+        Phase(boolean traceable) {
+            this.traceable = traceable;
+            this.sectionName = "DrupalSDK:" + name().toLowerCase(Locale.US);
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private static volatile boolean enabled = false;
+    private static volatile boolean traceEnabled = false;
+
+    private final long[] startTimes = new long[PHASES.length];
+    private final long[] durations = new long[PHASES.length];
+
+    RequestTimings() {
+        for (int i = 0; i < durations.length; i++) {
+            durations[i] = -1;
+        }
+    }
+
+    /**
+     * @param enabled true to collect timings for requests, created after this call
+     */
+    public static void setEnabled(boolean enabled) {
+        RequestTimings.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param traceEnabled true to emit {@link android.os.Trace} sections for single-thread phases. Has no effect if
+     *                     timings aren't enabled or on devices prior to API 18.
+     */
+    public static void setTraceEnabled(boolean traceEnabled) {
+        RequestTimings.traceEnabled = traceEnabled;
+    }
+
+    public static boolean isTraceEnabled() {
+        return traceEnabled;
+    }
+
+    static RequestTimings createIfEnabled() {
+        return enabled ? new RequestTimings() : null;
+    }
+
+    /**
+     * Marks phase start. Phase durations are accumulated, so phase can be started several times.
+     * Note: {@link #finishPhase(Phase)} has to be called from the same thread for traceable phases.
+     */
+    public synchronized void startPhase(@NonNull Phase phase) {
+        startTimes[phase.ordinal()] = System.nanoTime();
+        if (phase.traceable && isTraceAvailable()) {
+            Trace.beginSection(phase.sectionName);
+        }
+    }
+
+    /**
+     * Marks phase finish, call is ignored if phase wasn't started.
+     */
+    public synchronized void finishPhase(@NonNull Phase phase) {
+        int index = phase.ordinal();
+        long startTime = startTimes[index];
+        if (startTime == 0) {
+            return;
+        }
+        startTimes[index] = 0;
+        long duration = System.nanoTime() - startTime;
+        durations[index] = durations[index] < 0 ? duration : durations[index] + duration;
+        if (phase.traceable && isTraceAvailable()) {
+            Trace.endSection();
+        }
+    }
+
+    synchronized boolean isPhaseStarted(Phase phase) {
+        return startTimes[phase.ordinal()] != 0;
+    }
+
+    private static boolean isTraceAvailable() {
+        return traceEnabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    }
+
+    /**
+     * @return phase duration in nanoseconds, or -1 if phase wasn't performed (e.g. network phase for cache hit)
+     */
+    public synchronized long getDurationNanos(@NonNull Phase phase) {
+        return durations[phase.ordinal()];
+    }
+
+    /**
+     * @return phase duration in milliseconds, or -1 if phase wasn't performed
+     */
+    public long getDurationMillis(@NonNull Phase phase) {
+        long duration = getDurationNanos(phase);
+        return duration < 0 ? -1 : duration / 1000000;
+    }
+
+    /**
+     * @return sum of all performed phase durations in nanoseconds
+     */
+    public synchronized long getTotalDurationNanos() {
+        long total = 0;
+        for (long duration : durations) {
+            if (duration > 0) {
+                total += duration;
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder("RequestTimings{");
+        boolean first = true;
+        for (Phase phase : PHASES) {
+            long duration = durations[phase.ordinal()];
+            if (duration < 0) {
+                continue;
+            }
+            if (!first) {
+                builder.append(", ");
+            }
+            first = false;
+            builder.append(phase.name().toLowerCase(Locale.US)).append('=').append(String.format(Locale.US, "%.3fms", duration / 1000000.0));
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -32,6 +32,10 @@ public class ResponseData {
 	protected int statusCode;
 	protected VolleyError error;
     protected Object parsedErrorResponse;
+    protected boolean notModified;
+    protected int responseSize;
+    protected boolean stale;
+    protected RequestTimings timings;
 
 	
 	/**	 
@@ -61,6 +65,35 @@ public class ResponseData {
         return parsedErrorResponse;
     }
 
+    /**
+     * @return true if server representation matches validators, provided with conditional request. Response isn't parsed in this case, so data is null.
+     */
+    public boolean isNotModified() {
+        return notModified;
+    }
+
+    /**
+     * @return true if response was taken from cache and is delivered before revalidation, see {@link RequestConfig#setStaleWhileRevalidate(boolean)}.
+     * Response with actual data is delivered later only if it differs from the stale one.
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * @return size of response body in bytes, as received (compressed responses aren't inflated), 0 if response was received without body
+     */
+    public int getResponseSize() {
+        return responseSize;
+    }
+
+    /**
+     * @return request timing breakdown, or null if timings collection is disabled (see {@link RequestTimings#setEnabled(boolean)})
+     */
+    public RequestTimings getTimings() {
+        return timings;
+    }
+
     public void cloneTo(ResponseData target)
     {
         target.data = data;
@@ -68,6 +101,10 @@ public class ResponseData {
         target.statusCode = statusCode;
         target.error = error;
         target.parsedErrorResponse = parsedErrorResponse;
+        target.notModified = notModified;
+        target.responseSize = responseSize;
+        target.stale = stale;
+        target.timings = timings;
     }
 
 }
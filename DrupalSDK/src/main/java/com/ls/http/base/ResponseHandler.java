@@ -27,12 +27,109 @@ import com.android.volley.Response;
 
 import android.support.annotation.NonNull;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Type;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 
 public abstract class ResponseHandler
 {
+    /**
+     * Content codings, response handlers can decode, see {@link #openBodyStream(NetworkResponse)}
+     */
+    public static final String SUPPORTED_CONTENT_ENCODINGS = "gzip, deflate";
+
+    private static final String CONTENT_ENCODING_HEADER_KEY = "Content-Encoding";
+    private static final String ENCODING_GZIP = "gzip";
+    private static final String ENCODING_DEFLATE = "deflate";
+    private static final String ENCODING_IDENTITY = "identity";
+
+    /**
+     * Timings of the request, handler is used by, null if timings collection is disabled
+     */
+    RequestTimings timings;
+
     protected abstract String getAcceptValueType();
 
     protected abstract Response<ResponseData> parseNetworkResponse(NetworkResponse response,Object responseClassSpecifier);
+
+    /**
+     * @return true if response body is compressed, so it has to be read with {@link #openBodyStream(NetworkResponse)}
+     */
+    protected static boolean isBodyEncoded(@NonNull NetworkResponse response) {
+        return getContentEncoding(response) != null;
+    }
+
+    private static String getContentEncoding(NetworkResponse response) {
+        if (response.data == null || response.data.length == 0) {
+            return null;
+        }
+        String encoding = BaseRequest.getHeaderValue(response.headers, CONTENT_ENCODING_HEADER_KEY);
+        if (encoding == null) {
+            return null;
+        }
+        encoding = encoding.trim().toLowerCase(Locale.US);
+        if (encoding.length() == 0 || ENCODING_IDENTITY.equals(encoding)) {
+            return null;
+        }
+        return encoding;
+    }
+
+    /**
+     * Volley stores response body as received, so compressed responses are cached in compressed form and inflated while parsing.
+     *
+     * @return stream of decoded response body
+     * @throws IOException if body is encoded with unsupported content coding
+     */
+    protected static InputStream openBodyStream(@NonNull NetworkResponse response) throws IOException {
+        InputStream stream = new ByteArrayInputStream(response.data != null ? response.data : new byte[0]);
+        String encoding = getContentEncoding(response);
+        if (encoding == null) {
+            return stream;
+        }
+        if (ENCODING_GZIP.equals(encoding) || "x-gzip".equals(encoding)) {
+            return new GZIPInputStream(stream);
+        }
+        if (ENCODING_DEFLATE.equals(encoding)) {
+            // "deflate" has to be zlib-wrapped, but some servers send raw deflate data
+            return new InflaterInputStream(stream, new Inflater(!hasZlibHeader(response.data)));
+        }
+        throw new IOException("Unsupported content encoding: " + encoding);
+    }
+
+    private static boolean hasZlibHeader(byte[] data) {
+        if (data.length < 2) {
+            return false;
+        }
+        int compressionMethod = data[0] & 0x0F;
+        int header = ((data[0] & 0xFF) << 8) | (data[1] & 0xFF);
+        return compressionMethod == 8 && header % 31 == 0;
+    }
+
+    /**
+     * @return decoded response body, or raw one if it isn't encoded
+     */
+    protected static byte[] readBody(@NonNull NetworkResponse response) throws IOException {
+        if (!isBodyEncoded(response)) {
+            return response.data;
+        }
+        InputStream stream = openBodyStream(response);
+        try {
+            ByteArrayOutputStream result = new ByteArrayOutputStream(response.data.length * 4);
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = stream.read(buffer)) != -1) {
+                result.write(buffer, 0, count);
+            }
+            return result.toByteArray();
+        } finally {
+            stream.close();
+        }
+    }
 }
@@ -0,0 +1,378 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.http.base;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory cache of parsed responses, keyed by request fingerprint. Capacity is weighted by response body size.
+ * Eviction follows W-TinyLFU policy: new entries are placed into small LRU window, entries leaving the window are
+ * admitted into main segmented LRU (probation and protected segments) only if they are accessed more often than
+ * the main segment eviction victim. Access frequency is estimated with count-min sketch, periodically halved to
+ * forget stale popularity. Entries expire according to freshness lifetime of response cache headers.
+ * Note: cached response objects are shared between deliveries and must not be modified by consumers.
+ */
+public class ResponseMemoryCache {
+
+    private static final int ENTRY_OVERHEAD = 256;
+    private static final float WINDOW_RATIO = 0.01f;
+    private static final float PROTECTED_RATIO = 0.8f;
+    private static final int AVERAGE_ENTRY_WEIGHT = 2048;
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final long maxWeight;
+    private final long windowMaxWeight;
+    private final long protectedMaxWeight;
+
+    private final Map<RequestFingerprint, Node> nodes = new HashMap<RequestFingerprint, Node>();
+    private final LinkedHashMap<RequestFingerprint, Node> window = new LinkedHashMap<RequestFingerprint, Node>();
+    private final LinkedHashMap<RequestFingerprint, Node> probation = new LinkedHashMap<RequestFingerprint, Node>();
+    private final LinkedHashMap<RequestFingerprint, Node> protectedSegment = new LinkedHashMap<RequestFingerprint, Node>();
+    private long windowWeight;
+    private long probationWeight;
+    private long protectedWeight;
+
+    private final FrequencySketch sketch;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * @param maxWeight cache capacity: total size of cached response bodies in bytes
+     */
+    public ResponseMemoryCache(long maxWeight) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("Cache capacity has to be positive: " + maxWeight);
+        }
+        this.maxWeight = maxWeight;
+        this.windowMaxWeight = Math.max(1, (long) (maxWeight * WINDOW_RATIO));
+        this.protectedMaxWeight = (long) ((maxWeight - windowMaxWeight) * PROTECTED_RATIO);
+        this.sketch = new FrequencySketch((int) Math.min(Integer.MAX_VALUE, maxWeight / AVERAGE_ENTRY_WEIGHT));
+    }
+
+    /**
+     * @return cached response or null if there is no fresh one
+     */
+    @Nullable
+    public synchronized ResponseData get(@NonNull RequestFingerprint key) {
+        sketch.increment(key.hashCode());
+        Node node = nodes.get(key);
+        if (node == null) {
+            missCount++;
+            return null;
+        }
+        if (node.expiryTime <= System.currentTimeMillis()) {
+            removeNode(node);
+            missCount++;
+            return null;
+        }
+
+        onAccess(node);
+        hitCount++;
+        return node.data;
+    }
+
+    /**
+     * @param key        request fingerprint
+     * @param url        request URL, used for invalidation
+     * @param data       parsed response
+     * @param bodySize   size of response body in bytes
+     * @param expiryTime time response stays fresh till (as returned by {@link System#currentTimeMillis()})
+     */
+    public synchronized void put(@NonNull RequestFingerprint key, @NonNull String url, @NonNull ResponseData data, int bodySize, long expiryTime) {
+        Node existing = nodes.get(key);
+        if (existing != null) {
+            removeNode(existing);
+        }
+
+        int weight = bodySize + ENTRY_OVERHEAD;
+        if (weight > maxWeight || expiryTime <= System.currentTimeMillis()) {
+            return;
+        }
+
+        Node node = new Node(key, getUrlWithoutQuery(url), data, weight, expiryTime);
+        nodes.put(key, node);
+        node.segment = WINDOW;
+        window.put(key, node);
+        windowWeight += weight;
+
+        // The newest entry always stays in window, so it gets a chance to gain frequency
+        while (windowWeight > windowMaxWeight && window.size() > 1) {
+            Node candidate = window.values().iterator().next();
+            window.remove(candidate.key);
+            windowWeight -= candidate.weight;
+            admitToMain(candidate);
+        }
+
+        // Window may exceed main segment free space, so main segment entries are evicted for it
+        while (windowWeight + probationWeight + protectedWeight > maxWeight) {
+            Node victim = getMainVictim();
+            if (victim == null) {
+                break;
+            }
+            removeNode(victim);
+            evictionCount++;
+        }
+    }
+
+    public synchronized void invalidate(@NonNull RequestFingerprint key) {
+        Node node = nodes.get(key);
+        if (node != null) {
+            removeNode(node);
+        }
+    }
+
+    /**
+     * Removes all responses for URL given, regardless of query parameters
+     */
+    public synchronized void invalidateUrl(@NonNull String url) {
+        String baseUrl = getUrlWithoutQuery(url);
+        List<Node> matchingNodes = new ArrayList<Node>();
+        for (Node node : nodes.values()) {
+            if (node.url.equals(baseUrl)) {
+                matchingNodes.add(node);
+            }
+        }
+        for (Node node : matchingNodes) {
+            removeNode(node);
+        }
+    }
+
+    public synchronized void clear() {
+        nodes.clear();
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+        windowWeight = 0;
+        probationWeight = 0;
+        protectedWeight = 0;
+    }
+
+    public synchronized int getSize() {
+        return nodes.size();
+    }
+
+    /**
+     * @return total weight of cached entries
+     */
+    public synchronized long getWeight() {
+        return windowWeight + probationWeight + protectedWeight;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return number of entries evicted or rejected by admission policy
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized float getHitRate() {
+        long requestCount = hitCount + missCount;
+        return requestCount > 0 ? (float) hitCount / requestCount : 0;
+    }
+
+    private void onAccess(Node node) {
+        switch (node.segment) {
+            case WINDOW:
+                window.remove(node.key);
+                window.put(node.key, node);
+                break;
+            case PROBATION:
+                probation.remove(node.key);
+                probationWeight -= node.weight;
+                node.segment = PROTECTED;
+                protectedSegment.put(node.key, node);
+                protectedWeight += node.weight;
+                while (protectedWeight > protectedMaxWeight && protectedSegment.size() > 1) {
+                    Node demoted = protectedSegment.values().iterator().next();
+                    protectedSegment.remove(demoted.key);
+                    protectedWeight -= demoted.weight;
+                    demoted.segment = PROBATION;
+                    probation.put(demoted.key, demoted);
+                    probationWeight += demoted.weight;
+                }
+                break;
+            default:
+                protectedSegment.remove(node.key);
+                protectedSegment.put(node.key, node);
+                break;
+        }
+    }
+
+    private void admitToMain(Node candidate) {
+        int candidateFrequency = sketch.frequency(candidate.key.hashCode());
+        while (windowWeight + probationWeight + protectedWeight + candidate.weight > maxWeight) {
+            Node victim = getMainVictim();
+            if (victim == null || candidateFrequency <= sketch.frequency(victim.key.hashCode())) {
+                nodes.remove(candidate.key);
+                evictionCount++;
+                return;
+            }
+            removeNode(victim);
+            evictionCount++;
+        }
+
+        candidate.segment = PROBATION;
+        probation.put(candidate.key, candidate);
+        probationWeight += candidate.weight;
+    }
+
+    private Node getMainVictim() {
+        Iterator<Node> iterator = probation.values().iterator();
+        if (iterator.hasNext()) {
+            return iterator.next();
+        }
+        iterator = protectedSegment.values().iterator();
+        if (iterator.hasNext()) {
+            return iterator.next();
+        }
+        return null;
+    }
+
+    private void removeNode(Node node) {
+        nodes.remove(node.key);
+        switch (node.segment) {
+            case WINDOW:
+                window.remove(node.key);
+                windowWeight -= node.weight;
+                break;
+            case PROBATION:
+                probation.remove(node.key);
+                probationWeight -= node.weight;
+                break;
+            default:
+                protectedSegment.remove(node.key);
+                protectedWeight -= node.weight;
+                break;
+        }
+    }
+
+    private static String getUrlWithoutQuery(String url) {
+        int queryStart = url.indexOf('?');
+        return queryStart >= 0 ? url.substring(0, queryStart) : url;
+    }
+
+    private static class Node {
+        private final RequestFingerprint key;
+        private final String url;
+        private final ResponseData data;
+        private final int weight;
+        private final long expiryTime;
+        private int segment;
+
+        Node(RequestFingerprint key, String url, ResponseData data, int weight, long expiryTime) {
+            this.key = key;
+            this.url = url;
+            this.data = data;
+            this.weight = weight;
+            this.expiryTime = expiryTime;
+        }
+    }
+
+    /**
+     * Count-min sketch with 4 bit counters (saturating at 15) and 4 hash functions. Every row has several counters
+     * per expected entry, so collisions rarely overestimate frequency of one-off entries. All counters are halved
+     * after number of increments reaches sample size, so popularity decays over time.
+     */
+    private static class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int COUNTERS_PER_ENTRY = 8;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x97cb3127, 0xa1b2c3d5, 0x3c6ef372, 0x5be0cd19};
+
+        private final byte[] table;
+        private final int width;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int expectedEntries) {
+            int requestedWidth = (int) Math.max(64, Math.min(1 << 13, (long) expectedEntries * COUNTERS_PER_ENTRY));
+            int widthL = 1;
+            while (widthL < requestedWidth) {
+                widthL <<= 1;
+            }
+            this.width = widthL;
+            this.table = new byte[DEPTH * widthL];
+            this.sampleSize = 10 * widthL;
+        }
+
+        int frequency(int hash) {
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < DEPTH; row++) {
+                frequency = Math.min(frequency, table[indexOf(hash, row)]);
+            }
+            return frequency;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int row = 0; row < DEPTH; row++) {
+                int index = indexOf(hash, row);
+                if (table[index] < MAX_COUNT) {
+                    table[index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        private void reset() {
+            for (int counter = 0; counter < table.length; counter++) {
+                table[counter] = (byte) (table[counter] >>> 1);
+            }
+            additions /= 2;
+        }
+
+        private int indexOf(int hash, int row) {
+            int result = (hash + SEEDS[row]) * 0x9e3779b9;
+            result ^= result >>> 16;
+            return row * width + (result & (width - 1));
+        }
+    }
+}
@@ -31,6 +31,8 @@ import com.ls.util.internal.ObjectsFactory;
 
 import android.support.annotation.NonNull;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.lang.reflect.Type;
 
 class JSONResponseHandler extends BaseStringResponseHandler
@@ -60,6 +62,22 @@ class JSONResponseHandler extends BaseStringResponseHandler
 		return result;
 	}
 
+    @Override
+    protected Object itemFromResponseStream(@NonNull Reader response, @NonNull Object theSpecifier) throws IOException
+    {
+        if (theSpecifier instanceof Class<?> && IResponseItem.class.isAssignableFrom((Class<?>) theSpecifier))
+        {
+            // Response items are initialized with JSON string
+            return super.itemFromResponseStream(response, theSpecifier);
+        }
+        if (!(theSpecifier instanceof Type))
+        {
+            throw new IllegalArgumentException("You have to specify Class<?> or Type instance");
+        }
+        Gson gson = SharedGson.getGson();
+        return gson.fromJson(response, (Type) theSpecifier);
+    }
+
     @Override
     protected String getAcceptValueType() {
         return Handler.PROTOCOL_REQUEST_APP_TYPE_JSON;
@@ -0,0 +1,285 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.util.internal;
+
+import com.android.volley.Network;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.RetryPolicy;
+import com.android.volley.VolleyError;
+import com.ls.http.base.LatencyTracker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Network decorator, limiting number of simultaneously performed requests. Limit is adjusted at runtime:
+ * it grows while requests are waiting for free slot and round-trip times stay close to the best ones observed
+ * for their endpoints and shrinks if round-trip times degrade or network dispatchers are idle.
+ * Only successful first attempts are sampled, so failures and retry backoff don't affect the limit.
+ * Request queue should be created with network thread pool size equal to {@link #getMaxConcurrency()}:
+ * dispatchers exceeding current limit are parked until slot is released. Slots are granted to parked requests in
+ * request priority order, so request, taken by dispatcher later, can overtake parked ones of lower priority.
+ */
+public class AdaptiveNetwork implements Network {
+
+    public static final int DEFAULT_MIN_CONCURRENCY = 1;
+    public static final int DEFAULT_MAX_CONCURRENCY = 8;
+
+    /**
+     * Limit is decreased if smoothed ratio of round-trip time to the endpoint best one exceeds this factor
+     */
+    private static final double RTT_TOLERANCE = 2.0;
+
+    /**
+     * Number of endpoint samples, after which best endpoint round-trip time is forgotten (network conditions may change)
+     */
+    private static final int BASELINE_RESET_SAMPLES = 100;
+
+    /**
+     * Endpoint baselines are dropped once this number of endpoints is exceeded
+     */
+    private static final int MAX_TRACKED_ENDPOINTS = 256;
+
+    /**
+     * Parked requests are checked for cancellation with this period
+     */
+    private static final long CANCEL_CHECK_PERIOD = 500;
+
+    private static final double RTT_SMOOTHING = 0.2;
+
+    private final Network network;
+    private final int minConcurrency;
+    private final int maxConcurrency;
+
+    private final Object lock = new Object();
+    private final List<Request<?>> parkedRequests = new ArrayList<Request<?>>();
+    private final Map<String, Baseline> baselines = new HashMap<String, Baseline>();
+    private int concurrencyLimit;
+    private int inFlight;
+
+    private double smoothedRtt;
+    private double smoothedRttRatio;
+    private int sampleCount;
+
+    public AdaptiveNetwork(Network network) {
+        this(network, DEFAULT_MIN_CONCURRENCY, DEFAULT_MAX_CONCURRENCY);
+    }
+
+    /**
+     * @param network        network to perform requests with
+     * @param minConcurrency minimal number of simultaneous requests
+     * @param maxConcurrency maximal number of simultaneous requests, should be equal to request queue network thread pool size
+     */
+    public AdaptiveNetwork(Network network, int minConcurrency, int maxConcurrency) {
+        if (minConcurrency < 1 || maxConcurrency < minConcurrency) {
+            throw new IllegalArgumentException("Invalid concurrency bounds: " + minConcurrency + ".." + maxConcurrency);
+        }
+        this.network = network;
+        this.minConcurrency = minConcurrency;
+        this.maxConcurrency = maxConcurrency;
+        this.concurrencyLimit = minConcurrency;
+    }
+
+    @Override
+    public NetworkResponse performRequest(Request<?> request) throws VolleyError {
+        acquireSlot(request);
+        if (request.isCanceled()) {
+            // Request was canceled while parked: delivery drops result of canceled request
+            releaseSlot(null, -1);
+            throw new VolleyError("Request was canceled while waiting for network slot");
+        }
+
+        long startTime = System.nanoTime();
+        NetworkResponse response = null;
+        try {
+            response = network.performRequest(request);
+            return response;
+        } finally {
+            long rttMillis = (System.nanoTime() - startTime) / 1000000;
+            releaseSlot(response != null && !isRetried(request) ? request : null, rttMillis);
+        }
+    }
+
+    private static boolean isRetried(Request<?> request) {
+        RetryPolicy policy = request.getRetryPolicy();
+        return policy != null && policy.getCurrentRetryCount() > 0;
+    }
+
+    private void acquireSlot(Request<?> request) throws VolleyError {
+        synchronized (lock) {
+            parkedRequests.add(request);
+            try {
+                while (!request.isCanceled() && (inFlight >= concurrencyLimit || getFirstParkedRequest() != request)) {
+                    lock.wait(CANCEL_CHECK_PERIOD);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new VolleyError(e);
+            } finally {
+                removeParkedRequest(request);
+                // Other parked request may take next free slot
+                lock.notifyAll();
+            }
+            inFlight++;
+        }
+    }
+
+    /**
+     * @return parked request of the highest priority, according to request ordering (see {@link Request#compareTo(Request)})
+     */
+    @SuppressWarnings("unchecked")
+    private Request<?> getFirstParkedRequest() {
+        Request<?> first = null;
+        for (Request<?> request : parkedRequests) {
+            if (request.isCanceled()) {
+                // Canceled request leaves on its own and shouldn't hold the slot for others
+                continue;
+            }
+            if (first == null || ((Request<Object>) request).compareTo((Request<Object>) first) < 0) {
+                first = request;
+            }
+        }
+        return first;
+    }
+
+    private void removeParkedRequest(Request<?> request) {
+        for (int counter = 0; counter < parkedRequests.size(); counter++) {
+            if (parkedRequests.get(counter) == request) {
+                parkedRequests.remove(counter);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param sampledRequest request, round-trip time is sampled for, null if it shouldn't be sampled
+     */
+    private void releaseSlot(Request<?> sampledRequest, long rttMillis) {
+        synchronized (lock) {
+            inFlight--;
+            if (sampledRequest != null) {
+                onRttSample(sampledRequest, rttMillis);
+            }
+
+            if (sampleCount > 0 && smoothedRttRatio > RTT_TOLERANCE) {
+                if (concurrencyLimit > minConcurrency) {
+                    concurrencyLimit--;
+                }
+            } else if (!parkedRequests.isEmpty()) {
+                if (concurrencyLimit < maxConcurrency) {
+                    concurrencyLimit++;
+                }
+            } else if (inFlight < concurrencyLimit / 2 && concurrencyLimit > minConcurrency) {
+                concurrencyLimit--;
+            }
+            lock.notifyAll();
+        }
+    }
+
+    private void onRttSample(Request<?> request, long rttMillis) {
+        rttMillis = Math.max(rttMillis, 1);
+        String url = request.getUrl();
+        String endpoint = url != null ? LatencyTracker.getPathTemplate(url) : "";
+        Baseline baseline = baselines.get(endpoint);
+        if (baseline == null) {
+            if (baselines.size() >= MAX_TRACKED_ENDPOINTS) {
+                baselines.clear();
+            }
+            baseline = new Baseline();
+            baselines.put(endpoint, baseline);
+        }
+        double ratio = (double) rttMillis / baseline.record(rttMillis);
+
+        if (sampleCount == 0) {
+            smoothedRtt = rttMillis;
+            smoothedRttRatio = ratio;
+        } else {
+            smoothedRtt += RTT_SMOOTHING * (rttMillis - smoothedRtt);
+            smoothedRttRatio += RTT_SMOOTHING * (ratio - smoothedRttRatio);
+        }
+        sampleCount++;
+    }
+
+    /**
+     * Best round-trip time of endpoint, endpoints are compared with their own baselines only, so fast endpoints
+     * don't make slow ones look degraded.
+     */
+    private static class Baseline {
+        private long best = Long.MAX_VALUE;
+        private long nextBest = Long.MAX_VALUE;
+        private int sampleCount;
+
+        /**
+         * @return baseline round-trip time, including provided sample
+         */
+        long record(long rttMillis) {
+            best = Math.min(best, rttMillis);
+            nextBest = Math.min(nextBest, rttMillis);
+            sampleCount++;
+            long result = best;
+            if (sampleCount % BASELINE_RESET_SAMPLES == 0) {
+                best = nextBest;
+                nextBest = Long.MAX_VALUE;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * @return number of requests, allowed to be performed simultaneously at the moment
+     */
+    public int getConcurrencyLimit() {
+        synchronized (lock) {
+            return concurrencyLimit;
+        }
+    }
+
+    /**
+     * @return number of requests being performed at the moment
+     */
+    public int getInFlightCount() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    /**
+     * @return smoothed request round-trip time in milliseconds
+     */
+    public long getSmoothedRtt() {
+        synchronized (lock) {
+            return (long) smoothedRtt;
+        }
+    }
+
+    public int getMinConcurrency() {
+        return minConcurrency;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.util.internal;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared daemon scheduler, used by SDK for delayed actions (timeouts, postponed request dispatch, etc.)
+ * Scheduled actions have to be short and non-blocking.
+ */
+public final class SharedScheduler {
+
+    private static final ScheduledExecutorService scheduler = createScheduler();
+
+    private SharedScheduler() {
+    }
+
+    public static ScheduledFuture<?> schedule(Runnable action, long delayMillis) {
+        return scheduler.schedule(action, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static void execute(Runnable action) {
+        scheduler.execute(action);
+    }
+
+    /**
+     * Canceled actions (e.g. timeouts of complete requests) are removed from queue at once, so they don't keep their
+     * state till scheduled time. Policy is available since API 21, so it's enabled through reflection.
+     */
+    private static void enableRemoveOnCancel(ScheduledThreadPoolExecutor executor) {
+        try {
+            Method method = ScheduledThreadPoolExecutor.class.getMethod("setRemoveOnCancelPolicy", boolean.class);
+            method.invoke(executor, true);
+        } catch (Exception e) {
+            // Canceled actions stay in queue till scheduled time on older platforms
+        }
+    }
+
+    private static ScheduledExecutorService createScheduler() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            private final AtomicInteger threadCounter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "DrupalSDK-scheduler-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        enableRemoveOnCancel(executor);
+        return executor;
+    }
+}
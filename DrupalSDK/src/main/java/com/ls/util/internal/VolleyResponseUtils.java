@@ -48,6 +48,18 @@ import java.net.HttpURLConnection;
  * Created by Lemberg-i5 on 07.10.2014.
  */
 public class VolleyResponseUtils {
+
+    /**
+     * Network thread pool size, used by default
+     */
+    public static final int DEFAULT_NETWORK_THREAD_POOL_SIZE = 1;
+
+    /**
+     * Pass this value as network thread pool size in order to get request queue, adjusting number of simultaneous requests
+     * according to queue depth and observed round-trip time. See {@link AdaptiveNetwork}
+     */
+    public static final int ADAPTIVE_NETWORK_THREAD_POOL_SIZE = -1;
+
     public static boolean isNetworkingError(VolleyError volleyError)
     {
         if (volleyError.networkResponse == null) {
@@ -67,6 +79,22 @@ public class VolleyResponseUtils {
         return false;
     }
 
+    /**
+     * @return true if error indicates server health problem: timeout, broken connection or 5xx response.
+     * Missing connectivity of the device isn't treated as server failure.
+     */
+    public static boolean isServerFailure(VolleyError volleyError)
+    {
+        if (volleyError == null || volleyError instanceof NoConnectionError) {
+            return false;
+        }
+
+        if (volleyError.networkResponse != null) {
+            return volleyError.networkResponse.statusCode >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+        }
+        return isNetworkingError(volleyError);
+    }
+
     public static boolean isAuthError(VolleyError volleyError){
         return volleyError != null && volleyError.networkResponse != null
                 && volleyError.networkResponse.statusCode == HttpURLConnection.HTTP_UNAUTHORIZED;
@@ -79,6 +107,14 @@ public class VolleyResponseUtils {
 
 
     public static RequestQueue newRequestQueue(Context context, HttpStack stack,int maxDiskCacheSizeBytes) {
+        return newRequestQueue(context, stack, maxDiskCacheSizeBytes, DEFAULT_NETWORK_THREAD_POOL_SIZE);
+    }
+
+    /**
+     * @param networkThreadPoolSize number of network dispatcher threads or {@link #ADAPTIVE_NETWORK_THREAD_POOL_SIZE} in order to
+     *                              adjust number of simultaneous requests automatically.
+     */
+    public static RequestQueue newRequestQueue(Context context, HttpStack stack,int maxDiskCacheSizeBytes,int networkThreadPoolSize) {
 
         File cacheDir;
 
@@ -108,6 +144,14 @@ public class VolleyResponseUtils {
         }
 
         Network network = new BasicNetwork(stack);
+        if(networkThreadPoolSize == ADAPTIVE_NETWORK_THREAD_POOL_SIZE)
+        {
+            AdaptiveNetwork adaptiveNetwork = new AdaptiveNetwork(network);
+            network = adaptiveNetwork;
+            networkThreadPoolSize = adaptiveNetwork.getMaxConcurrency();
+        }else if(networkThreadPoolSize < 1){
+            throw new IllegalArgumentException("Invalid network thread pool size: " + networkThreadPoolSize);
+        }
 
         final DiskBasedCache diskCache;
         if(maxDiskCacheSizeBytes<0)
@@ -116,7 +160,7 @@ public class VolleyResponseUtils {
         }else{
             diskCache = new DiskBasedCache(cacheDir, maxDiskCacheSizeBytes);
         }
-        RequestQueue queue = new RequestQueue(diskCache, network,1);
+        RequestQueue queue = new RequestQueue(diskCache, network,networkThreadPoolSize);
 
         queue.start();
 
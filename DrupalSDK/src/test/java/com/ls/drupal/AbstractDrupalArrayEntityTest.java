@@ -0,0 +1,117 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.drupal;
+
+import com.ls.http.base.BaseRequest;
+import com.ls.http.base.ResponseData;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AbstractDrupalArrayEntityTest {
+
+    @Test
+    public void nextRelationIsFound() {
+        assertTrue(AbstractDrupalArrayEntity.hasNextLink("<http://example.com/node?page=2>; rel=\"next\""));
+        assertTrue(AbstractDrupalArrayEntity.hasNextLink("<http://example.com/node?page=2>; rel=next"));
+        assertTrue(AbstractDrupalArrayEntity.hasNextLink("<http://example.com/node?page=2>;rel=\"NEXT\""));
+        assertTrue(AbstractDrupalArrayEntity.hasNextLink(
+                "<http://example.com/node?page=0>; rel=\"prev\", <http://example.com/node?page=2>; rel=\"next\""));
+    }
+
+    @Test
+    public void multipleRelationsAreSupported() {
+        assertTrue(AbstractDrupalArrayEntity.hasNextLink("<http://example.com/node?page=2>; rel=\"next last\""));
+        assertTrue(AbstractDrupalArrayEntity.hasNextLink("<http://example.com/node?page=2>; title=\"Next\"; rel=\"next\""));
+    }
+
+    @Test
+    public void lastPageHasNoNextRelation() {
+        assertFalse(AbstractDrupalArrayEntity.hasNextLink("<http://example.com/node?page=0>; rel=\"prev\""));
+        assertFalse(AbstractDrupalArrayEntity.hasNextLink("<http://example.com/node?page=0>; rel=\"first\", <http://example.com/node?page=1>; rel=\"last\""));
+        assertFalse(AbstractDrupalArrayEntity.hasNextLink(""));
+    }
+
+    @Test
+    public void uriContentIsIgnored() {
+        assertTrue(AbstractDrupalArrayEntity.hasNextLink("<http://example.com/node?ids=1,2&page=2>; rel=\"next\""));
+        assertFalse(AbstractDrupalArrayEntity.hasNextLink("<http://example.com/node;rel=next>; rel=\"prev\""));
+        assertFalse(AbstractDrupalArrayEntity.hasNextLink("<http://example.com/node?a=1,rel=next>; rel=\"prev\""));
+    }
+
+    @Test
+    public void hasNextPageChecksLinkHeader() {
+        TestArrayEntity entity = new TestArrayEntity();
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("link", "<http://example.com/node?page=2>; rel=\"next\"");
+
+        assertEquals(Boolean.TRUE, entity.hasNextPage(newResponse(headers)));
+
+        headers.put("link", "<http://example.com/node?page=0>; rel=\"prev\"");
+        assertEquals(Boolean.FALSE, entity.hasNextPage(newResponse(headers)));
+    }
+
+    @Test
+    public void hasNextPageIsUnknownWithoutLinkHeader() {
+        TestArrayEntity entity = new TestArrayEntity();
+        assertNull(entity.hasNextPage(newResponse(null)));
+        assertNull(entity.hasNextPage(newResponse(new HashMap<String, String>())));
+    }
+
+    private static ResponseData newResponse(final Map<String, String> responseHeaders) {
+        return new ResponseData() {
+            {
+                headers = responseHeaders;
+            }
+        };
+    }
+
+    private static class TestArrayEntity extends AbstractDrupalArrayEntity<String> {
+
+        TestArrayEntity() {
+            super(null, 0);
+        }
+
+        @Override
+        protected String getPath() {
+            return "node";
+        }
+
+        @Override
+        protected Map<String, String> getItemRequestPostParameters() {
+            return null;
+        }
+
+        @Override
+        protected Map<String, Object> getItemRequestGetParameters(BaseRequest.RequestMethod method) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.drupal;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.ServerError;
+import com.ls.http.base.BaseRequest;
+import com.ls.http.base.RequestConfig;
+import com.ls.http.base.ResponseData;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DrupalBatchTest {
+
+    private static final String BASE_URL = "http://example.com/";
+
+    @Test
+    public void blueprintItemDescribesRequest() throws AuthFailureError {
+        BaseRequest request = newRequest(BaseRequest.RequestMethod.POST, BASE_URL + "node");
+        request.addRequestHeader("X-CSRF-Token", "token");
+        Map<String, String> body = new HashMap<String, String>();
+        body.put("title", "Title");
+        request.setObjectToPost(body);
+
+        DrupalBatch.BlueprintItem item = DrupalBatch.createBlueprintItem(new DrupalBatch.Operation("req-0", request, null, null));
+
+        assertEquals("req-0", item.requestId);
+        assertEquals("create", item.action);
+        assertEquals("token", item.headers.get("X-CSRF-Token"));
+        assertTrue(item.headers.containsKey("Content-Type"));
+        assertFalse(item.headers.containsKey("Accept-Encoding"));
+        assertEquals("{\"title\":\"Title\"}", item.body);
+        assertFalse(request.isBodyCompressed());
+    }
+
+    @Test
+    public void blueprintItemWithoutBody() throws AuthFailureError {
+        BaseRequest request = newRequest(BaseRequest.RequestMethod.DELETE, BASE_URL + "node/1");
+        DrupalBatch.BlueprintItem item = DrupalBatch.createBlueprintItem(new DrupalBatch.Operation("req-1", request, null, null));
+
+        assertEquals("delete", item.action);
+        assertNull(item.body);
+        assertFalse(item.headers.containsKey("Content-Type"));
+    }
+
+    @Test
+    public void subrequestUriIsRelative() {
+        assertEquals("/node/1", DrupalBatch.getRelativeURI("http://example.com/node/1"));
+        assertEquals("/node?_format=json&page=1", DrupalBatch.getRelativeURI("http://example.com/node?_format=json&page=1"));
+        assertEquals("/node/%C3%A4", DrupalBatch.getRelativeURI("http://example.com/node/%C3%A4"));
+        assertEquals("not a uri", DrupalBatch.getRelativeURI("not a uri"));
+    }
+
+    @Test
+    public void methodsAreMappedToActions() {
+        assertEquals("view", DrupalBatch.getAction(Request.Method.GET));
+        assertEquals("create", DrupalBatch.getAction(Request.Method.POST));
+        assertEquals("update", DrupalBatch.getAction(Request.Method.PATCH));
+        assertEquals("replace", DrupalBatch.getAction(Request.Method.PUT));
+        assertEquals("delete", DrupalBatch.getAction(Request.Method.DELETE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedMethodIsRejected() {
+        DrupalBatch.getAction(Request.Method.HEAD);
+    }
+
+    @Test
+    public void subresponsesAreDemultiplexedByContentId() {
+        ResultListener listener = new ResultListener();
+        List<DrupalBatch.Operation> operations = new ArrayList<DrupalBatch.Operation>();
+        for (int counter = 0; counter < 3; counter++) {
+            BaseRequest request = new BaseRequest(BaseRequest.RequestMethod.GET, BASE_URL + "node/" + counter,
+                    new RequestConfig(Article.class, BaseRequest.RequestFormat.JSON, BaseRequest.ResponseFormat.JSON));
+            operations.add(new DrupalBatch.Operation("req-" + counter, request, counter, listener));
+        }
+        DrupalBatch.BatchRequest batchRequest = DrupalBatch.newBatchRequest(BASE_URL + "subrequests", operations,
+                BaseRequest.RequestPriority.NORMAL);
+
+        // Subresponses are keyed by generated identifiers and matched by Content-ID, missing one fails its operation
+        String batchResponse = "{"
+                + "\"req-1#uri{0}\": {\"headers\": {\"Content-ID\": [\"<req-1>\"], \"Status\": [\"404\"]}, \"body\": \"{}\"},"
+                + "\"req-0#uri{0}\": {\"headers\": {\"Content-ID\": [\"<req-0>\"], \"Status\": [\"200\"]}, \"body\": \"{\\\"title\\\":\\\"First\\\"}\"}"
+                + "}";
+        Response<ResponseData> parsed = batchRequest.parseNetworkResponse(newResponse(batchResponse));
+
+        // Subresponses are parsed with the batch response, on network thread
+        assertTrue(parsed.isSuccess());
+        Response<ResponseData> first = operations.get(0).parsedResponse;
+        assertNotNull(first);
+        assertTrue(first.isSuccess());
+        assertEquals("First", ((Article) first.result.getData()).title);
+        assertFalse(operations.get(1).parsedResponse.isSuccess());
+        assertEquals(404, operations.get(1).parsedResponse.error.networkResponse.statusCode);
+        assertTrue(operations.get(2).parsedResponse.error instanceof ServerError);
+
+        new DrupalBatch.BatchResponseListener(batchRequest).onResponseReceived(parsed.result, null);
+
+        assertEquals(Arrays.<Object>asList(0), listener.succeeded);
+        assertEquals(Arrays.<Object>asList(1, 2), listener.failed);
+        assertEquals("First", ((Article) listener.responses.get(0).getData()).title);
+    }
+
+    @Test
+    public void batchFailureFailsAllOperations() {
+        ResultListener listener = new ResultListener();
+        List<DrupalBatch.Operation> operations = new ArrayList<DrupalBatch.Operation>();
+        for (int counter = 0; counter < 2; counter++) {
+            operations.add(new DrupalBatch.Operation("req-" + counter, newRequest(BaseRequest.RequestMethod.GET, BASE_URL + "node/" + counter),
+                    counter, listener));
+        }
+        DrupalBatch.BatchRequest batchRequest = DrupalBatch.newBatchRequest(BASE_URL + "subrequests", operations,
+                BaseRequest.RequestPriority.NORMAL);
+
+        ResponseData failure = batchRequest.deliverNetworkError(new ServerError());
+        new DrupalBatch.BatchResponseListener(batchRequest).onError(failure, null);
+
+        assertTrue(listener.succeeded.isEmpty());
+        assertEquals(Arrays.<Object>asList(0, 1), listener.failed);
+    }
+
+    private static BaseRequest newRequest(BaseRequest.RequestMethod method, String url) {
+        return new BaseRequest(method, url, new RequestConfig(null, BaseRequest.RequestFormat.JSON, BaseRequest.ResponseFormat.JSON));
+    }
+
+    private static NetworkResponse newResponse(String body) {
+        try {
+            return new NetworkResponse(200, body.getBytes("UTF-8"), new HashMap<String, String>(), false);
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static class Article {
+        String title;
+    }
+
+    private static class ResultListener implements DrupalClient.OnResponseListener {
+        final List<Object> succeeded = new ArrayList<Object>();
+        final List<Object> failed = new ArrayList<Object>();
+        final List<ResponseData> responses = new ArrayList<ResponseData>();
+
+        @Override
+        public void onResponseReceived(ResponseData data, Object tag) {
+            succeeded.add(tag);
+            responses.add(data);
+        }
+
+        @Override
+        public void onError(ResponseData data, Object tag) {
+            failed.add(tag);
+        }
+
+        @Override
+        public void onCancel(Object tag) {
+        }
+    }
+}
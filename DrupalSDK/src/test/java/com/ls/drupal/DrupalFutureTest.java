@@ -0,0 +1,91 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.drupal;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DrupalFutureTest {
+
+    @Test
+    public void timeoutFailsPendingFutureAndCancelsRequest() throws InterruptedException {
+        final CountDownLatch cancellation = new CountDownLatch(1);
+        DrupalFuture<String> future = new DrupalFuture<String>();
+        future.setCancellationHandler(new Runnable() {
+            @Override
+            public void run() {
+                cancellation.countDown();
+            }
+        });
+        future.withTimeout(10, TimeUnit.MILLISECONDS);
+
+        try {
+            future.get();
+            fail("Future wasn't timed out");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        // Request is canceled on scheduler thread after future is failed
+        assertTrue(cancellation.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void earliestTimeoutApplies() throws Exception {
+        DrupalFuture<String> future = new DrupalFuture<String>();
+        future.withTimeout(10, TimeUnit.SECONDS).withTimeout(10, TimeUnit.MILLISECONDS).withTimeout(5, TimeUnit.SECONDS);
+
+        try {
+            future.get(2, TimeUnit.SECONDS);
+            fail("Future wasn't timed out");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+    }
+
+    @Test
+    public void completedFutureIsNotTimedOut() throws Exception {
+        final AtomicInteger cancellations = new AtomicInteger();
+        DrupalFuture<String> future = new DrupalFuture<String>();
+        future.setCancellationHandler(new Runnable() {
+            @Override
+            public void run() {
+                cancellations.incrementAndGet();
+            }
+        });
+        future.withTimeout(20, TimeUnit.MILLISECONDS);
+        assertTrue(future.complete("result"));
+
+        Thread.sleep(60);
+        assertEquals("result", future.get());
+        assertEquals(0, cancellations.get());
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.drupal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMean(), 0);
+        assertEquals(0, histogram.getMax());
+        assertEquals(-1, histogram.getPercentile(0.5));
+    }
+
+    @Test
+    public void percentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        histogram.record(-1);
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500.5, histogram.getMean(), 0.001);
+        assertEquals(1000, histogram.getMax());
+        assertWithinPrecision(500, histogram.getPercentile(0.5));
+        assertWithinPrecision(990, histogram.getPercentile(0.99));
+        assertEquals(1000, histogram.getPercentile(1));
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 0; value < 8; value++) {
+            histogram.record(value);
+        }
+        assertEquals(3, histogram.getPercentile(0.5));
+        assertEquals(7, histogram.getPercentile(1));
+    }
+
+    @Test
+    public void addMergesValues() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.record(10);
+        first.record(20);
+        second.record(30);
+        second.record(4000);
+
+        first.add(second);
+
+        assertEquals(4, first.getCount());
+        assertEquals(4000, first.getMax());
+        assertEquals((10 + 20 + 30 + 4000) / 4.0, first.getMean(), 0.001);
+        assertEquals(2, second.getCount());
+    }
+
+    @Test
+    public void drainMovesAllValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        LatencyHistogram copy = histogram.copy();
+
+        LatencyHistogram drained = histogram.drain();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(-1, histogram.getPercentile(0.5));
+        assertEquals(100, drained.getCount());
+        assertEquals(100, drained.getMax());
+        assertEquals(copy.getMean(), drained.getMean(), 0);
+        assertEquals(copy.getPercentile(0.5), drained.getPercentile(0.5));
+        assertEquals(copy.getPercentile(0.9), drained.getPercentile(0.9));
+    }
+
+    @Test
+    public void concurrentlyRecordedValuesAreNotLost() throws InterruptedException {
+        final int threadCount = 4;
+        final int valuesPerThread = 100000;
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int counter = 0; counter < threadCount; counter++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int value = 0; value < valuesPerThread; value++) {
+                        histogram.record(value % 1000);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        LatencyHistogram total = new LatencyHistogram();
+        start.countDown();
+        boolean running = true;
+        while (running) {
+            total.add(histogram.drain());
+            running = false;
+            for (Thread thread : threads) {
+                running |= thread.isAlive();
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        total.add(histogram.drain());
+
+        assertEquals(threadCount * valuesPerThread, total.getCount());
+        assertEquals(999, total.getMax());
+        assertWithinPrecision(500, total.getPercentile(0.5));
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        // Every power of two range is split to 8 buckets, so bucket bound exceeds value by 1/8 at most
+        assertTrue("Expected " + expected + ", but was " + actual, actual >= expected && actual <= expected + expected / 8);
+    }
+}
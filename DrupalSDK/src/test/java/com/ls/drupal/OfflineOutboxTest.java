@@ -0,0 +1,190 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.drupal;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.android.volley.AuthFailureError;
+import com.ls.http.base.BaseRequest;
+import com.ls.http.base.RequestConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OfflineOutboxTest {
+
+    private static final String URL = "http://example.com/node/1";
+
+    private File journalFile;
+    private OfflineOutbox outbox;
+
+    @Before
+    public void setUp() throws IOException {
+        journalFile = File.createTempFile("outbox", ".journal");
+        assertTrue(journalFile.delete());
+        outbox = new OfflineOutbox(journalFile, OfflineOutbox.DEFAULT_MAX_CONCURRENT_REPLAYS);
+    }
+
+    @After
+    public void tearDown() {
+        outbox.clear();
+        journalFile.delete();
+    }
+
+    @Test
+    public void patchesAreMergedRecursively() {
+        OfflineOutbox.Record target = newRecord("PATCH", URL, "node-1", "{\"title\":\"Old\",\"body\":{\"value\":\"Text\",\"format\":\"plain\"}}");
+        OfflineOutbox.Record patch = newRecord("PATCH", URL, "node-1", "{\"title\":\"New\",\"body\":{\"format\":\"html\"},\"status\":1}");
+
+        assertTrue(target.mergePatch(patch));
+
+        JsonObject merged = new JsonParser().parse(target.body).getAsJsonObject();
+        assertEquals("New", merged.get("title").getAsString());
+        assertEquals(1, merged.get("status").getAsInt());
+        JsonObject body = merged.getAsJsonObject("body");
+        assertEquals("Text", body.get("value").getAsString());
+        assertEquals("html", body.get("format").getAsString());
+    }
+
+    @Test
+    public void incompatiblePatchesAreNotMerged() {
+        String body = "{\"title\":\"Title\"}";
+        OfflineOutbox.Record target = newRecord("PATCH", URL, null, body);
+
+        OfflineOutbox.Record withHeaders = newRecord("PATCH", URL, null, body);
+        withHeaders.headers = new HashMap<String, String>();
+        withHeaders.headers.put("X-Custom", "value");
+        assertFalse(target.mergePatch(withHeaders));
+
+        OfflineOutbox.Record notObject = newRecord("PATCH", URL, null, "[1, 2]");
+        assertFalse(target.mergePatch(notObject));
+
+        OfflineOutbox.Record xml = newRecord("PATCH", URL, null, body);
+        xml.requestFormat = BaseRequest.RequestFormat.XML.name();
+        assertFalse(target.mergePatch(xml));
+
+        OfflineOutbox.Record damaged = newRecord("PATCH", URL, null, "{\"title\":");
+        assertFalse(target.mergePatch(damaged));
+
+        assertEquals(body, target.body);
+    }
+
+    @Test
+    public void recordsOfTheSameResourceOrEntityAreDependent() {
+        OfflineOutbox.Record first = newRecord("PATCH", URL, "node-1", "{}");
+        assertTrue(first.isDependentOn(newRecord("PUT", URL, null, "{}")));
+        assertTrue(first.isDependentOn(newRecord("POST", "http://example.com/node", "node-1", "{}")));
+        assertFalse(first.isDependentOn(newRecord("PATCH", "http://example.com/node/2", "node-2", "{}")));
+    }
+
+    @Test
+    public void consecutivePatchesAreQueuedAsSingleRecord() {
+        queue(newRecord("PATCH", URL, "node-1", "{\"title\":\"First\"}"));
+        queue(newRecord("PATCH", URL, "node-1", "{\"status\":1}"));
+
+        List<OfflineOutbox.Record> records = outbox.getPendingRecords();
+        assertEquals(1, records.size());
+        JsonObject merged = new JsonParser().parse(records.get(0).body).getAsJsonObject();
+        assertEquals("First", merged.get("title").getAsString());
+        assertEquals(1, merged.get("status").getAsInt());
+    }
+
+    @Test
+    public void patchIsNotMergedOverOtherChange() {
+        queue(newRecord("PATCH", URL, "node-1", "{\"title\":\"First\"}"));
+        queue(newRecord("PUT", URL, "node-1", "{\"title\":\"Second\"}"));
+        queue(newRecord("PATCH", URL, "node-1", "{\"status\":1}"));
+
+        assertEquals(3, outbox.getPendingCount());
+    }
+
+    @Test
+    public void creationFollowedByDeletionCancelsOut() {
+        queue(newRecord("POST", "http://example.com/node", "node-1", "{\"title\":\"New\"}"));
+        queue(newRecord("POST", "http://example.com/node", "node-2", "{\"title\":\"Other\"}"));
+        queue(newRecord("PATCH", URL, "node-1", "{\"status\":1}"));
+
+        List<OfflineOutbox.Callback> canceled = queue(newRecord("DELETE", URL, "node-1", null));
+
+        // Creation, following patch and deletion itself
+        assertEquals(3, canceled.size());
+        List<OfflineOutbox.Record> records = outbox.getPendingRecords();
+        assertEquals(1, records.size());
+        assertEquals("node-2", records.get(0).entityKey);
+    }
+
+    @Test
+    public void deletionWithoutQueuedCreationIsQueued() {
+        queue(newRecord("PATCH", URL, "node-1", "{\"status\":1}"));
+
+        assertNull(queue(newRecord("DELETE", URL, "node-1", null)));
+        assertEquals(2, outbox.getPendingCount());
+    }
+
+    @Test
+    public void requestIsRestoredFromRecord() throws AuthFailureError {
+        BaseRequest request = new BaseRequest(BaseRequest.RequestMethod.PATCH, URL,
+                new RequestConfig(null, BaseRequest.RequestFormat.JSON, BaseRequest.ResponseFormat.JSON));
+        Map<String, String> body = new HashMap<String, String>();
+        body.put("title", "Title");
+        request.setObjectToPost(body);
+
+        OfflineOutbox.Record record = OfflineOutbox.Record.fromRequest(request, "node-1");
+        BaseRequest restored = record.toRequest(null);
+
+        assertEquals(request.getMethod(), restored.getMethod());
+        assertEquals(URL, restored.getUrl());
+        assertArrayEquals(request.getBody(), restored.getBody());
+    }
+
+    private List<OfflineOutbox.Callback> queue(OfflineOutbox.Record record) {
+        synchronized (outbox) {
+            return outbox.queueRecord(record, new OfflineOutbox.Callback(null, null, null));
+        }
+    }
+
+    private static OfflineOutbox.Record newRecord(String method, String url, String entityKey, String body) {
+        OfflineOutbox.Record record = new OfflineOutbox.Record();
+        record.method = method;
+        record.url = url;
+        record.entityKey = entityKey;
+        record.requestFormat = BaseRequest.RequestFormat.JSON.name();
+        record.responseFormat = BaseRequest.ResponseFormat.JSON.name();
+        record.body = body;
+        record.charset = "UTF-8";
+        return record;
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.drupal;
+
+import com.android.volley.Network;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.ServerError;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.NoCache;
+import com.ls.http.base.BaseRequest;
+import com.ls.http.base.RequestConfig;
+import com.ls.http.base.ResponseData;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RequestInterceptorTest {
+
+    private static final String BASE_URL = "http://example.com/";
+
+    private final List<String> events = new ArrayList<String>();
+    private StubNetwork network;
+    private DrupalClient client;
+
+    @Before
+    public void setUp() {
+        network = new StubNetwork();
+        client = new DrupalClient(BASE_URL, new RequestQueue(new NoCache(), network), null, null);
+    }
+
+    @Test
+    public void interceptorsAreCalledInChainOrder() {
+        client.addInterceptor(new TestInterceptor("first", null));
+        client.addInterceptor(new TestInterceptor("second", null));
+        client.addInterceptor(new TestInterceptor("third", newResponse("cached", null)));
+
+        ResponseData result = client.performRequest(newRequest(), true);
+
+        assertEquals("cached", result.getData());
+        assertEquals(Arrays.asList("first:request", "second:request", "third:request",
+                "third:response", "second:response", "first:response"), events);
+        assertEquals(0, network.performedCount);
+    }
+
+    @Test
+    public void answeredRequestSkipsFollowingInterceptors() {
+        client.addInterceptor(new TestInterceptor("first", newResponse("cached", null)));
+        client.addInterceptor(new TestInterceptor("second", null));
+
+        client.performRequest(newRequest(), true);
+
+        assertEquals(Arrays.asList("first:request", "second:response", "first:response"), events);
+    }
+
+    @Test
+    public void interceptorCanRewriteRequest() {
+        client.addInterceptor(new RequestInterceptor() {
+            @Override
+            public ResponseData onRequest(BaseRequest request) {
+                request.addRequestHeader("X-Signature", "signed");
+                return null;
+            }
+
+            @Override
+            public void onResponse(BaseRequest request, ResponseData data) {
+            }
+        });
+        client.addInterceptor(new RequestInterceptor() {
+            @Override
+            public ResponseData onRequest(BaseRequest request) {
+                events.add(request.getRequestHeaders().get("X-Signature"));
+                return newResponse("cached", null);
+            }
+
+            @Override
+            public void onResponse(BaseRequest request, ResponseData data) {
+            }
+        });
+
+        client.performRequest(newRequest(), true);
+
+        assertEquals(Arrays.asList("signed"), events);
+    }
+
+    @Test
+    public void interceptorFailureIsDeliveredAsError() {
+        ServerError error = new ServerError();
+        client.addInterceptor(new TestInterceptor("first", newResponse(null, error)));
+        final List<ResponseData> errors = new ArrayList<ResponseData>();
+
+        client.performRequest(newRequest(), "tag", new DrupalClient.OnResponseListener() {
+            @Override
+            public void onResponseReceived(ResponseData data, Object tag) {
+            }
+
+            @Override
+            public void onError(ResponseData data, Object tag) {
+                assertEquals("tag", tag);
+                errors.add(data);
+            }
+
+            @Override
+            public void onCancel(Object tag) {
+            }
+        }, true);
+
+        assertEquals(1, errors.size());
+        assertSame(error, errors.get(0).getError());
+        assertEquals(Arrays.asList("first:request", "first:response"), events);
+    }
+
+    @Test
+    public void removedInterceptorIsNotCalled() {
+        TestInterceptor removed = new TestInterceptor("removed", null);
+        TestInterceptor answering = new TestInterceptor("answering", newResponse("cached", null));
+        client.addInterceptor(removed);
+        client.addInterceptor(answering);
+        client.removeInterceptor(removed);
+
+        assertEquals(Arrays.<RequestInterceptor>asList(answering), client.getInterceptors());
+        client.performRequest(newRequest(), true);
+
+        assertEquals(Arrays.asList("answering:request", "answering:response"), events);
+    }
+
+    @Test
+    public void chainDoesNotAllocatePerRequest() {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+            // Allocation can't be measured on this JVM
+            return;
+        }
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        if (!allocationBean.isThreadAllocatedMemorySupported() || !allocationBean.isThreadAllocatedMemoryEnabled()) {
+            return;
+        }
+
+        for (int counter = 0; counter < 3; counter++) {
+            client.addInterceptor(new RequestInterceptor() {
+                @Override
+                public ResponseData onRequest(BaseRequest request) {
+                    return null;
+                }
+
+                @Override
+                public void onResponse(BaseRequest request, ResponseData data) {
+                }
+            });
+        }
+        BaseRequest request = newRequest();
+        ResponseData response = newResponse("data", null);
+        final int iterations = 100000;
+        // Warm-up lets JIT compile the chain, so interpreter allocations aren't counted
+        for (int counter = 0; counter < iterations; counter++) {
+            client.interceptRequest(request);
+            client.interceptResponse(request, response);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long measurementOverhead = -allocationBean.getThreadAllocatedBytes(threadId) + allocationBean.getThreadAllocatedBytes(threadId);
+        long startBytes = allocationBean.getThreadAllocatedBytes(threadId);
+        for (int counter = 0; counter < iterations; counter++) {
+            client.interceptRequest(request);
+            client.interceptResponse(request, response);
+        }
+        long allocatedBytes = allocationBean.getThreadAllocatedBytes(threadId) - startBytes - measurementOverhead;
+
+        assertTrue("Chain allocated " + allocatedBytes + " bytes for " + iterations + " requests", allocatedBytes < iterations);
+    }
+
+    private static BaseRequest newRequest() {
+        return new BaseRequest(BaseRequest.RequestMethod.GET, BASE_URL + "node/1",
+                new RequestConfig(null, BaseRequest.RequestFormat.JSON, BaseRequest.ResponseFormat.JSON));
+    }
+
+    private static ResponseData newResponse(final Object responseData, final VolleyError responseError) {
+        return new ResponseData() {
+            {
+                this.data = responseData;
+                this.error = responseError;
+                this.statusCode = responseError == null ? 200 : 500;
+            }
+        };
+    }
+
+    private class TestInterceptor implements RequestInterceptor {
+        private final String name;
+        private final ResponseData response;
+
+        TestInterceptor(String name, ResponseData response) {
+            this.name = name;
+            this.response = response;
+        }
+
+        @Override
+        public ResponseData onRequest(BaseRequest request) {
+            events.add(name + ":request");
+            return response;
+        }
+
+        @Override
+        public void onResponse(BaseRequest request, ResponseData data) {
+            events.add(name + ":response");
+        }
+    }
+
+    private static class StubNetwork implements Network {
+        int performedCount;
+
+        @Override
+        public NetworkResponse performRequest(Request<?> request) throws VolleyError {
+            performedCount++;
+            throw new VolleyError("Network isn't available in tests");
+        }
+    }
+}
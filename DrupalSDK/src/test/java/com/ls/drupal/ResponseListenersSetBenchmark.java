@@ -0,0 +1,170 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.drupal;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.ls.http.base.ResponseData;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Contention of many threads, completing requests at once: every thread registers listener for request, removes it
+ * on completion and notifies it. Some listeners are slow. Listener set with callbacks outside of lock is compared to
+ * the same set, guarded by single monitor with callbacks inside of it (as client used to dispatch responses).
+ */
+public class ResponseListenersSetBenchmark {
+
+    private static final int THREAD_COUNT = 8;
+    private static final int REQUESTS_PER_THREAD = 400;
+    private static final int SLOW_LISTENER_PERIOD = 20;
+    private static final long SLOW_LISTENER_DELAY = 2;
+
+    @Test
+    public void completionThroughputUnderContention() throws InterruptedException {
+        // Warm-up
+        measureThroughput(false);
+        measureThroughput(true);
+
+        double globalLock = measureThroughput(true);
+        double outOfLock = measureThroughput(false);
+
+        System.out.println(String.format(Locale.US, "Request completions/s with %d threads: global lock %.0f, out-of-lock dispatch %.0f",
+                THREAD_COUNT, globalLock, outOfLock));
+        assertTrue("Out-of-lock: " + outOfLock + " vs " + globalLock, outOfLock > globalLock * 2);
+    }
+
+    /**
+     * @return request completions per second
+     */
+    private static double measureThroughput(final boolean globalLock) throws InterruptedException {
+        final ResponseListenersSet set = new ResponseListenersSet();
+        final Object monitor = new Object();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch finish = new CountDownLatch(THREAD_COUNT);
+        final AtomicInteger missedResponses = new AtomicInteger();
+        for (int threadIndex = 0; threadIndex < THREAD_COUNT; threadIndex++) {
+            final String tag = "thread-" + threadIndex;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int counter = 0; counter < REQUESTS_PER_THREAD; counter++) {
+                            Request<?> request = new TestRequest(tag);
+                            CountingListener listener = new CountingListener(counter % SLOW_LISTENER_PERIOD == 0);
+                            if (globalLock) {
+                                synchronized (monitor) {
+                                    set.registerListenerForRequest(request, listener, tag, false);
+                                }
+                                synchronized (monitor) {
+                                    notifyListeners(set.removeListenersForRequest(request));
+                                }
+                            } else {
+                                set.registerListenerForRequest(request, listener, tag, false);
+                                notifyListeners(set.removeListenersForRequest(request));
+                            }
+                            if (listener.responseCount != 1) {
+                                missedResponses.incrementAndGet();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        finish.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        finish.await();
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        assertEquals(0, missedResponses.get());
+        assertEquals(0, set.registeredRequestCount());
+        return THREAD_COUNT * REQUESTS_PER_THREAD / seconds;
+    }
+
+    private static void notifyListeners(List<ResponseListenersSet.ListenerHolder> holders) {
+        for (ResponseListenersSet.ListenerHolder holder : holders) {
+            holder.getListener().onResponseReceived(null, holder.getTag());
+        }
+    }
+
+    private static class CountingListener implements DrupalClient.OnResponseListener {
+        private final boolean slow;
+        int responseCount;
+
+        CountingListener(boolean slow) {
+            this.slow = slow;
+        }
+
+        @Override
+        public void onResponseReceived(ResponseData data, Object tag) {
+            responseCount++;
+            if (slow) {
+                try {
+                    Thread.sleep(SLOW_LISTENER_DELAY);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void onError(ResponseData data, Object tag) {
+        }
+
+        @Override
+        public void onCancel(Object tag) {
+        }
+    }
+
+    private static class TestRequest extends Request<Object> {
+
+        TestRequest(Object tag) {
+            super(Method.GET, "http://example.com/node", null);
+            setTag(tag);
+        }
+
+        @Override
+        protected Response<Object> parseNetworkResponse(NetworkResponse response) {
+            return null;
+        }
+
+        @Override
+        protected void deliverResponse(Object response) {
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.drupal;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.ls.http.base.ResponseData;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseListenersSetTest {
+
+    @Test
+    public void firstListenerRegistersRequest() {
+        ResponseListenersSet set = new ResponseListenersSet();
+        Request request = newRequest("tag");
+        TestListener first = new TestListener();
+        TestListener second = new TestListener();
+
+        assertTrue(set.registerListenerForRequest(request, first, "first", false));
+        assertFalse(set.registerListenerForRequest(request, second, "second", false));
+        assertEquals(1, set.registeredRequestCount());
+
+        List<ResponseListenersSet.ListenerHolder> holders = set.getListenersForRequest(request);
+        assertEquals(2, holders.size());
+        assertSame(first, holders.get(0).getListener());
+        assertEquals("second", holders.get(1).getTag());
+    }
+
+    @Test
+    public void duplicateListenersAreSkippedIfRequested() {
+        ResponseListenersSet set = new ResponseListenersSet();
+        Request request = newRequest(null);
+        assertTrue(set.registerListenerForRequest(request, new TestListener(), null, true));
+        assertFalse(set.registerListenerForRequest(request, new TestListener(), null, true));
+        assertEquals(1, set.getListenersForRequest(request).size());
+    }
+
+    @Test
+    public void requestsAreIndexedByTagAndListener() {
+        ResponseListenersSet set = new ResponseListenersSet();
+        Request first = newRequest("screen");
+        Request second = newRequest("screen");
+        Request other = newRequest("other");
+        TestListener listener = new TestListener();
+        TestListener otherListener = new TestListener();
+
+        set.registerListenerForRequest(first, listener, null, false);
+        set.registerListenerForRequest(second, otherListener, null, false);
+        set.registerListenerForRequest(other, listener, null, false);
+        set.registerListenerForRequest(second, listener, null, false);
+
+        assertEquals(2, set.getRequestsForTag("screen").size());
+        assertEquals(1, set.getRequestsForTag("other").size());
+        assertTrue(set.getRequestsForTag("missing").isEmpty());
+        assertEquals(3, set.getRequestsForListener(listener).size());
+        assertEquals(1, set.getRequestsForListener(otherListener).size());
+    }
+
+    @Test
+    public void listenersAreIndexedByIdentity() {
+        ResponseListenersSet set = new ResponseListenersSet();
+        TestListener listener = new EqualListener();
+        TestListener equalListener = new EqualListener();
+        set.registerListenerForRequest(newRequest(null), listener, null, false);
+
+        assertEquals(1, set.getRequestsForListener(listener).size());
+        assertTrue(set.getRequestsForListener(equalListener).isEmpty());
+    }
+
+    @Test
+    public void requestsWithoutListenerAreIndexedByTag() {
+        ResponseListenersSet set = new ResponseListenersSet();
+        Request request = newRequest("tag");
+
+        assertTrue(set.registerListenerForRequest(request, null, null, false));
+        assertEquals(0, set.registeredRequestCount());
+        assertEquals(1, set.getRequestsForTag("tag").size());
+
+        assertNull(set.removeListenersForRequest(request));
+        assertTrue(set.getRequestsForTag("tag").isEmpty());
+    }
+
+    @Test
+    public void removalClearsIndexes() {
+        ResponseListenersSet set = new ResponseListenersSet();
+        Request request = newRequest("tag");
+        TestListener first = new TestListener();
+        TestListener second = new TestListener();
+        set.registerListenerForRequest(request, first, null, false);
+        set.registerListenerForRequest(request, second, null, false);
+
+        List<ResponseListenersSet.ListenerHolder> removed = set.removeListenersForRequest(request);
+
+        assertEquals(2, removed.size());
+        assertEquals(0, set.registeredRequestCount());
+        assertNull(set.getListenersForRequest(request));
+        assertNull(set.removeListenersForRequest(request));
+        assertTrue(set.getRequestsForTag("tag").isEmpty());
+        assertTrue(set.getRequestsForListener(first).isEmpty());
+        assertTrue(set.getRequestsForListener(second).isEmpty());
+    }
+
+    @Test
+    public void removeAllListeners() {
+        ResponseListenersSet set = new ResponseListenersSet();
+        TestListener listener = new TestListener();
+        for (int counter = 0; counter < 10; counter++) {
+            set.registerListenerForRequest(newRequest("tag"), listener, null, false);
+        }
+
+        set.removeAllListeners();
+
+        assertEquals(0, set.registeredRequestCount());
+        assertTrue(set.getRequestsForTag("tag").isEmpty());
+        assertTrue(set.getRequestsForListener(listener).isEmpty());
+    }
+
+    @Test
+    public void concurrentRegistrationAndRemoval() throws InterruptedException {
+        final ResponseListenersSet set = new ResponseListenersSet();
+        final int threadCount = 8;
+        final int requestsPerThread = 2000;
+        final List<Request> requests = new ArrayList<Request>();
+        for (int counter = 0; counter < requestsPerThread; counter++) {
+            requests.add(newRequest("tag"));
+        }
+        final AtomicInteger registered = new AtomicInteger();
+        final AtomicInteger removed = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int threadIndex = 0; threadIndex < threadCount; threadIndex++) {
+            final boolean remover = threadIndex % 2 == 1;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (Request request : requests) {
+                        if (remover) {
+                            List<ResponseListenersSet.ListenerHolder> holders = set.removeListenersForRequest(request);
+                            if (holders != null) {
+                                removed.addAndGet(holders.size());
+                            }
+                        } else {
+                            set.registerListenerForRequest(request, new TestListener(), null, false);
+                            registered.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (Request request : requests) {
+            List<ResponseListenersSet.ListenerHolder> holders = set.removeListenersForRequest(request);
+            if (holders != null) {
+                removed.addAndGet(holders.size());
+            }
+        }
+
+        // Every listener is returned by exactly one removal
+        assertEquals(registered.get(), removed.get());
+        assertEquals(0, set.registeredRequestCount());
+        assertTrue(set.getRequestsForTag("tag").isEmpty());
+    }
+
+    private static Request newRequest(Object tag) {
+        Request request = new TestRequest();
+        request.setTag(tag);
+        return request;
+    }
+
+    private static class TestRequest extends Request<Object> {
+
+        TestRequest() {
+            super(Method.GET, "http://example.com/node", null);
+        }
+
+        @Override
+        protected Response<Object> parseNetworkResponse(NetworkResponse response) {
+            return null;
+        }
+
+        @Override
+        protected void deliverResponse(Object response) {
+        }
+    }
+
+    private static class TestListener implements DrupalClient.OnResponseListener {
+
+        @Override
+        public void onResponseReceived(ResponseData data, Object tag) {
+        }
+
+        @Override
+        public void onError(ResponseData data, Object tag) {
+        }
+
+        @Override
+        public void onCancel(Object tag) {
+        }
+    }
+
+    private static class EqualListener extends TestListener {
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof EqualListener;
+        }
+
+        @Override
+        public int hashCode() {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.http.base;
+
+import com.android.volley.Cache;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Response;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class BaseRequestTest {
+
+    private static final String URL = "http://example.com/node/1";
+
+    @Test
+    public void notModifiedResponseKeepsCachedContentEncoding() throws IOException {
+        Cache.Entry entry = new Cache.Entry();
+        entry.data = gzip("{\"title\":\"Cached\"}");
+        entry.responseHeaders = new HashMap<String, String>();
+        entry.responseHeaders.put("Content-Encoding", "gzip");
+        entry.responseHeaders.put("Content-Type", "application/json; charset=utf-8");
+        entry.responseHeaders.put("Cache-Control", "max-age=10");
+
+        BaseRequest request = new BaseRequest(BaseRequest.RequestMethod.GET, URL,
+                new RequestConfig(Article.class, BaseRequest.RequestFormat.JSON, BaseRequest.ResponseFormat.JSON));
+        request.setCacheEntry(entry);
+
+        // Volley answers 304 with cached body and headers of 304 response only
+        Map<String, String> notModifiedHeaders = new HashMap<String, String>();
+        notModifiedHeaders.put("cache-control", "max-age=60");
+        Response<ResponseData> response = request.parseNetworkResponse(new NetworkResponse(304, entry.data, notModifiedHeaders, true));
+
+        assertTrue(response.isSuccess());
+        assertEquals("Cached", ((Article) response.result.getData()).title);
+        assertNotNull(response.cacheEntry);
+        assertEquals("gzip", response.cacheEntry.responseHeaders.get("Content-Encoding"));
+        assertEquals("max-age=60", response.cacheEntry.responseHeaders.get("cache-control"));
+        assertEquals(null, response.cacheEntry.responseHeaders.get("Cache-Control"));
+    }
+
+    private static byte[] gzip(String body) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        GZIPOutputStream stream = new GZIPOutputStream(result);
+        stream.write(body.getBytes("UTF-8"));
+        stream.close();
+        return result.toByteArray();
+    }
+
+    static class Article {
+        String title;
+    }
+}
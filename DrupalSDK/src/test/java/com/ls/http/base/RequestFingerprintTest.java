@@ -0,0 +1,147 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.http.base;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RequestFingerprintTest {
+
+    private static final String URL = "http://example.com/node/1";
+
+    @Test
+    public void sameComponentsGiveEqualFingerprints() {
+        RequestFingerprint first = new RequestFingerprint.Builder().putInt(1).putString("node").putBytes(new byte[]{1, 2}).build();
+        RequestFingerprint second = new RequestFingerprint.Builder().putInt(1).putString("node").putBytes(new byte[]{1, 2}).build();
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+        assertEquals(first.toString(), second.toString());
+        assertEquals(32, first.toString().length());
+    }
+
+    @Test
+    public void componentsAreLengthPrefixed() {
+        RequestFingerprint first = new RequestFingerprint.Builder().putString("ab").putString("c").build();
+        RequestFingerprint second = new RequestFingerprint.Builder().putString("a").putString("bc").build();
+        assertNotEquals(first, second);
+
+        RequestFingerprint nullString = new RequestFingerprint.Builder().putString(null).build();
+        RequestFingerprint emptyString = new RequestFingerprint.Builder().putString("").build();
+        assertNotEquals(nullString, emptyString);
+    }
+
+    @Test
+    public void parameterOrderIsIgnored() {
+        BaseRequest first = newRequest(BaseRequest.RequestMethod.GET);
+        first.addGetParameter("page", 1);
+        first.addGetParameter("sort", "title");
+        BaseRequest second = newRequest(BaseRequest.RequestMethod.GET);
+        second.addGetParameter("sort", "title");
+        second.addGetParameter("page", 1);
+
+        assertEquals(first.getFingerprint(), second.getFingerprint());
+        assertTrue(first.equals(second));
+        assertEquals(first.hashCode(), second.hashCode());
+    }
+
+    @Test
+    public void headerNamesAreCaseInsensitive() {
+        BaseRequest first = newRequest(BaseRequest.RequestMethod.GET);
+        first.addRequestHeader("X-Custom", "value");
+        BaseRequest second = newRequest(BaseRequest.RequestMethod.GET);
+        second.addRequestHeader("x-custom", "value");
+        assertEquals(first.getFingerprint(), second.getFingerprint());
+
+        second.addRequestHeader("x-custom", "other");
+        assertNotEquals(first.getFingerprint(), second.getFingerprint());
+    }
+
+    @Test
+    public void collectionParametersAreExpanded() {
+        BaseRequest first = newRequest(BaseRequest.RequestMethod.GET);
+        first.addGetParameter("id", Arrays.asList("1", "2"));
+        BaseRequest second = newRequest(BaseRequest.RequestMethod.GET);
+        second.addGetParameter("id", Arrays.asList("2", "1"));
+        assertNotEquals(first.getFingerprint(), second.getFingerprint());
+    }
+
+    @Test
+    public void methodAndBodyAreCovered() {
+        BaseRequest get = newRequest(BaseRequest.RequestMethod.GET);
+        BaseRequest post = newRequest(BaseRequest.RequestMethod.POST);
+        assertNotEquals(get.getFingerprint(), post.getFingerprint());
+
+        Map<String, String> body = new HashMap<String, String>();
+        body.put("title", "First");
+        post.setObjectToPost(body);
+        BaseRequest samePost = newRequest(BaseRequest.RequestMethod.POST);
+        samePost.setObjectToPost(new HashMap<String, String>(body));
+        assertEquals(post.getFingerprint(), samePost.getFingerprint());
+
+        Map<String, String> otherBody = new HashMap<String, String>();
+        otherBody.put("title", "Second");
+        samePost.setObjectToPost(otherBody);
+        assertNotEquals(post.getFingerprint(), samePost.getFingerprint());
+    }
+
+    @Test
+    public void fingerprintIsCachedUntilRequestChanges() {
+        BaseRequest request = newRequest(BaseRequest.RequestMethod.GET);
+        RequestFingerprint fingerprint = request.getFingerprint();
+        assertSame(fingerprint, request.getFingerprint());
+
+        request.addGetParameter("page", 2);
+        RequestFingerprint changed = request.getFingerprint();
+        assertNotEquals(fingerprint, changed);
+
+        request.addGetParameter("page", null);
+        assertEquals(fingerprint, request.getFingerprint());
+    }
+
+    @Test
+    public void identityComparisonWithoutSmartComparison() {
+        BaseRequest first = new BaseRequest(BaseRequest.RequestMethod.GET, URL, newConfig());
+        BaseRequest second = new BaseRequest(BaseRequest.RequestMethod.GET, URL, newConfig());
+        assertEquals(first.getFingerprint(), second.getFingerprint());
+        assertFalse(first.equals(second));
+    }
+
+    private static BaseRequest newRequest(BaseRequest.RequestMethod method) {
+        BaseRequest request = new BaseRequest(method, URL, newConfig());
+        request.setSmartComparisonEnabled(true);
+        return request;
+    }
+
+    private static RequestConfig newConfig() {
+        return new RequestConfig(null, BaseRequest.RequestFormat.JSON, BaseRequest.ResponseFormat.JSON);
+    }
+}
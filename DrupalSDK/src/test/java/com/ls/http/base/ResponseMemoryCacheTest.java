@@ -0,0 +1,175 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.http.base;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseMemoryCacheTest {
+
+    /**
+     * Body size, giving entry weight of 2 kilobytes, including entry overhead
+     */
+    private static final int BODY_SIZE = 1792;
+    private static final int ENTRY_WEIGHT = 2048;
+    private static final int CAPACITY = 100;
+    private static final String URL = "http://example.com/node";
+
+    @Test
+    public void putAndGet() {
+        ResponseMemoryCache cache = new ResponseMemoryCache(CAPACITY * ENTRY_WEIGHT);
+        ResponseData data = new ResponseData();
+        cache.put(key(1), URL, data, BODY_SIZE, fresh());
+
+        assertSame(data, cache.get(key(1)));
+        assertNull(cache.get(key(2)));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5f, cache.getHitRate(), 0);
+        assertEquals(ENTRY_WEIGHT, cache.getWeight());
+    }
+
+    @Test
+    public void expiredResponsesAreNotReturned() {
+        ResponseMemoryCache cache = new ResponseMemoryCache(CAPACITY * ENTRY_WEIGHT);
+        cache.put(key(1), URL, new ResponseData(), BODY_SIZE, System.currentTimeMillis() - 1);
+        assertEquals(0, cache.getSize());
+
+        cache.put(key(2), URL, new ResponseData(), BODY_SIZE, System.currentTimeMillis() + 50);
+        assertEquals(1, cache.getSize());
+        sleep(100);
+        assertNull(cache.get(key(2)));
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void oversizedResponsesAreRejected() {
+        ResponseMemoryCache cache = new ResponseMemoryCache(CAPACITY * ENTRY_WEIGHT);
+        cache.put(key(1), URL, new ResponseData(), CAPACITY * ENTRY_WEIGHT, fresh());
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void invalidation() {
+        ResponseMemoryCache cache = new ResponseMemoryCache(CAPACITY * ENTRY_WEIGHT);
+        cache.put(key(1), URL + "?page=1", new ResponseData(), BODY_SIZE, fresh());
+        cache.put(key(2), URL + "?page=2", new ResponseData(), BODY_SIZE, fresh());
+        cache.put(key(3), URL + "/1", new ResponseData(), BODY_SIZE, fresh());
+
+        cache.invalidate(key(3));
+        assertNull(cache.get(key(3)));
+        assertEquals(2, cache.getSize());
+
+        cache.invalidateUrl(URL);
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void replacedResponseIsReweighted() {
+        ResponseMemoryCache cache = new ResponseMemoryCache(CAPACITY * ENTRY_WEIGHT);
+        cache.put(key(1), URL, new ResponseData(), BODY_SIZE, fresh());
+        ResponseData replacement = new ResponseData();
+        cache.put(key(1), URL, replacement, 2 * BODY_SIZE, fresh());
+
+        assertEquals(1, cache.getSize());
+        assertEquals(ENTRY_WEIGHT + BODY_SIZE, cache.getWeight());
+        assertSame(replacement, cache.get(key(1)));
+    }
+
+    @Test
+    public void weightNeverExceedsCapacity() {
+        ResponseMemoryCache cache = new ResponseMemoryCache(CAPACITY * ENTRY_WEIGHT);
+        for (int counter = 0; counter < 10000; counter++) {
+            cache.get(key(counter % 300));
+            cache.put(key(counter % 300), URL, new ResponseData(), counter % (4 * ENTRY_WEIGHT), fresh());
+            assertTrue(cache.getWeight() <= cache.getMaxWeight());
+        }
+        assertTrue(cache.getEvictionCount() > 0);
+    }
+
+    @Test
+    public void popularResponsesSurviveScan() {
+        ResponseMemoryCache cache = new ResponseMemoryCache(CAPACITY * ENTRY_WEIGHT);
+        int hotCount = CAPACITY / 2;
+        for (int counter = 0; counter < hotCount; counter++) {
+            cache.put(key(counter), URL, new ResponseData(), BODY_SIZE, fresh());
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int counter = 0; counter < hotCount; counter++) {
+                cache.get(key(counter));
+            }
+        }
+
+        // One-off responses are rejected by admission policy instead of evicting popular ones
+        for (int counter = 0; counter < 10 * CAPACITY; counter++) {
+            cache.put(key(1000 + counter), URL, new ResponseData(), BODY_SIZE, fresh());
+        }
+
+        for (int counter = 0; counter < hotCount; counter++) {
+            assertNotNull("Popular response " + counter + " was evicted", cache.get(key(counter)));
+        }
+    }
+
+    @Test
+    public void frequentlyRequestedResponseIsAdmitted() {
+        ResponseMemoryCache cache = new ResponseMemoryCache(CAPACITY * ENTRY_WEIGHT);
+        for (int counter = 0; counter < 2 * CAPACITY; counter++) {
+            cache.put(key(counter), URL, new ResponseData(), BODY_SIZE, fresh());
+        }
+
+        // Misses are counted by frequency sketch as well
+        RequestFingerprint frequent = key(5000);
+        for (int counter = 0; counter < 3; counter++) {
+            assertNull(cache.get(frequent));
+        }
+        cache.put(frequent, URL, new ResponseData(), BODY_SIZE, fresh());
+        // Pushes frequent response out of the window
+        cache.put(key(5001), URL, new ResponseData(), BODY_SIZE, fresh());
+
+        assertNotNull(cache.get(frequent));
+    }
+
+    private static RequestFingerprint key(int index) {
+        return new RequestFingerprint.Builder().putInt(index).build();
+    }
+
+    private static long fresh() {
+        return System.currentTimeMillis() + 60000;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.util.internal;
+
+import com.android.volley.ExecutorDelivery;
+import com.android.volley.Network;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.NoCache;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Throughput of request queue with 1, 4 and adaptive number of network threads, performing bursts of parallel requests
+ * (as list screens do) against stub server. Server handles limited number of requests at once with fixed latency,
+ * further requests wait for it.
+ */
+public class AdaptiveNetworkBenchmark {
+
+    private static final int BURST_SIZE = 40;
+    private static final int BURSTS = 3;
+    private static final long SERVER_LATENCY = 25;
+    private static final int SERVER_CAPACITY = 6;
+    private static final long TIMEOUT = 60000;
+
+    @Test
+    public void throughputOfNetworkThreadPools() throws InterruptedException {
+        double single = measureThroughput(new StubServer(), 1);
+        double fixed = measureThroughput(new StubServer(), 4);
+        double adaptive = measureThroughput(new AdaptiveNetwork(new StubServer()), AdaptiveNetwork.DEFAULT_MAX_CONCURRENCY);
+
+        System.out.println(String.format(Locale.US, "Network thread pool throughput, requests/s: 1 thread %.1f, 4 threads %.1f, adaptive %.1f",
+                single, fixed, adaptive));
+        assertTrue("4 threads: " + fixed + " vs " + single, fixed > single * 2);
+        assertTrue("Adaptive: " + adaptive + " vs " + single, adaptive > single * 2);
+    }
+
+    /**
+     * @return requests per second
+     */
+    private static double measureThroughput(Network network, int threadPoolSize) throws InterruptedException {
+        // Responses are delivered on network threads, since there is no main looper
+        RequestQueue queue = new RequestQueue(new NoCache(), network, threadPoolSize, new ExecutorDelivery(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        }));
+        queue.start();
+        try {
+            // Warm-up burst lets threads start and adaptive limit settle
+            performBurst(queue);
+            long startTime = System.nanoTime();
+            for (int counter = 0; counter < BURSTS; counter++) {
+                performBurst(queue);
+            }
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            return BURST_SIZE * BURSTS / seconds;
+        } finally {
+            queue.stop();
+        }
+    }
+
+    private static void performBurst(RequestQueue queue) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(BURST_SIZE);
+        AtomicInteger failures = new AtomicInteger();
+        for (int counter = 0; counter < BURST_SIZE; counter++) {
+            queue.add(new BenchmarkRequest(counter, latch, failures));
+        }
+        assertTrue("Burst wasn't complete in time", latch.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(0, failures.get());
+    }
+
+    private static class StubServer implements Network {
+        private final Semaphore capacity = new Semaphore(SERVER_CAPACITY, true);
+
+        @Override
+        public NetworkResponse performRequest(Request<?> request) throws VolleyError {
+            try {
+                capacity.acquire();
+                try {
+                    Thread.sleep(SERVER_LATENCY);
+                } finally {
+                    capacity.release();
+                }
+            } catch (InterruptedException e) {
+                throw new VolleyError(e);
+            }
+            return new NetworkResponse(200, new byte[0], new HashMap<String, String>(), false);
+        }
+    }
+
+    private static class BenchmarkRequest extends Request<Object> {
+        private final CountDownLatch latch;
+
+        BenchmarkRequest(int index, final CountDownLatch latch, final AtomicInteger failures) {
+            super(Method.GET, "http://example.com/node/" + index, new Response.ErrorListener() {
+                @Override
+                public void onErrorResponse(VolleyError error) {
+                    failures.incrementAndGet();
+                    latch.countDown();
+                }
+            });
+            this.latch = latch;
+            setShouldCache(false);
+        }
+
+        @Override
+        protected Response<Object> parseNetworkResponse(NetworkResponse response) {
+            return Response.success(null, null);
+        }
+
+        @Override
+        protected void deliverResponse(Object response) {
+            latch.countDown();
+        }
+    }
+}
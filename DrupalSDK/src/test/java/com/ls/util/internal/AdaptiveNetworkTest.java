@@ -0,0 +1,227 @@
+/*
+ * The MIT License (MIT)
+ *  Copyright (c) 2014 Lemberg Solutions Limited
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *   The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *   IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *   FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *   AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *   LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *   OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *   SOFTWARE.
+ */
+
+package com.ls.util.internal;
+
+import com.android.volley.Network;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AdaptiveNetworkTest {
+
+    private static final long TIMEOUT = 10000;
+
+    @Test
+    public void limitGrowsUnderLoadAndShrinksWhenIdle() throws Exception {
+        StubNetwork stub = new StubNetwork(30);
+        AdaptiveNetwork network = new AdaptiveNetwork(stub, 1, 3);
+        assertEquals(1, network.getConcurrencyLimit());
+
+        performConcurrently(network, 8, Request.Priority.NORMAL);
+
+        assertTrue("Concurrency exceeded maximum: " + stub.maxConcurrent, stub.maxConcurrent <= 3);
+        assertTrue("Concurrency didn't grow", stub.maxConcurrent >= 2);
+        assertEquals(0, network.getInFlightCount());
+
+        for (int counter = 0; counter < 3; counter++) {
+            network.performRequest(new TestRequest(counter, Request.Priority.NORMAL));
+        }
+        assertEquals(1, network.getConcurrencyLimit());
+    }
+
+    @Test
+    public void degradedRoundTripTimeKeepsLimit() throws Exception {
+        StubNetwork stub = new StubNetwork(0);
+        AdaptiveNetwork network = new AdaptiveNetwork(stub, 1, 4);
+        for (int counter = 0; counter < 3; counter++) {
+            network.performRequest(new TestRequest(counter, Request.Priority.NORMAL));
+        }
+
+        stub.delay = 50;
+        performConcurrently(network, 4, Request.Priority.NORMAL);
+
+        assertEquals(1, stub.maxConcurrent);
+        assertEquals(1, network.getConcurrencyLimit());
+    }
+
+    @Test
+    public void canceledRequestDoesNotReachNetwork() throws Exception {
+        StubNetwork stub = new StubNetwork(0);
+        stub.gate = new CountDownLatch(1);
+        AdaptiveNetwork network = new AdaptiveNetwork(stub, 1, 1);
+        Thread blocking = startRequest(network, new TestRequest(0, Request.Priority.NORMAL));
+        stub.awaitStarted(1);
+
+        TestRequest canceled = new TestRequest(1, Request.Priority.NORMAL);
+        canceled.cancel();
+        try {
+            network.performRequest(canceled);
+            fail("Canceled request was performed");
+        } catch (VolleyError expected) {
+        }
+        assertEquals(1, network.getInFlightCount());
+
+        stub.gate.countDown();
+        blocking.join(TIMEOUT);
+        assertEquals(Arrays.<Object>asList(0), stub.performed);
+    }
+
+    @Test
+    public void parkedRequestsAreGrantedSlotsByPriority() throws Exception {
+        StubNetwork stub = new StubNetwork(0);
+        stub.gate = new CountDownLatch(1);
+        AdaptiveNetwork network = new AdaptiveNetwork(stub, 1, 1);
+        Thread blocking = startRequest(network, new TestRequest(0, Request.Priority.NORMAL));
+        stub.awaitStarted(1);
+
+        Thread low = startRequest(network, new TestRequest(1, Request.Priority.LOW));
+        awaitParked(low);
+        Thread high = startRequest(network, new TestRequest(2, Request.Priority.HIGH));
+        awaitParked(high);
+
+        stub.gate.countDown();
+        for (Thread thread : Arrays.asList(blocking, low, high)) {
+            thread.join(TIMEOUT);
+        }
+        assertEquals(Arrays.<Object>asList(0, 2, 1), stub.performed);
+    }
+
+    private static void performConcurrently(AdaptiveNetwork network, int count, Request.Priority priority) throws InterruptedException {
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int counter = 0; counter < count; counter++) {
+            threads.add(startRequest(network, new TestRequest(counter, priority)));
+        }
+        for (Thread thread : threads) {
+            thread.join(TIMEOUT);
+        }
+    }
+
+    private static Thread startRequest(final AdaptiveNetwork network, final TestRequest request) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    network.performRequest(request);
+                } catch (VolleyError e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitParked(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (thread.getState() != Thread.State.TIMED_WAITING && thread.getState() != Thread.State.WAITING) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Request wasn't parked");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static class StubNetwork implements Network {
+        final List<Object> performed = Collections.synchronizedList(new ArrayList<Object>());
+        volatile long delay;
+        volatile CountDownLatch gate;
+        int concurrent;
+        int maxConcurrent;
+
+        StubNetwork(long delay) {
+            this.delay = delay;
+        }
+
+        @Override
+        public NetworkResponse performRequest(Request<?> request) throws VolleyError {
+            performed.add(request.getTag());
+            synchronized (this) {
+                concurrent++;
+                maxConcurrent = Math.max(maxConcurrent, concurrent);
+                notifyAll();
+            }
+            try {
+                if (gate != null) {
+                    gate.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                }
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+            } catch (InterruptedException e) {
+                throw new VolleyError(e);
+            } finally {
+                synchronized (this) {
+                    concurrent--;
+                }
+            }
+            return new NetworkResponse(200, new byte[0], new HashMap<String, String>(), false);
+        }
+
+        synchronized void awaitStarted(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (performed.size() < count && System.currentTimeMillis() < deadline) {
+                wait(10);
+            }
+        }
+    }
+
+    private static class TestRequest extends Request<Object> {
+        private final Priority priority;
+
+        TestRequest(int index, Priority priority) {
+            super(Method.GET, "http://example.com/node/" + index, null);
+            this.priority = priority;
+            setTag(index);
+            setSequence(index);
+        }
+
+        @Override
+        public Priority getPriority() {
+            return priority;
+        }
+
+        @Override
+        protected Response<Object> parseNetworkResponse(NetworkResponse response) {
+            return null;
+        }
+
+        @Override
+        protected void deliverResponse(Object response) {
+        }
+    }
+}
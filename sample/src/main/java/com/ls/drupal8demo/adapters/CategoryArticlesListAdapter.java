@@ -27,9 +27,8 @@ import com.android.volley.VolleyError;
 import com.android.volley.toolbox.ImageLoader;
 import com.android.volley.toolbox.ImageLoader.ImageCache;
 import com.android.volley.toolbox.Volley;
-import com.ls.drupal.AbstractBaseDrupalEntity;
-import com.ls.drupal.AbstractBaseDrupalEntity.OnEntityRequestListener;
 import com.ls.drupal.DrupalClient;
+import com.ls.drupal.DrupalPagedLoader;
 import com.ls.drupal8demo.R;
 import com.ls.drupal8demo.article.ArticlePreview;
 import com.ls.drupal8demo.article.Page;
@@ -49,14 +48,11 @@ import android.widget.TextView;
 import java.util.ArrayList;
 import java.util.List;
 
-public class CategoryArticlesListAdapter extends BaseAdapter implements OnEntityRequestListener {
+public class CategoryArticlesListAdapter extends BaseAdapter implements DrupalPagedLoader.OnPagesLoadedListener<ArticlePreview> {
 
-	private final static int PRE_LOADING_PAGE_OFFSET = 4;
-
-	private int mPagesLoaded = 0;
 	private boolean mCanLoadMore;
 
-	private Page mArticlePreviews;
+	private final DrupalPagedLoader<ArticlePreview, Page> mLoader;
 	private final DrupalClient mDrupalClient;
 	private final LayoutInflater mInflater;
 	private ImageLoader mImageLoader;
@@ -74,7 +70,14 @@ public class CategoryArticlesListAdapter extends BaseAdapter implements OnEntity
 		setCanLoadMore(true);
 		mCategoryId = theCategoryId;
 		initImageLoader(theContext);
-		loadNextPage();
+		mLoader = new DrupalPagedLoader<ArticlePreview, Page>(new DrupalPagedLoader.PageFactory<Page>() {
+			@Override
+			public Page createPage(int pageIndex) {
+				return new Page(mDrupalClient, pageIndex, mCategoryId);
+			}
+		});
+		mLoader.setListener(this);
+		mLoader.start();
 	}
 
 	private void initImageLoader(Context theContext) {
@@ -117,9 +120,7 @@ public class CategoryArticlesListAdapter extends BaseAdapter implements OnEntity
 
 	@Override
 	public View getView(int position, View convertView, ViewGroup parent) {
-		if (position > mArticlePreviewList.size() - PRE_LOADING_PAGE_OFFSET) {
-			loadNextPage();
-		}
+		mLoader.setCursorPosition(position);
 
 		if (convertView == null) {
 			convertView = mInflater.inflate(R.layout.list_item_article, null);
@@ -160,32 +161,20 @@ public class CategoryArticlesListAdapter extends BaseAdapter implements OnEntity
 		return convertView;
 	}
 
-	private void loadNextPage() {
-		if (mCanLoadMore && mArticlePreviews == null) {
-			mArticlePreviews = new Page(mDrupalClient, mPagesLoaded, mCategoryId);
-			mArticlePreviews.pullFromServer(false, null, this);
-		}
-	}
-
 	@Override
-	public void onRequestCompleted(AbstractBaseDrupalEntity entity, Object tag, ResponseData data) {
-		if (!mArticlePreviews.isEmpty()) {
-			mArticlePreviewList.addAll(mArticlePreviews);
-			mArticlePreviews = null;
-			mPagesLoaded++;
-			notifyDataSetChanged();
-		} else {
-			setCanLoadMore(false);
-		}
+	public void onItemsLoaded(DrupalPagedLoader<ArticlePreview, ?> loader, List<ArticlePreview> items) {
+		mArticlePreviewList.addAll(items);
+		notifyDataSetChanged();
 	}
 
 	@Override
-	public void onRequestFailed(AbstractBaseDrupalEntity entity, Object tag, ResponseData data) {
+	public void onLoadingFinished(DrupalPagedLoader<ArticlePreview, ?> loader) {
 		setCanLoadMore(false);
 	}
 
 	@Override
-	public void onRequestCanceled(AbstractBaseDrupalEntity entity, Object tag) {
+	public void onPageFailed(DrupalPagedLoader<ArticlePreview, ?> loader, int pageIndex, ResponseData data) {
+		setCanLoadMore(false);
 	}
 
 }